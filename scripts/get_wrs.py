@@ -112,10 +112,33 @@ class ConvertToWRS:
         # Return the results list to the user
         return res
 
-lat = float(sys.argv[1])
-lon = float(sys.argv[2])
+def serve(conv):
+    """Answer lookups over stdin/stdout, one "lat lon" request per line.
 
-conv = ConvertToWRS()
-print(conv.get_wrs(lat, lon))
+    The shapefile is loaded only once; "ready" is printed when the worker
+    can accept requests. Each response is a single line with the path/rows
+    separated by spaces, or a line starting with "error" if the request
+    could not be answered. The worker exits when stdin is closed.
+    """
+    print("ready")
+    sys.stdout.flush()
+
+    # readline instead of iterating over stdin, which buffers ahead on python 2
+    for line in iter(sys.stdin.readline, ''):
+        try:
+            lat, lon = [float(value) for value in line.split()]
+            print(conv.get_wrs(lat, lon))
+        except Exception as e:
+            print("error " + str(e).replace("\n", " "))
+        sys.stdout.flush()
+
+if len(sys.argv) > 1 and sys.argv[1] == "--serve":
+    serve(ConvertToWRS())
+else:
+    lat = float(sys.argv[1])
+    lon = float(sys.argv[2])
+
+    conv = ConvertToWRS()
+    print(conv.get_wrs(lat, lon))
 
-sys.stdout.flush()
+    sys.stdout.flush()
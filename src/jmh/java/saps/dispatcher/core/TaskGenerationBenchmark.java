@@ -0,0 +1,129 @@
+/* (C)2020 */
+package saps.dispatcher.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import saps.dispatcher.core.catalog.TaskDescriptor;
+
+/**
+ * Compares generating the tasks of a job into a synchronized list of Object[] drained with
+ * remove(0), as createJobTasks used to, against streaming compact descriptors from TaskGenerator
+ * into a bounded batch. Tasks are not written anywhere, so it measures generation only. It is built
+ * and run by the benchmark profile, with the gc profiler giving the bytes allocated per job:
+ *
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(
+    value = 1,
+    jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class TaskGenerationBenchmark {
+
+  @Param({"100000"})
+  public int taskCount;
+
+  @Param({"1000"})
+  public int batchSize;
+
+  private Set<String> regions;
+  private Date initDate;
+  private Date endDate;
+
+  @Setup
+  public void setUp() {
+    // every day of 2015 has landsat_7 and landsat_8 scenes
+    regions = new LinkedHashSet<String>();
+    for (int i = 0; i < (taskCount + 729) / 730; i++) {
+      regions.add(String.format("%03d%03d", 200 + i / 100, i % 100));
+    }
+    initDate = new GregorianCalendar(2015, 0, 1).getTime();
+    endDate = new GregorianCalendar(2015, 11, 31).getTime();
+  }
+
+  @Benchmark
+  public int drainSynchronizedList() throws Exception {
+    final List<Object[]> tasks = Collections.synchronizedList(new ArrayList<Object[]>());
+    for (TaskGenerator.Partition partition : TaskGenerator.partition(regions, initDate, endDate)) {
+      GregorianCalendar day = new GregorianCalendar();
+      day.setTime(partition.getFirstDay());
+      while (!day.getTime().after(partition.getLastDay())) {
+        for (String dataset : datasets()) {
+          tasks.add(
+              new Object[] {
+                UUID.randomUUID().toString(), dataset, partition.getRegion(), day.getTime()
+              });
+        }
+        day.add(GregorianCalendar.DAY_OF_YEAR, 1);
+      }
+    }
+
+    int drained = 0;
+    while (!tasks.isEmpty()) {
+      Object[] task = tasks.remove(0);
+      if (task[0] != null) drained++;
+    }
+    return drained;
+  }
+
+  @Benchmark
+  public int stream() throws Exception {
+    final TaskDescriptor[] batch = new TaskDescriptor[batchSize];
+    final int[] pending = new int[1];
+    int streamed = 0;
+    JobProgress progress = new JobProgress("benchmark");
+    TaskGenerator.SceneLookup lookup =
+        new TaskGenerator.SceneLookup() {
+          @Override
+          public List<String> getDatasets(String region, Date day, List<String> datasets) {
+            return datasets;
+          }
+        };
+
+    for (TaskGenerator.Partition partition : TaskGenerator.partition(regions, initDate, endDate)) {
+      streamed +=
+          TaskGenerator.generate(
+              partition,
+              lookup,
+              progress,
+              new TaskGenerator.TaskSink() {
+                @Override
+                public void accept(TaskDescriptor task) {
+                  batch[pending[0]++] = task;
+                  if (pending[0] == batch.length) pending[0] = 0;
+                }
+              });
+    }
+    return streamed;
+  }
+
+  private static List<String> datasets() {
+    List<String> datasets = new ArrayList<String>();
+    datasets.add("landsat_7");
+    datasets.add("landsat_8");
+    return datasets;
+  }
+}
@@ -0,0 +1,257 @@
+/* (C)2020 */
+package saps.dispatcher.core;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import saps.dispatcher.core.catalog.JobCounters;
+import saps.dispatcher.core.catalog.JobSummary;
+import saps.dispatcher.core.catalog.TaskChange;
+import saps.dispatcher.core.catalog.TaskStore;
+
+/**
+ * Fans the job changes found by the polling of {@link JobCounters} out to the clients following
+ * them, so the catalog is polled once however many clients follow jobs. A client follows a job or
+ * every job of a user, and gets the new task counts of each job that changed and the new state of
+ * each of its tasks that changed.
+ *
+ * <p>Polls look a little back, so a task updated just before a client follows its job may be sent
+ * to it once more. Task events carry the whole state of the task, so getting one again is harmless.
+ *
+ * <p>Each client has a bounded queue of events. A client that falls that far behind is dropped,
+ * instead of holding events in memory, and should read the listings again when it follows again.
+ */
+public class JobChangeFeed implements JobCounters.Listener {
+
+  public static final String COUNTERS_EVENT = "counters";
+  public static final String TASK_EVENT = "task";
+
+  private static final Logger LOGGER = Logger.getLogger(JobChangeFeed.class);
+
+  private static final int QUEUE_SIZE = 1000;
+
+  private final TaskStore taskStore;
+  private final int maxSubscriptions;
+  private final int maxTaskEvents;
+  private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<Subscription>();
+  private final ConcurrentMap<String, String> owners = new ConcurrentHashMap<String, String>();
+  private final Map<String, Timestamp> sentTaskUpdates = new HashMap<String, Timestamp>();
+
+  /**
+   * @param taskStore catalog the changed tasks are read from
+   * @param maxSubscriptions most clients following jobs at once
+   * @param maxTaskEvents most task changes read on each poll; when more tasks changed, e.g. while a
+   *     job is created, only the new counts are sent
+   */
+  public JobChangeFeed(TaskStore taskStore, int maxSubscriptions, int maxTaskEvents) {
+    this.taskStore = taskStore;
+    this.maxSubscriptions = maxSubscriptions;
+    this.maxTaskEvents = maxTaskEvents;
+  }
+
+  /**
+   * Follows the changes of a job, or of every job of a user.
+   *
+   * @param jobId job followed, or null to follow the jobs of the user
+   * @param userEmail user following the changes
+   * @throws RejectedExecutionException if too many clients follow jobs already
+   */
+  public Subscription subscribe(String jobId, String userEmail) {
+    Subscription subscription = new Subscription(jobId, userEmail);
+    synchronized (subscriptions) {
+      if (subscriptions.size() >= maxSubscriptions) {
+        throw new RejectedExecutionException(
+            "There are " + subscriptions.size() + " clients following jobs already");
+      }
+      subscriptions.add(subscription);
+    }
+    return subscription;
+  }
+
+  @Override
+  public synchronized void jobsChanged(Map<String, JobSummary> changed, Timestamp since)
+      throws Exception {
+    if (subscriptions.isEmpty()) {
+      sentTaskUpdates.clear();
+      owners.clear();
+      return;
+    }
+
+    Map<String, List<Subscription>> followers = findFollowers(changed.keySet());
+    if (followers.isEmpty()) return;
+
+    List<TaskChange> changes = Collections.emptyList();
+    boolean truncated = false;
+    if (since != null) {
+      changes = taskStore.findJobTasksUpdatedSince(followers.keySet(), since, maxTaskEvents);
+      truncated = changes.size() > maxTaskEvents;
+      if (truncated) changes = Collections.emptyList();
+      forgetTaskUpdatesBefore(since);
+    }
+
+    for (Map.Entry<String, List<Subscription>> job : followers.entrySet()) {
+      JobEvent event = countersEvent(changed.get(job.getKey()), truncated);
+      for (Subscription subscription : job.getValue()) {
+        subscription.offer(event);
+      }
+    }
+    for (TaskChange change : changes) {
+      // polls look a little back, so a task may be read again without a new update
+      Timestamp sent = sentTaskUpdates.get(change.getTaskId());
+      if (sent != null && !change.getUpdatedTime().after(sent)) continue;
+      sentTaskUpdates.put(change.getTaskId(), change.getUpdatedTime());
+
+      JobEvent event = taskEvent(change);
+      for (Subscription subscription : followers.get(change.getJobId())) {
+        subscription.offer(event);
+      }
+    }
+  }
+
+  /** Number of clients following jobs. */
+  public int getSubscriptionCount() {
+    return subscriptions.size();
+  }
+
+  /** Gives the summary of a job as the event clients get when its counts change. */
+  public static JobEvent countersEvent(JobSummary summary, boolean tasksTruncated)
+      throws JSONException {
+    JSONObject data = new JSONObject();
+    data.put("jobId", summary.getJobId());
+    data.put("tasksAmount", summary.getTotalTasks());
+    data.put("tasksOngoing", summary.getOngoingTasks());
+    data.put("tasksFailed", summary.getFailedTasks());
+    data.put("tasksArchived", summary.getArchivedTasks());
+    data.put("tasksByState", new JSONObject(summary.getTasksByState()));
+    if (tasksTruncated) data.put("tasksTruncated", true);
+    return new JobEvent(COUNTERS_EVENT, data);
+  }
+
+  private static JobEvent taskEvent(TaskChange change) throws JSONException {
+    JSONObject data = new JSONObject();
+    data.put("jobId", change.getJobId());
+    data.put("taskId", change.getTaskId());
+    data.put("state", change.getState());
+    data.put("updateTime", change.getUpdatedTime().getTime());
+    return new JobEvent(TASK_EVENT, data);
+  }
+
+  private Map<String, List<Subscription>> findFollowers(Set<String> jobIds) throws Exception {
+    Set<String> followedUsers = new HashSet<String>();
+    for (Subscription subscription : subscriptions) {
+      if (subscription.jobId == null) followedUsers.add(subscription.userEmail);
+    }
+    // only owners that clients follow are kept; the others are looked up again when needed
+    owners.values().retainAll(followedUsers);
+    if (!followedUsers.isEmpty()) {
+      List<String> unknownOwners = new ArrayList<String>();
+      for (String jobId : jobIds) {
+        if (!owners.containsKey(jobId)) unknownOwners.add(jobId);
+      }
+      if (!unknownOwners.isEmpty()) owners.putAll(taskStore.findJobOwners(unknownOwners));
+    }
+
+    Map<String, List<Subscription>> followers = new HashMap<String, List<Subscription>>();
+    for (String jobId : jobIds) {
+      for (Subscription subscription : subscriptions) {
+        if (!subscription.follows(jobId, owners.get(jobId))) continue;
+        List<Subscription> jobFollowers = followers.get(jobId);
+        if (jobFollowers == null) {
+          jobFollowers = new ArrayList<Subscription>();
+          followers.put(jobId, jobFollowers);
+        }
+        jobFollowers.add(subscription);
+      }
+    }
+    return followers;
+  }
+
+  private void forgetTaskUpdatesBefore(Timestamp since) {
+    Iterator<Timestamp> updates = sentTaskUpdates.values().iterator();
+    while (updates.hasNext()) {
+      if (updates.next().before(since)) updates.remove();
+    }
+  }
+
+  /** A change sent to the clients following a job. */
+  public static class JobEvent {
+
+    private final String name;
+    private final JSONObject data;
+
+    public JobEvent(String name, JSONObject data) {
+      this.name = name;
+      this.data = data;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public JSONObject getData() {
+      return data;
+    }
+  }
+
+  /** A client following a job or the jobs of a user. */
+  public class Subscription {
+
+    private final String jobId;
+    private final String userEmail;
+    private final BlockingQueue<JobEvent> events = new ArrayBlockingQueue<JobEvent>(QUEUE_SIZE);
+    private volatile boolean dropped;
+
+    private Subscription(String jobId, String userEmail) {
+      this.jobId = jobId;
+      this.userEmail = userEmail;
+    }
+
+    private boolean follows(String changedJobId, String owner) {
+      return jobId != null ? jobId.equals(changedJobId) : userEmail.equals(owner);
+    }
+
+    private void offer(JobEvent event) {
+      if (dropped) return;
+      if (!events.offer(event)) {
+        LOGGER.warn("Client following jobs of [" + userEmail + "] fell behind and was dropped");
+        dropped = true;
+        close();
+      }
+    }
+
+    /**
+     * Waits for the next event.
+     *
+     * @return the event, or null if there was none in time
+     */
+    public JobEvent next(long timeoutMillis) throws InterruptedException {
+      return events.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** If the client fell too far behind and gets no more events. */
+    public boolean isDropped() {
+      return dropped;
+    }
+
+    /** Stops following the changes. */
+    public void close() {
+      subscriptions.remove(this);
+    }
+  }
+}
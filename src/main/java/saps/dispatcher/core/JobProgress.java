@@ -0,0 +1,111 @@
+/* (C)2020 */
+package saps.dispatcher.core;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import saps.dispatcher.core.catalog.TaskInsertListener;
+
+/** Progress of the task creation of a submitted job, updated while its tasks are created. */
+public class JobProgress implements TaskInsertListener {
+
+  public enum Stage {
+    QUEUED,
+    GENERATING,
+    INSERTING,
+    DONE,
+    FAILED
+  }
+
+  private final String jobId;
+  private final Date submissionTime;
+  private final AtomicInteger generatedTasks = new AtomicInteger();
+  private final AtomicInteger insertedTasks = new AtomicInteger();
+  private final AtomicInteger reusedTasks = new AtomicInteger();
+  private volatile Stage stage = Stage.QUEUED;
+  private volatile String errorMessage;
+  private volatile Date completionTime;
+
+  public JobProgress(String jobId) {
+    this.jobId = jobId;
+    this.submissionTime = new Date();
+  }
+
+  public String getJobId() {
+    return jobId;
+  }
+
+  public Stage getStage() {
+    return stage;
+  }
+
+  public int getGeneratedTasks() {
+    return generatedTasks.get();
+  }
+
+  public int getInsertedTasks() {
+    return insertedTasks.get();
+  }
+
+  /**
+   * Tasks of other jobs of the user, archived or in flight, linked to the job instead of being
+   * created.
+   */
+  public int getReusedTasks() {
+    return reusedTasks.get();
+  }
+
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+
+  public Date getCompletionTime() {
+    return completionTime;
+  }
+
+  public boolean isFinished() {
+    return stage == Stage.DONE || stage == Stage.FAILED;
+  }
+
+  void setStage(Stage stage) {
+    this.stage = stage;
+  }
+
+  void addGeneratedTasks(int count) {
+    generatedTasks.addAndGet(count);
+  }
+
+  void addReusedTasks(int count) {
+    reusedTasks.addAndGet(count);
+  }
+
+  @Override
+  public void tasksInserted(int count) {
+    insertedTasks.addAndGet(count);
+  }
+
+  void finish() {
+    completionTime = new Date();
+    stage = Stage.DONE;
+  }
+
+  void fail(String errorMessage) {
+    this.errorMessage = errorMessage;
+    completionTime = new Date();
+    stage = Stage.FAILED;
+  }
+
+  public JSONObject toJSON() throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("jobId", jobId);
+    json.put("stage", stage.name());
+    json.put("generatedTasks", getGeneratedTasks());
+    json.put("insertedTasks", getInsertedTasks());
+    json.put("reusedTasks", getReusedTasks());
+    json.put("submissionTime", submissionTime.getTime());
+    if (completionTime != null) json.put("completionTime", completionTime.getTime());
+    if (errorMessage != null) json.put("errorMessage", errorMessage);
+    return json;
+  }
+}
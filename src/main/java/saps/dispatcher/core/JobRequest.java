@@ -0,0 +1,178 @@
+/* (C)2020 */
+package saps.dispatcher.core;
+
+import java.util.Date;
+import java.util.Set;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import saps.dispatcher.utils.RegionUtil;
+
+/**
+ * Area, date window, phase tags and owner of a job to be submitted. The area is either a bounding
+ * box or a polygonal area of interest, whose envelope is kept as the job bounding box.
+ */
+public class JobRequest {
+
+  private final Geometry areaOfInterest;
+  private final double minTileCoverage;
+  private final String lowerLeftLatitude;
+  private final String lowerLeftLongitude;
+  private final String upperRightLatitude;
+  private final String upperRightLongitude;
+  private Date initDate;
+  private Date endDate;
+  private String inputdownloadingPhaseTag;
+  private String preprocessingPhaseTag;
+  private String processingPhaseTag;
+  private int priority;
+  private String userEmail;
+  private String label;
+  private boolean reuseTasks;
+
+  private JobRequest(
+      Geometry areaOfInterest,
+      double minTileCoverage,
+      String lowerLeftLatitude,
+      String lowerLeftLongitude,
+      String upperRightLatitude,
+      String upperRightLongitude) {
+    this.areaOfInterest = areaOfInterest;
+    this.minTileCoverage = minTileCoverage;
+    this.lowerLeftLatitude = lowerLeftLatitude;
+    this.lowerLeftLongitude = lowerLeftLongitude;
+    this.upperRightLatitude = upperRightLatitude;
+    this.upperRightLongitude = upperRightLongitude;
+  }
+
+  /** Creates a request for the tiles of a bounding box. */
+  public static JobRequest forBoundingBox(
+      String lowerLeftLatitude,
+      String lowerLeftLongitude,
+      String upperRightLatitude,
+      String upperRightLongitude) {
+    return new JobRequest(
+        null, 0, lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
+  }
+
+  /**
+   * Creates a request for the tiles of a polygonal area of interest.
+   *
+   * @param areaOfInterest polygon or multipolygon in lon/lat (WGS84) coordinates
+   * @param minTileCoverage minimum overlap fraction, in the [0, 1] range, for a tile to be kept
+   *     (see {@link RegionUtil#regionsFromPolygon})
+   */
+  public static JobRequest forAreaOfInterest(Geometry areaOfInterest, double minTileCoverage) {
+    Envelope envelope = areaOfInterest.getEnvelopeInternal();
+    return new JobRequest(
+        areaOfInterest,
+        minTileCoverage,
+        String.valueOf(envelope.getMinY()),
+        String.valueOf(envelope.getMinX()),
+        String.valueOf(envelope.getMaxY()),
+        String.valueOf(envelope.getMaxX()));
+  }
+
+  /**
+   * @param initDate first day
+   * @param endDate last day, inclusive
+   */
+  public JobRequest setDates(Date initDate, Date endDate) {
+    this.initDate = initDate;
+    this.endDate = endDate;
+    return this;
+  }
+
+  public JobRequest setPhaseTags(
+      String inputdownloadingPhaseTag, String preprocessingPhaseTag, String processingPhaseTag) {
+    this.inputdownloadingPhaseTag = inputdownloadingPhaseTag;
+    this.preprocessingPhaseTag = preprocessingPhaseTag;
+    this.processingPhaseTag = processingPhaseTag;
+    return this;
+  }
+
+  /**
+   * @param priority priority of the tasks, in the 0 to 31 range
+   * @param userEmail email of the job owner
+   * @param label user label of the job
+   */
+  public JobRequest setOwner(int priority, String userEmail, String label) {
+    this.priority = priority;
+    this.userEmail = userEmail;
+    this.label = label;
+    return this;
+  }
+
+  /**
+   * @param reuseTasks if tasks of other jobs of any user, archived or in flight, for the same
+   *     scene, tags and digests are linked to the job instead of being created again
+   */
+  public JobRequest setReuseTasks(boolean reuseTasks) {
+    this.reuseTasks = reuseTasks;
+    return this;
+  }
+
+  /** Gets the regions, in the PPPRRR form, of the tiles covering the area. */
+  public Set<String> getRegions() {
+    if (areaOfInterest != null) {
+      return RegionUtil.regionsFromPolygon(areaOfInterest, minTileCoverage);
+    }
+    return RegionUtil.regionsFromArea(
+        lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
+  }
+
+  public Geometry getAreaOfInterest() {
+    return areaOfInterest;
+  }
+
+  public String getLowerLeftLatitude() {
+    return lowerLeftLatitude;
+  }
+
+  public String getLowerLeftLongitude() {
+    return lowerLeftLongitude;
+  }
+
+  public String getUpperRightLatitude() {
+    return upperRightLatitude;
+  }
+
+  public String getUpperRightLongitude() {
+    return upperRightLongitude;
+  }
+
+  public Date getInitDate() {
+    return initDate;
+  }
+
+  public Date getEndDate() {
+    return endDate;
+  }
+
+  public String getInputdownloadingPhaseTag() {
+    return inputdownloadingPhaseTag;
+  }
+
+  public String getPreprocessingPhaseTag() {
+    return preprocessingPhaseTag;
+  }
+
+  public String getProcessingPhaseTag() {
+    return processingPhaseTag;
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  public String getUserEmail() {
+    return userEmail;
+  }
+
+  public String getLabel() {
+    return label;
+  }
+
+  public boolean isReuseTasks() {
+    return reuseTasks;
+  }
+}
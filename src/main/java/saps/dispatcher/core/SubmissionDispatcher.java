@@ -1,18 +1,38 @@
 /* (C)2020 */
 package saps.dispatcher.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp2.BasicDataSource;
 import org.apache.log4j.Logger;
+import org.locationtech.jts.geom.Geometry;
 
 import saps.catalog.core.Catalog;
 import saps.catalog.core.jdbc.JDBCCatalog;
@@ -23,25 +43,324 @@ import saps.common.core.model.SapsUser;
 import saps.common.core.model.SapsUserJob;
 import saps.common.core.model.enums.ImageTaskState;
 import saps.common.core.model.enums.JobState;
+import saps.common.exceptions.SapsException;
 import saps.common.utils.ExecutionScriptTag;
 import saps.common.utils.ExecutionScriptTagUtil;
+import saps.dispatcher.core.catalog.CatalogSchema;
+import saps.dispatcher.core.catalog.JobCounters;
+import saps.dispatcher.core.catalog.JobSummary;
+import saps.dispatcher.core.catalog.SceneAvailability;
+import saps.dispatcher.core.catalog.SceneIndex;
+import saps.dispatcher.core.catalog.TaskCursor;
+import saps.dispatcher.core.catalog.TaskDescriptor;
+import saps.dispatcher.core.catalog.TaskFilter;
+import saps.dispatcher.core.catalog.TaskPage;
+import saps.dispatcher.core.catalog.TaskReader;
+import saps.dispatcher.core.catalog.TaskSortField;
+import saps.dispatcher.core.catalog.TaskStore;
+import saps.dispatcher.core.catalog.TaskTemplate;
 import saps.dispatcher.utils.DatasetUtil;
 import saps.dispatcher.utils.DigestUtil;
+import saps.dispatcher.utils.ExecutionScriptTagRegistry;
 import saps.dispatcher.utils.RegionUtil;
 
 public class SubmissionDispatcher {
 
   public static final String EXECUTION_TAGS_FILE_PATH_KEY = "EXECUTION_SCRIPT_TAGS_FILE_PATH";
+  public static final String JOB_SUBMISSION_THREADS_KEY = "job_submission_threads";
+  public static final String JOB_SUBMISSION_QUEUE_SIZE_KEY = "job_submission_queue_size";
+  public static final String SCENE_INDEX_ENABLED_KEY = "scene_index_enabled";
+  public static final String SCENE_INDEX_REFRESH_INTERVAL_MILLIS_KEY =
+      "scene_index_refresh_interval_ms";
+  public static final String SCENE_INDEX_REFRESH_LOOKBACK_DAYS_KEY =
+      "scene_index_refresh_lookback_days";
+  public static final String TASK_GENERATION_POOL_SHARE_KEY = "task_generation_pool_share";
+  public static final String JOB_COUNTERS_ENABLED_KEY = "job_counters_enabled";
+  public static final String JOB_COUNTERS_SNAPSHOT_FILE_KEY = "job_counters_snapshot_file";
+  public static final String JOB_COUNTERS_POLL_INTERVAL_MILLIS_KEY = "job_counters_poll_interval_ms";
+  public static final String JOB_COUNTERS_POLL_OVERLAP_MILLIS_KEY = "job_counters_poll_overlap_ms";
+  public static final String JOB_COUNTERS_RECONCILE_INTERVAL_MILLIS_KEY =
+      "job_counters_reconcile_interval_ms";
+  public static final String JOB_COUNTERS_SNAPSHOT_INTERVAL_MILLIS_KEY =
+      "job_counters_snapshot_interval_ms";
+  public static final String JOB_EVENTS_MAX_SUBSCRIPTIONS_KEY = "job_events_max_subscriptions";
+  public static final String JOB_EVENTS_MAX_TASK_EVENTS_KEY = "job_events_max_task_events";
   private final Catalog catalog;
+  private ExecutionScriptTagRegistry executionScriptTags;
+  private final TaskStore taskStore;
+  private final SceneIndex sceneIndex;
+  private final TaskGenerator taskGenerator;
+  private JobCounters jobCounters;
+  private JobChangeFeed jobChangeFeed;
+  private final ExecutorService submissionExecutor;
+  private final Semaphore submissionSlots;
+  private final ConcurrentMap<String, JobProgress> jobProgress =
+      new ConcurrentHashMap<String, JobProgress>();
+  private final long startTime = System.currentTimeMillis();
+  private final AtomicLong jobChanges = new AtomicLong();
 
   private static final Logger LOGGER = Logger.getLogger(SubmissionDispatcher.class);
 
+  private static final int DEFAULT_JOB_SUBMISSION_THREADS = 2;
+  private static final int DEFAULT_JOB_SUBMISSION_QUEUE_SIZE = 32;
+  private static final double DEFAULT_TASK_GENERATION_POOL_SHARE = 0.5;
+  private static final long JOB_PROGRESS_RETENTION_MILLIS = 60 * 60 * 1000;
+
   public SubmissionDispatcher(Catalog catalog) {
+    this(catalog, null);
+  }
+
+  /**
+   * @param catalog   is the catalog used for single row operations
+   * @param taskStore is the bulk access to the catalog used to create the tasks of
+   *                  a job, or null to create them one by one through the catalog
+   */
+  public SubmissionDispatcher(Catalog catalog, TaskStore taskStore) {
+    this(catalog, taskStore, null);
+  }
+
+  /**
+   * @param catalog    is the catalog used for single row operations
+   * @param taskStore  is the bulk access to the catalog used to create the tasks
+   *                   of a job, or null to create them one by one through the
+   *                   catalog
+   * @param sceneIndex is the in-memory index of the known Landsat scenes, or
+   *                   null to look scenes up in the catalog
+   */
+  public SubmissionDispatcher(Catalog catalog, TaskStore taskStore, SceneIndex sceneIndex) {
+    this(catalog, taskStore, sceneIndex, DEFAULT_JOB_SUBMISSION_THREADS,
+        DEFAULT_JOB_SUBMISSION_QUEUE_SIZE, DEFAULT_TASK_GENERATION_POOL_SHARE);
+  }
+
+  private SubmissionDispatcher(
+      Catalog catalog,
+      TaskStore taskStore,
+      SceneIndex sceneIndex,
+      int submissionThreads,
+      int submissionQueueSize,
+      double taskGenerationPoolShare) {
     this.catalog = catalog;
+    this.taskStore = taskStore;
+    this.sceneIndex = sceneIndex;
+    this.taskGenerator = taskStore == null
+        ? null
+        : new TaskGenerator(
+            taskStore, createTaskGenerationExecutor(taskStore, taskGenerationPoolShare));
+    this.submissionExecutor = Executors.newFixedThreadPool(submissionThreads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "job-submission-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.submissionSlots = new Semaphore(submissionThreads + submissionQueueSize);
+  }
+
+  public SubmissionDispatcher(Properties properties) throws SQLException, IOException {
+    this(properties, TaskStore.createDataSource(properties));
+  }
+
+  private SubmissionDispatcher(Properties properties, DataSource dataSource)
+      throws SQLException, IOException {
+    this(
+        new JDBCCatalog(properties),
+        createTaskStore(properties, dataSource),
+        createSceneIndex(properties, dataSource),
+        Integer.parseInt(properties.getProperty(
+            JOB_SUBMISSION_THREADS_KEY, String.valueOf(DEFAULT_JOB_SUBMISSION_THREADS))),
+        Integer.parseInt(properties.getProperty(
+            JOB_SUBMISSION_QUEUE_SIZE_KEY, String.valueOf(DEFAULT_JOB_SUBMISSION_QUEUE_SIZE))),
+        Double.parseDouble(properties.getProperty(
+            TASK_GENERATION_POOL_SHARE_KEY, String.valueOf(DEFAULT_TASK_GENERATION_POOL_SHARE))));
+    getExecutionScriptTags().watch();
+    DigestUtil.configure(properties, getExecutionScriptTags());
+    RegionUtil.configure(properties);
+    this.jobCounters = createJobCounters(properties, taskStore);
+    this.jobChangeFeed = createJobChangeFeed(properties, taskStore, jobCounters);
+  }
+
+  private static TaskStore createTaskStore(Properties properties, DataSource dataSource) {
+    int batchSize = Integer.parseInt(properties.getProperty(
+        TaskStore.TASK_INSERT_BATCH_SIZE_KEY, "0"));
+    if (batchSize <= 0) {
+      LOGGER.info("Tasks will be inserted one by one");
+      return null;
+    }
+
+    TaskStore taskStore = new TaskStore(dataSource, batchSize);
+    try {
+      taskStore.checkSchema();
+    } catch (SQLException e) {
+      LOGGER.error("Catalog schema differs from the one tasks are inserted in batches with;"
+          + " tasks will be inserted one by one", e);
+      return null;
+    }
+    return taskStore;
+  }
+
+  /**
+   * It creates the executor on which the partitions of a job are generated and
+   * inserted, with one thread per connection of the given share of the catalog
+   * pool, so task creation leaves connections to the rest of the dispatcher.
+   *
+   * @return the executor, or null to generate the partitions one at a time
+   */
+  private static ExecutorService createTaskGenerationExecutor(TaskStore taskStore, double poolShare) {
+    if (!(taskStore.getDataSource() instanceof BasicDataSource)) {
+      return null;
+    }
+
+    int maxConnections = ((BasicDataSource) taskStore.getDataSource()).getMaxTotal();
+    int threads = maxConnections < 0
+        ? Runtime.getRuntime().availableProcessors()
+        : Math.max(1, (int) (maxConnections * poolShare));
+    if (threads == 1) {
+      return null;
+    }
+
+    LOGGER.info("Tasks of a job will be generated by up to " + threads + " threads");
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "task-generation-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private static SceneIndex createSceneIndex(Properties properties, DataSource dataSource) {
+    if (!Boolean.parseBoolean(properties.getProperty(SCENE_INDEX_ENABLED_KEY, "false"))) {
+      return null;
+    }
+
+    SceneIndex index = new SceneIndex(dataSource, Integer.parseInt(
+        properties.getProperty(SCENE_INDEX_REFRESH_LOOKBACK_DAYS_KEY, "30")));
+    try {
+      index.load();
+    } catch (SQLException e) {
+      LOGGER.error("Error while loading scene index; scenes will be looked up in the catalog", e);
+      return null;
+    }
+    Set<String> unknownDatasets = index.getUnknownDatasets(DatasetUtil.getDataSets());
+    if (!unknownDatasets.isEmpty()) {
+      LOGGER.error("Scene index found datasets " + unknownDatasets
+          + " not named as " + DatasetUtil.getDataSets()
+          + "; scenes will be looked up in the catalog");
+      return null;
+    }
+    index.scheduleRefresh(Long.parseLong(
+        properties.getProperty(SCENE_INDEX_REFRESH_INTERVAL_MILLIS_KEY, "600000")));
+    return index;
+  }
+
+  /**
+   * It creates the in-memory task counts of the jobs and starts loading them,
+   * from their snapshot file or by counting them in the catalog, in background
+   * and then keeping them up to date. Task writers are bounded to commit within
+   * half the poll overlap with the update time of their tasks.
+   *
+   * @return the counts, or null to count the tasks of a job on each request
+   */
+  private static JobCounters createJobCounters(Properties properties, TaskStore taskStore) {
+    if (taskStore == null
+        || !Boolean.parseBoolean(properties.getProperty(JOB_COUNTERS_ENABLED_KEY, "true"))) {
+      return null;
+    }
+    try {
+      taskStore.checkUpdatedTimeIndex();
+    } catch (SQLException e) {
+      LOGGER.error("Job task counts need the catalog index created by ["
+          + CatalogSchema.Tasks.UPDATED_TIME_INDEX_DDL + "]; they will not be kept", e);
+      return null;
+    }
+
+    String snapshotFile = properties.getProperty(JOB_COUNTERS_SNAPSHOT_FILE_KEY);
+    long pollOverlapMillis =
+        Long.parseLong(properties.getProperty(JOB_COUNTERS_POLL_OVERLAP_MILLIS_KEY, "10000"));
+    JobCounters counters = new JobCounters(
+        taskStore,
+        snapshotFile == null || snapshotFile.trim().isEmpty() ? null : new File(snapshotFile.trim()),
+        pollOverlapMillis,
+        Long.parseLong(properties.getProperty(JOB_COUNTERS_SNAPSHOT_INTERVAL_MILLIS_KEY,
+            String.valueOf(JobCounters.DEFAULT_SNAPSHOT_INTERVAL_MILLIS))));
+    taskStore.setMaxCommitDelayMillis(pollOverlapMillis / 2);
+    counters.schedule(
+        Long.parseLong(properties.getProperty(JOB_COUNTERS_POLL_INTERVAL_MILLIS_KEY, "5000")),
+        Long.parseLong(
+            properties.getProperty(JOB_COUNTERS_RECONCILE_INTERVAL_MILLIS_KEY, "3600000")));
+    return counters;
   }
 
-  public SubmissionDispatcher(Properties properties) throws SQLException {
-    this.catalog = new JDBCCatalog(properties);
+  /**
+   * It creates the feed of job changes clients follow instead of polling the
+   * job listing. The changes are the ones found by the polling of the task
+   * counters, so there is no feed without them.
+   *
+   * @return the feed, or null if clients cannot follow job changes
+   */
+  private static JobChangeFeed createJobChangeFeed(
+      Properties properties, TaskStore taskStore, JobCounters jobCounters) {
+    if (jobCounters == null) {
+      return null;
+    }
+    JobChangeFeed feed = new JobChangeFeed(
+        taskStore,
+        Integer.parseInt(properties.getProperty(JOB_EVENTS_MAX_SUBSCRIPTIONS_KEY, "100")),
+        Integer.parseInt(properties.getProperty(JOB_EVENTS_MAX_TASK_EVENTS_KEY, "1000")));
+    jobCounters.addListener(feed);
+    return feed;
+  }
+
+  /**
+   * It gives the execution script tags, loading them from the file named by
+   * the system property on first use.
+   */
+  private synchronized ExecutionScriptTagRegistry getExecutionScriptTags() throws IOException {
+    if (executionScriptTags == null) {
+      executionScriptTags = loadExecutionScriptTags();
+    }
+    return executionScriptTags;
+  }
+
+  private static ExecutionScriptTagRegistry loadExecutionScriptTags() throws IOException {
+    String tagsFilePath = System.getProperty(EXECUTION_TAGS_FILE_PATH_KEY);
+    try {
+      return ExecutionScriptTagRegistry.load(tagsFilePath);
+    } catch (Exception e) {
+      throw new IOException(
+          "Error while loading execution script tags from [" + tagsFilePath + "]", e);
+    }
+  }
+
+  /**
+   * It stops the background work of the dispatcher: the job task counts are
+   * saved and no longer polled, the scene index and the execution script tags
+   * are no longer refreshed, no new job starts creating its tasks, and the
+   * pooled get_wrs workers are stopped.
+   */
+  public void close() {
+    submissionExecutor.shutdown();
+    if (taskGenerator != null) {
+      taskGenerator.shutdown();
+    }
+    if (jobCounters != null) {
+      jobCounters.close();
+    }
+    if (sceneIndex != null) {
+      sceneIndex.close();
+    }
+    synchronized (this) {
+      if (executionScriptTags != null) {
+        executionScriptTags.close();
+      }
+    }
+    RegionUtil.shutdown();
   }
 
   public void addUser(
@@ -60,96 +379,31 @@ public class SubmissionDispatcher {
   }
 
   /**
-   * It adds a new Task in {@code Catalog}.<br>
+   * It adds a new Task in {@code Catalog}, with one statement and commit per task.<br>
    *
-   * @param taskId                   an unique identifier for the SAPS task.
-   * @param dataset                  it is the type of data set associated with
-   *                                 the new task to be created. Their
-   *                                 values ​​can be:<br>
-   *                                 -- landsat_5: indicates that the task is
-   *                                 related to the LANDSAT 5 satellite
-   *                                 (https://www.usgs.gov/land-resources/nli/landsat/landsat-5)<br>
-   *                                 -- landsat_7: indicates that the task is
-   *                                 related to the LANDSAT 7 satellite
-   *                                 (https://www.usgs.gov/land-resources/nli/landsat/landsat-7)<br>
-   *                                 -- landsat_8: indicates that the task is
-   *                                 related with the LANDSAT 8 satellite data set
-   *                                 (https://www.usgs.gov/land-resources/nli/landsat/landsat-8)<br>
-   * @param region                   is the location of the satellite data
-   *                                 following the global notation system for
-   *                                 Landsat data (WRS:
-   *                                 https://landsat.gsfc.nasa.gov/the-worldwide-reference-system),
-   *                                 following
-   *                                 the PPPRRR form, where PPP is a length-3 to
-   *                                 the path number and RRR is a length-3 to the
-   *                                 row number.
-   * @param date                     is the date on which the satellite data was
-   *                                 collected following the YYYY/MM/DD
-   *                                 format.
-   * @param priority                 is an integer in the [0, 31] range that
-   *                                 indicates the priority of task
-   *                                 processing.
-   * @param userEmail                it is the email of the user that has
-   *                                 submitted the task
-   * @param inputdownloadingPhaseTag is the version of the algorithm that will be
-   *                                 used in the task's
-   *                                 inputdownloading step
-   * @param digestInputdownloading   is the version of the algorithm that will be
-   *                                 used in the task's
-   *                                 preprocessing step
-   * @param preprocessingPhaseTag    is the version of the algorithm that will be
-   *                                 used in the task's
-   *                                 processing step
-   * @param digestPreprocessing      is the immutable identifier (digest) of the
-   *                                 Docker image of the
-   *                                 version defined in the inputdownloading step
-   *                                 (inputdownloadingPhaseTag)
-   * @param processingPhaseTag       is the immutable identifier (digest) of the
-   *                                 Docker image of the
-   *                                 version defined in the preprocessing step
-   *                                 (preprocessingPhaseTag)
-   * @param digestProcessing         is the immutable identifier (digest) of the
-   *                                 Docker image of the version
-   *                                 defined in the processing step
-   *                                 (processingPhaseTag)
-   * @return the new {@code SapsImage} created and added to this {@code Catalog}.
+   * @param task     is the identifier, data set, region and date of the task
+   * @param template is the priority, user and phase tags and digests shared by
+   *                 the tasks of the job
    */
-  private void addTask(
-      List<Object[]> tasksDataSync,
-      int priority,
-      String userEmail,
-      String inputdownloadingPhaseTag,
-      String digestInputdownloading,
-      String preprocessingPhaseTag,
-      String digestPreprocessing,
-      String processingPhaseTag,
-      String digestProcessing) {
-
+  private void addTask(TaskDescriptor task, TaskTemplate template) {
     try {
-      Object[] tData = tasksDataSync.remove(0);
-      if (tData != null) {
-        String taskId = (String) tData[0];
-        Date day = (Date) tData[1];
-        String dataset = (String) tData[2];
-        String region = (String) tData[3];
-
-        LOGGER.debug("Adding new tasks with dataset " + dataset + " and date " + day + " and region " + region);
-        CatalogUtils.addNewTask(
-            catalog,
-            taskId,
-            dataset,
-            region,
-            day,
-            priority,
-            userEmail,
-            inputdownloadingPhaseTag,
-            digestInputdownloading,
-            preprocessingPhaseTag,
-            digestPreprocessing,
-            processingPhaseTag,
-            digestProcessing,
-            "add new task [" + taskId + "]");
-      }
+      LOGGER.debug("Adding new tasks with dataset " + task.getDataset() + " and date "
+          + task.getImageDate() + " and region " + task.getRegion());
+      CatalogUtils.addNewTask(
+          catalog,
+          task.getTaskId(),
+          task.getDataset(),
+          task.getRegion(),
+          task.getImageDate(),
+          template.getPriority(),
+          template.getUserEmail(),
+          template.getInputdownloadingTag(),
+          template.getInputdownloadingDigest(),
+          template.getPreprocessingTag(),
+          template.getPreprocessingDigest(),
+          template.getProcessingTag(),
+          template.getProcessingDigest(),
+          "add new task [" + task.getTaskId() + "]");
     } catch (Exception e) {
       LOGGER.error("Error while adding new task", e);
     }
@@ -202,6 +456,7 @@ public class SubmissionDispatcher {
         priority,
         tasksIds,
         "add new job [" + jobLabel + "]");
+    jobsChanged();
   }
 
   private void insertJobTask(
@@ -222,6 +477,10 @@ public class SubmissionDispatcher {
    * @return true if the {@code SapsImage} is valid, false otherwise.
    */
   private Boolean validateLandsatImage(String region, Date date) {
+    if (sceneIndex != null) {
+      return sceneIndex.contains(region, date);
+    }
+
     SapsLandsatImage sapsLandsatImage = CatalogUtils.validateLandsatImage(
         catalog,
         region,
@@ -245,45 +504,167 @@ public class SubmissionDispatcher {
       String userEmail,
       String label)
       throws Exception {
-    
+
+    JobRequest request = JobRequest.forBoundingBox(
+        lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude)
+        .setDates(initDate, endDate)
+        .setPhaseTags(inputdownloadingPhaseTag, preprocessingPhaseTag, processingPhaseTag)
+        .setOwner(priority, userEmail, label);
+
     List<String> taskIds = new ArrayList<String>();
+    createJobSubmission(request, taskIds);
+    return taskIds;
+  }
+
+  /**
+   * It creates a new Job and its tasks, for a bounding box or a polygonal area
+   * of interest. When task creation fails, the job is marked as failed in the
+   * catalog.
+   *
+   * @param taskIds receives the identifiers of the tasks of the job, created
+   *                or reused
+   * @return the progress of the job, with the number of reused tasks
+   */
+  public JobProgress createJobSubmission(JobRequest request, List<String> taskIds)
+      throws Exception {
+
+    Set<String> regions = request.getRegions();
+    String jobId = addJob(request);
+    JobProgress progress = startJobProgress(jobId);
+
+    try {
+      createJobTasks(jobId, regions, request, progress, taskIds);
+    } catch (Exception e) {
+      failJob(jobId, progress, e);
+      throw e;
+    }
+
+    LOGGER.debug("created tasks");
+    return progress;
+  }
+
+  /**
+   * It creates a new Job and returns its identifier right away, while its tasks
+   * are generated and inserted in background. The progress of the task creation
+   * is given by {@link #getJobProgress}. When task creation fails, the job is
+   * marked as failed in the catalog.
+   *
+   * @throws RejectedExecutionException if too many jobs are already waiting for
+   *                                    their tasks to be created
+   */
+  public String submitJob(final JobRequest request) throws Exception {
+    final Set<String> regions = request.getRegions();
+
+    if (!submissionSlots.tryAcquire()) {
+      throw new RejectedExecutionException("Too many jobs waiting for their tasks to be created");
+    }
+
+    boolean submitted = false;
+    try {
+      final String jobId = addJob(request);
+      final JobProgress progress = startJobProgress(jobId);
+
+      submissionExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            createJobTasks(jobId, regions, request, progress, null);
+          } catch (Exception e) {
+            LOGGER.error("Error while creating tasks of job [" + jobId + "]", e);
+            failJob(jobId, progress, e);
+          } finally {
+            submissionSlots.release();
+          }
+        }
+      });
+      submitted = true;
+      return jobId;
+    } finally {
+      if (!submitted) submissionSlots.release();
+    }
+  }
+
+  /**
+   * It records the failure of the task creation of a job in its progress and in
+   * the job state in the catalog.
+   */
+  private void failJob(String jobId, JobProgress progress, Exception e) {
+    progress.fail(e.getMessage());
+    CatalogUtils.updateUserJob(catalog, jobId, JobState.FAILED, "update job state to FAILED");
+    jobsChanged();
+  }
+
+  private String addJob(JobRequest request) {
     String jobId = UUID.randomUUID().toString();
     addUserJob(
         jobId,
-        lowerLeftLatitude,
-        lowerLeftLongitude,
-        upperRightLatitude,
-        upperRightLongitude,
-        initDate,
-        endDate,
-        priority,
-        label,
-        taskIds,
-        userEmail
+        request.getLowerLeftLatitude(),
+        request.getLowerLeftLongitude(),
+        request.getUpperRightLatitude(),
+        request.getUpperRightLongitude(),
+        request.getInitDate(),
+        request.getEndDate(),
+        request.getPriority(),
+        request.getLabel(),
+        new ArrayList<String>(),
+        request.getUserEmail()
         );
 
     LOGGER.info("Job [" + jobId + "] was created");
-    
-    taskIds = createJobTasks(
-        jobId,
-        lowerLeftLatitude,
-        lowerLeftLongitude,
-        upperRightLatitude,
-        upperRightLongitude,
-        initDate,
-        endDate,
-        inputdownloadingPhaseTag,
-        preprocessingPhaseTag,
-        processingPhaseTag,
-        priority,
-        userEmail,
-        label);
-    
-    LOGGER.debug("created tasks");
-    return taskIds;
+    return jobId;
+  }
+
+  private JobProgress startJobProgress(String jobId) {
+    long oldest = System.currentTimeMillis() - JOB_PROGRESS_RETENTION_MILLIS;
+    for (Iterator<JobProgress> it = jobProgress.values().iterator(); it.hasNext(); ) {
+      JobProgress progress = it.next();
+      if (progress.isFinished() && progress.getCompletionTime().getTime() < oldest) {
+        it.remove();
+      }
+    }
+
+    JobProgress progress = new JobProgress(jobId);
+    jobProgress.put(jobId, progress);
+    return progress;
   }
 
-  private List<String> createJobTasks(
+  /**
+   * It gets the progress of the task creation of a job submitted since the
+   * dispatcher started. Finished jobs are kept for one hour.
+   *
+   * @return the job progress, or null if it is unknown
+   */
+  public JobProgress getJobProgress(String jobId) {
+    return jobProgress.get(jobId);
+  }
+
+  /**
+   * It gets the user who submitted a Job, from the job record in the catalog.
+   *
+   * @return the email of the job owner, or null if there is no such job
+   * @throws SapsException if tasks are not inserted in batches
+   */
+  public String getJobOwner(String jobId) throws Exception {
+    if (taskStore == null) {
+      throw new SapsException("Job owners can only be read when tasks are inserted in batches");
+    }
+    return taskStore.findJobOwner(jobId);
+  }
+
+  /**
+   * It extends a Job to a new area and date window, creating only the tasks of
+   * the scenes the job does not cover yet. The new tasks share the priority,
+   * user, tags and digests of the tasks of the job owner, and are inserted in a
+   * single transaction. The area and dates stored in the job record are kept
+   * as submitted, since the catalog has no way to update them; a failed
+   * extension leaves the job and its tasks unchanged.
+   *
+   * @param taskIds receives the identifiers of the created tasks
+   * @return the progress of the extension
+   * @throws SapsException if the job has no tasks, is still creating tasks, or
+   *                       tasks are not inserted in batches
+   */
+  public JobProgress extendJob(
       String jobId,
       String lowerLeftLatitude,
       String lowerLeftLongitude,
@@ -291,80 +672,259 @@ public class SubmissionDispatcher {
       String upperRightLongitude,
       Date initDate,
       Date endDate,
-      String inputdownloadingPhaseTag,
-      String preprocessingPhaseTag,
-      String processingPhaseTag,
-      int priority,
-      String userEmail,
-      String label)
+      List<String> taskIds)
       throws Exception {
-        
-    GregorianCalendar cal = new GregorianCalendar();
-    cal.setTime(initDate);
-    GregorianCalendar endCal = new GregorianCalendar();
-    endCal.setTime(endDate);
-    endCal.add(Calendar.DAY_OF_YEAR, 1);
+    Set<String> regions = RegionUtil.regionsFromArea(
+        lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
+    return extendJob(jobId, regions, initDate, endDate, taskIds);
+  }
 
-    String tagsFilePath = System.getProperty(EXECUTION_TAGS_FILE_PATH_KEY);
-    ExecutionScriptTag imageDockerInputdownloading = ExecutionScriptTagUtil.getExecutionScriptTag(
-        tagsFilePath, inputdownloadingPhaseTag, ExecutionScriptTagUtil.INPUT_DOWNLOADER);
+  /**
+   * It extends a Job to the tiles of a polygonal area of interest and a new date
+   * window, creating only the tasks of the scenes the job does not cover yet.
+   *
+   * @param taskIds receives the identifiers of the created tasks
+   * @return the progress of the extension
+   * @throws SapsException if the job has no tasks, is still creating tasks, or
+   *                       tasks are not inserted in batches
+   */
+  public JobProgress extendJob(
+      String jobId,
+      Geometry areaOfInterest,
+      double minTileCoverage,
+      Date initDate,
+      Date endDate,
+      List<String> taskIds)
+      throws Exception {
+    Set<String> regions = RegionUtil.regionsFromPolygon(areaOfInterest, minTileCoverage);
+    return extendJob(jobId, regions, initDate, endDate, taskIds);
+  }
+
+  private JobProgress extendJob(
+      String jobId, Set<String> regions, Date initDate, Date endDate, List<String> taskIds)
+      throws Exception {
+    if (taskStore == null) {
+      throw new SapsException("Jobs can only be extended when tasks are inserted in batches");
+    }
+
+    String owner = taskStore.findJobOwner(jobId);
+    TaskTemplate template = owner == null ? null : taskStore.findJobTemplate(jobId, owner);
+    if (template == null) {
+      throw new SapsException("Job [" + jobId + "] has no tasks to extend");
+    }
+
+    JobProgress progress;
+    synchronized (jobProgress) {
+      JobProgress current = jobProgress.get(jobId);
+      if (current != null && !current.isFinished()) {
+        throw new SapsException("Job [" + jobId + "] is still creating tasks");
+      }
+      progress = startJobProgress(jobId);
+    }
+
+    try {
+      progress.setStage(JobProgress.Stage.GENERATING);
+      Set<String> coveredScenes = taskStore.findJobScenes(jobId, initDate, endDate);
+      TaskGenerator.SceneLookup lookup = createSceneLookup(regions, initDate, endDate);
+
+      progress.setStage(JobProgress.Stage.INSERTING);
+      int created = taskGenerator.generateMissingAndInsert(
+          jobId, regions, initDate, endDate, template, lookup, coveredScenes, progress, taskIds);
+
+      LOGGER.info("Job [" + jobId + "] was extended with " + created + " tasks");
+      if (created > 0) {
+        CatalogUtils.updateUserJob(catalog, jobId, JobState.CREATED, "update job state to CREATED");
+        jobsChanged();
+      }
+      progress.finish();
+      return progress;
+    } catch (Exception e) {
+      // the new tasks were rolled back, so the job keeps the state it had
+      progress.fail(e.getMessage());
+      throw e;
+    }
+  }
+
+  /**
+   * It puts the failed tasks of a Job, or of a subset of them, back in the
+   * created state in a single catalog transaction, so they are scheduled again
+   * without resubmitting the job. Archived tasks are never touched.
+   *
+   * @param filter         subset of the job tasks to retry
+   * @param refreshDigests if the retried tasks get the current digests of their
+   *                       own phase tags instead of the ones they failed with
+   * @return number of tasks retried
+   * @throws SapsException if tasks are not inserted in batches
+   */
+  public int retryFailedTasks(String jobId, TaskFilter filter, boolean refreshDigests)
+      throws Exception {
+    if (taskStore == null) {
+      throw new SapsException("Tasks can only be retried when tasks are inserted in batches");
+    }
+
+    List<TaskTemplate> digests = null;
+    if (refreshDigests) {
+      // tasks linked from other jobs may have other tags, so digests are
+      // resolved once per set of phase tags of the failed tasks
+      Map<String, TaskTemplate> digestsByTags = new LinkedHashMap<String, TaskTemplate>();
+      for (TaskTemplate template : taskStore.findFailedTaskTemplates(jobId, filter)) {
+        String tags = template.getInputdownloadingTag() + "\n"
+            + template.getPreprocessingTag() + "\n" + template.getProcessingTag();
+        if (!digestsByTags.containsKey(tags)) {
+          digestsByTags.put(tags, refreshDigests(template));
+        }
+      }
+      digests = new ArrayList<TaskTemplate>(digestsByTags.values());
+    }
+
+    int retried = taskStore.retryFailedTasks(jobId, filter, digests);
+    LOGGER.info("Job [" + jobId + "] had " + retried + " failed tasks retried");
+    if (retried > 0) {
+      CatalogUtils.updateUserJob(catalog, jobId, JobState.CREATED, "update job state to CREATED");
+      jobsChanged();
+    }
+    return retried;
+  }
+
+  /**
+   * It gives a copy of the template with the digests the phase tags have now.
+   */
+  private TaskTemplate refreshDigests(TaskTemplate template) throws Exception {
+    String[] digests = DigestUtil.getDigests(
+        getExecutionScriptTags().getExecutionScriptTag(
+            template.getInputdownloadingTag(), ExecutionScriptTagUtil.INPUT_DOWNLOADER),
+        getExecutionScriptTags().getExecutionScriptTag(
+            template.getPreprocessingTag(), ExecutionScriptTagUtil.PRE_PROCESSING),
+        getExecutionScriptTags().getExecutionScriptTag(
+            template.getProcessingTag(), ExecutionScriptTagUtil.PROCESSING));
+    return new TaskTemplate(
+        template.getPriority(),
+        template.getUserEmail(),
+        template.getInputdownloadingTag(),
+        digests[0],
+        template.getPreprocessingTag(),
+        digests[1],
+        template.getProcessingTag(),
+        digests[2]);
+  }
+
+  /**
+   * It gives the datasets with a scene of a region on a day from the scene
+   * index, from the scenes of the job found with one catalog query, or from
+   * one catalog query per region and day, whichever is available.
+   */
+  private TaskGenerator.SceneLookup createSceneLookup(
+      Set<String> regions, Date initDate, Date endDate) throws SQLException {
+    if (sceneIndex != null) {
+      return new TaskGenerator.SceneLookup() {
+        @Override
+        public List<String> getDatasets(String region, Date day, List<String> datasets) {
+          List<String> found = sceneIndex.getDatasets(region, day, datasets);
+          // a scene of a dataset not among the candidates, e.g. one the index
+          // was not loaded with, counts for every satellite as in the catalog
+          if (found.isEmpty() && sceneIndex.contains(region, day)) {
+            return datasets;
+          }
+          return found;
+        }
+      };
+    }
+
+    final SceneAvailability availability =
+        taskStore == null ? null : taskStore.findAvailableScenes(regions, initDate, endDate);
+    return new TaskGenerator.SceneLookup() {
+      @Override
+      public List<String> getDatasets(String region, Date day, List<String> datasets) {
+        boolean available = availability != null
+            ? availability.contains(region, day)
+            : validateLandsatImage(region, day);
+        return available ? datasets : Collections.<String>emptyList();
+      }
+    };
+  }
+
+  /**
+   * It creates the tasks of a job, streaming them from the generator to the
+   * catalog.
+   *
+   * @param regions is the regions of the tiles covering the job area
+   * @param taskIds is the list receiving the identifiers of the tasks of the
+   *                job, or null when they are not needed
+   */
+  private void createJobTasks(
+      final String jobId,
+      Set<String> regions,
+      JobRequest request,
+      final JobProgress progress,
+      final List<String> taskIds)
+      throws Exception {
+    Date initDate = request.getInitDate();
+    Date endDate = request.getEndDate();
+    String inputdownloadingPhaseTag = request.getInputdownloadingPhaseTag();
+    String preprocessingPhaseTag = request.getPreprocessingPhaseTag();
+    String processingPhaseTag = request.getProcessingPhaseTag();
+    boolean reuseTasks = request.isReuseTasks();
+
+    ExecutionScriptTag imageDockerInputdownloading = getExecutionScriptTags().getExecutionScriptTag(
+        inputdownloadingPhaseTag, ExecutionScriptTagUtil.INPUT_DOWNLOADER);
         LOGGER.info("inputd downloading tag: " + imageDockerInputdownloading);
-    ExecutionScriptTag imageDockerPreprocessing = ExecutionScriptTagUtil.getExecutionScriptTag(
-        tagsFilePath, preprocessingPhaseTag, ExecutionScriptTagUtil.PRE_PROCESSING);
+    ExecutionScriptTag imageDockerPreprocessing = getExecutionScriptTags().getExecutionScriptTag(
+        preprocessingPhaseTag, ExecutionScriptTagUtil.PRE_PROCESSING);
         LOGGER.info("processing tag: " + imageDockerPreprocessing);
-    ExecutionScriptTag imageDockerProcessing = ExecutionScriptTagUtil.getExecutionScriptTag(
-        tagsFilePath, processingPhaseTag, ExecutionScriptTagUtil.PROCESSING);
+    ExecutionScriptTag imageDockerProcessing = getExecutionScriptTags().getExecutionScriptTag(
+        processingPhaseTag, ExecutionScriptTagUtil.PROCESSING);
 
-    String digestInputdownloading = DigestUtil.getDigest(imageDockerInputdownloading);
-    String digestPreprocessing = DigestUtil.getDigest(imageDockerPreprocessing);
-    String digestProcessing = DigestUtil.getDigest(imageDockerProcessing);
+    String[] digests =
+        DigestUtil.getDigests(
+            imageDockerInputdownloading, imageDockerPreprocessing, imageDockerProcessing);
+    String digestInputdownloading = digests[0];
+    String digestPreprocessing = digests[1];
+    String digestProcessing = digests[2];
 
-    Set<String> regions = RegionUtil.regionsFromArea(
-        lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
+    final TaskTemplate template = new TaskTemplate(
+        request.getPriority(),
+        request.getUserEmail(),
+        inputdownloadingPhaseTag,
+        digestInputdownloading,
+        preprocessingPhaseTag,
+        digestPreprocessing,
+        processingPhaseTag,
+        digestProcessing);
+
+    progress.setStage(JobProgress.Stage.GENERATING);
+    TaskGenerator.SceneLookup lookup = createSceneLookup(regions, initDate, endDate);
 
-    List<String> tasksIds = new ArrayList<String>();
-    List<Object[]> tasksData = new ArrayList<Object[]>();
-    List<Object[]> tasksDataSync = Collections.synchronizedList(tasksData);
-        
-    while (cal.before(endCal)) {
-      for (String region : regions) {
-        Boolean isValidImage = validateLandsatImage(region, cal.getTime());
-        if (isValidImage) {
-          int startingYear = cal.get(Calendar.YEAR);
-          List<String> datasets = DatasetUtil.getSatsInOperationByYear(startingYear);
-          for (String dataset : datasets) {
-            String taskId = UUID.randomUUID().toString();
-            tasksDataSync.add(new Object[] { taskId, cal.getTime(), dataset, region });
-            LOGGER.debug("inserting task [" + taskId + "] into [" + jobId  + "]");
-            insertJobTask(taskId, jobId);
+    // tasks are written as they are generated from here on
+    progress.setStage(JobProgress.Stage.INSERTING);
+
+    if (taskStore != null) {
+      taskGenerator.generateAndInsert(
+          jobId, regions, initDate, endDate, template, lookup, progress, reuseTasks, taskIds);
+    } else {
+      if (reuseTasks) {
+        LOGGER.warn("Tasks are only reused when inserted in batches; creating new tasks for job ["
+            + jobId + "]");
+      }
+      for (TaskGenerator.Partition partition :
+          TaskGenerator.partition(regions, initDate, endDate)) {
+        TaskGenerator.generate(partition, lookup, progress, new TaskGenerator.TaskSink() {
+          @Override
+          public void accept(TaskDescriptor task) {
+            LOGGER.debug("inserting task [" + task.getTaskId() + "] into [" + jobId + "]");
+            insertJobTask(task.getTaskId(), jobId);
             LOGGER.debug("task inserted");
-            tasksIds.add(taskId);
+            addTask(task, template);
+            progress.tasksInserted(1);
+            if (taskIds != null) taskIds.add(task.getTaskId());
           }
-        };
-        cal.add(Calendar.DAY_OF_YEAR, 1);
+        });
       }
     }
-   
-    while (!tasksDataSync.isEmpty()) {
-        synchronized (tasksDataSync) {
-        if (!tasksDataSync.isEmpty()) {
-          addTask(
-              tasksDataSync,
-              priority,
-              userEmail,
-              inputdownloadingPhaseTag,
-              digestInputdownloading,
-              preprocessingPhaseTag,
-              digestPreprocessing,
-              processingPhaseTag,
-              digestProcessing);
-          }
-        }
-      }
 
     LOGGER.info("All tasks were created");
     CatalogUtils.updateUserJob(catalog, jobId, JobState.CREATED, "update job state to CREATED");
-    return tasksIds;
+    jobsChanged();
+    progress.finish();
   }
 
   public SapsImage getTask(String taskId) {
@@ -395,10 +955,131 @@ public class SubmissionDispatcher {
         recoverOngoing, recoverCompleted, "get job tasks");
   }
 
+  /**
+   * It reads a page of the tasks of a Job starting right after a cursor, so a
+   * deep page costs as much as the first one.
+   *
+   * @param after position after the last task of the previous page, or null
+   *              for the first page
+   * @return the tasks of the page and the cursor of the next one
+   * @throws SapsException if tasks are not inserted in batches
+   */
+  public TaskPage getJobTasksPage(String jobId, ImageTaskState state, String search,
+      boolean recoverOngoing, boolean recoverCompleted, TaskSortField sortField,
+      boolean descending, TaskCursor after, int size) throws Exception {
+    if (taskStore == null) {
+      throw new SapsException("Cursor pagination is only available when tasks are inserted in batches");
+    }
+    return taskStore.findJobTasksPage(jobId, state, search, recoverOngoing, recoverCompleted,
+        sortField, descending, after, size);
+  }
+
   public Integer getJobTasksCount(String jobId, ImageTaskState state, String search, boolean recoverOngoing, boolean recoverCompleted) {
     return CatalogUtils.getUserJobTasksCount(catalog, jobId, state, search, recoverOngoing, recoverCompleted, "get amount of tasks");
   }
 
+  /**
+   * It counts the tasks of each Job by state. The counts are read from memory
+   * when they are kept there, from a single catalog query when tasks are
+   * inserted in batches, or from the four count queries the task listing used
+   * to make per job otherwise.
+   *
+   * @param jobIds jobs to summarize
+   * @return the summary of each job, by job id
+   */
+  public Map<String, JobSummary> getJobSummaries(Collection<String> jobIds) throws SQLException {
+    if (jobCounters != null) {
+      return jobCounters.get(jobIds);
+    }
+    if (taskStore != null) {
+      return taskStore.summarizeJobs(jobIds);
+    }
+
+    Map<String, JobSummary> summaries = new HashMap<String, JobSummary>();
+    for (String jobId : jobIds) {
+      Map<String, Integer> tasksByState = new HashMap<String, Integer>();
+      tasksByState.put(ImageTaskState.FAILED.getValue(),
+          getJobTasksCount(jobId, ImageTaskState.FAILED, null, false, false));
+      tasksByState.put(ImageTaskState.ARCHIVED.getValue(),
+          getJobTasksCount(jobId, ImageTaskState.ARCHIVED, null, false, false));
+      summaries.put(jobId, new JobSummary(
+          jobId,
+          getJobTasksCount(jobId, null, null, false, false),
+          getJobTasksCount(jobId, null, null, true, false),
+          tasksByState));
+    }
+    return summaries;
+  }
+
+  /**
+   * It follows the changes of a Job, or of every Job of a user, as they are
+   * found by the polling of the task counters.
+   *
+   * @param jobId     Job followed, or null to follow the Jobs of the user
+   * @param userEmail user following the changes
+   * @return the subscription the changes are read from
+   * @throws SapsException if the task counters are not kept in memory
+   */
+  public JobChangeFeed.Subscription subscribeToJobChanges(String jobId, String userEmail)
+      throws SapsException {
+    if (jobChangeFeed == null) {
+      throw new SapsException("Job changes cannot be followed without job progress counters");
+    }
+    return jobChangeFeed.subscribe(jobId, userEmail);
+  }
+
+  /**
+   * It gives a version of the Jobs and their tasks, to tell clients polling the
+   * job listing whether it changed since they last read it. It changes when a
+   * Job is created or updated by this dispatcher and when a task is updated in
+   * Catalog; with task counters in memory, it follows their polling.
+   *
+   * @return the version, or null if it cannot be read without listing the Jobs
+   */
+  public String getJobsVersion() throws SQLException {
+    if (taskStore == null) {
+      return null;
+    }
+    // the counts have no mark until they are loaded in background
+    Timestamp latestUpdate = jobCounters != null ? jobCounters.getHighWaterMark() : null;
+    if (latestUpdate == null) {
+      latestUpdate = taskStore.findLatestTaskUpdate();
+    }
+    return jobsVersionPrefix() + "-" + (latestUpdate == null ? 0 : latestUpdate.getTime());
+  }
+
+  /**
+   * It gives a version of a Job and its tasks, to tell clients polling its task
+   * listing whether it changed since they last read it.
+   *
+   * @param jobId Job whose version is given
+   * @return the version, or null if it cannot be read without listing the tasks
+   */
+  public String getJobVersion(String jobId) throws SQLException {
+    if (taskStore == null) {
+      return null;
+    }
+    String version = jobsVersionPrefix() + "-" + taskStore.findJobTasksVersion(jobId);
+    if (jobCounters != null) {
+      // the counts are polled, so they may change after the tasks they count
+      JobSummary summary = jobCounters.get(Collections.singleton(jobId)).get(jobId);
+      version += "-" + new TreeMap<String, Integer>(summary.getTasksByState());
+    }
+    return version;
+  }
+
+  /**
+   * The Jobs are not versioned in Catalog, so their changes are counted here,
+   * together with the start of this dispatcher for the count to never repeat.
+   */
+  private String jobsVersionPrefix() {
+    return startTime + "-" + jobChanges.get();
+  }
+
+  private void jobsChanged() {
+    jobChanges.incrementAndGet();
+  }
+
   public List<SapsImage> getProcessedTasks(
       String lowerLeftLatitude,
       String lowerLeftLongitude,
@@ -415,32 +1096,77 @@ public class SubmissionDispatcher {
         lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
 
     for (String region : regions) {
-     
-      List<SapsImage> tasksInCurrentRegion = CatalogUtils.getProcessedTasks(
-          catalog,
-          region,
-          initDate,
-          endDate,
-          inputdownloadingPhaseTag,
-          preprocessingPhaseTag,
-          processingPhaseTag,
-          "gets all processed tasks with region ["
-              + region
-              + "], inputdownloading tag ["
-              + inputdownloadingPhaseTag
-              + "], preprocessing tag ["
-              + preprocessingPhaseTag
-              + "], processing tag ["
-              + processingPhaseTag
-              + "] beetwen "
-              + initDate
-              + " and "
-              + endDate);
-      filteredTasks.addAll(tasksInCurrentRegion);
+      filteredTasks.addAll(getProcessedTasks(region, initDate, endDate,
+          inputdownloadingPhaseTag, preprocessingPhaseTag, processingPhaseTag));
     }
 
     return filteredTasks;
   }
+
+  /**
+   * It opens a reader of the processed tasks of an area. The catalog is queried
+   * before this returns, so its errors are known before any task is read. With
+   * batched inserts, one query reads every region and its rows are fetched as
+   * they are read; otherwise every region is read from Catalog here.
+   */
+  public TaskReader openProcessedTasks(
+      String lowerLeftLatitude,
+      String lowerLeftLongitude,
+      String upperRightLatitude,
+      String upperRightLongitude,
+      Date initDate,
+      Date endDate,
+      String inputdownloadingPhaseTag,
+      String preprocessingPhaseTag,
+      String processingPhaseTag) throws SQLException {
+    if (taskStore != null) {
+      return taskStore.openProcessedTasks(
+          RegionUtil.regionsFromArea(lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude),
+          initDate, endDate, inputdownloadingPhaseTag, preprocessingPhaseTag, processingPhaseTag);
+    }
+
+    final Iterator<SapsImage> tasks = getProcessedTasks(lowerLeftLatitude, lowerLeftLongitude,
+        upperRightLatitude, upperRightLongitude, initDate, endDate, inputdownloadingPhaseTag,
+        preprocessingPhaseTag, processingPhaseTag).iterator();
+    return new TaskReader() {
+      @Override
+      public SapsImage next() {
+        return tasks.hasNext() ? tasks.next() : null;
+      }
+
+      @Override
+      public void close() {}
+    };
+  }
+
+  private List<SapsImage> getProcessedTasks(
+      String region,
+      Date initDate,
+      Date endDate,
+      String inputdownloadingPhaseTag,
+      String preprocessingPhaseTag,
+      String processingPhaseTag) {
+    return CatalogUtils.getProcessedTasks(
+        catalog,
+        region,
+        initDate,
+        endDate,
+        inputdownloadingPhaseTag,
+        preprocessingPhaseTag,
+        processingPhaseTag,
+        "gets all processed tasks with region ["
+            + region
+            + "], inputdownloading tag ["
+            + inputdownloadingPhaseTag
+            + "], preprocessing tag ["
+            + preprocessingPhaseTag
+            + "], processing tag ["
+            + processingPhaseTag
+            + "] beetwen "
+            + initDate
+            + " and "
+            + endDate);
+  }
 }
 
 
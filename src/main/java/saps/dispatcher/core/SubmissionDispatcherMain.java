@@ -41,6 +41,16 @@ public class SubmissionDispatcherMain {
 
     DatabaseApplication databaseApplication = new DatabaseApplication(properties);
     databaseApplication.startServer();
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  try {
+                    databaseApplication.stopServer();
+                  } catch (Exception e) {
+                    LOGGER.error("Error while stopping the server", e);
+                  }
+                }));
 
     String userEmail = properties.getProperty(ADMIN_EMAIL);
 
@@ -57,6 +67,5 @@ public class SubmissionDispatcherMain {
         LOGGER.error("Error while creating user", ex);
       }
     }
-
   }
 }
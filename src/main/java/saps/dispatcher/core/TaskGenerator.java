@@ -0,0 +1,364 @@
+/* (C)2020 */
+package saps.dispatcher.core;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+import saps.dispatcher.core.catalog.TaskDescriptor;
+import saps.dispatcher.core.catalog.TaskStore;
+import saps.dispatcher.core.catalog.TaskTemplate;
+import saps.dispatcher.core.catalog.TaskWriter;
+import saps.dispatcher.utils.DatasetUtil;
+
+/**
+ * Generates the tasks of a job split into (region, year) partitions. Partitions share nothing, so
+ * they are generated and inserted concurrently, each in its own transaction, on an executor sized
+ * to a share of the catalog connection pool. Only the order of the returned task ids is kept (year,
+ * then region, then day); the order rows reach the catalog does not matter.
+ */
+public class TaskGenerator {
+
+  private static final Logger LOGGER = Logger.getLogger(TaskGenerator.class);
+
+  /** Datasets with a scene of a region on a day. */
+  public interface SceneLookup {
+
+    /**
+     * @param region region in the PPPRRR form
+     * @param day day of the scene
+     * @param datasets datasets in operation on the day
+     * @return the datasets, among the given ones, to create tasks for
+     */
+    List<String> getDatasets(String region, Date day, List<String> datasets) throws Exception;
+  }
+
+  /** Receives the tasks of a partition as they are generated. */
+  public interface TaskSink {
+
+    void accept(TaskDescriptor task) throws Exception;
+  }
+
+  /** Days of one year of a region. */
+  public static class Partition {
+
+    private final String region;
+    private final Date firstDay;
+    private final Date lastDay;
+
+    Partition(String region, Date firstDay, Date lastDay) {
+      // one instance per region, shared by every task of the partition
+      this.region = region.intern();
+      this.firstDay = firstDay;
+      this.lastDay = lastDay;
+    }
+
+    public String getRegion() {
+      return region;
+    }
+
+    public Date getFirstDay() {
+      return firstDay;
+    }
+
+    public Date getLastDay() {
+      return lastDay;
+    }
+  }
+
+  private final TaskStore taskStore;
+  private final ExecutorService executor;
+
+  /**
+   * @param taskStore bulk access used to insert each partition
+   * @param executor executor running the partitions, or null to run them in the caller thread
+   */
+  public TaskGenerator(TaskStore taskStore, ExecutorService executor) {
+    this.taskStore = taskStore;
+    this.executor = executor;
+  }
+
+  /** Stops the executor once the partitions already submitted are inserted. */
+  public void shutdown() {
+    if (executor != null) executor.shutdown();
+  }
+
+  /**
+   * Splits the job date range into one partition per region and calendar year.
+   *
+   * @param regions regions in the PPPRRR form
+   * @param initDate first day
+   * @param endDate last day, inclusive
+   * @return partitions ordered by year, then region
+   */
+  public static List<Partition> partition(Set<String> regions, Date initDate, Date endDate) {
+    List<Partition> partitions = new ArrayList<Partition>();
+    GregorianCalendar yearStart = new GregorianCalendar();
+    yearStart.setTime(initDate);
+    GregorianCalendar end = new GregorianCalendar();
+    end.setTime(endDate);
+
+    while (!yearStart.after(end)) {
+      GregorianCalendar yearEnd =
+          new GregorianCalendar(yearStart.get(Calendar.YEAR), Calendar.DECEMBER, 31);
+      if (yearEnd.after(end)) yearEnd = end;
+
+      for (String region : regions) {
+        partitions.add(new Partition(region, yearStart.getTime(), yearEnd.getTime()));
+      }
+      yearStart = new GregorianCalendar(yearStart.get(Calendar.YEAR) + 1, Calendar.JANUARY, 1);
+    }
+    return partitions;
+  }
+
+  /**
+   * Generates the tasks of a partition, one per dataset with a scene on each day, handing each to
+   * the sink as soon as it is generated.
+   *
+   * @param partition region and days
+   * @param lookup datasets with a scene of the region on a day
+   * @param progress job progress, counting the generated tasks
+   * @param sink receives the generated tasks
+   * @return number of tasks generated
+   */
+  public static int generate(
+      Partition partition, SceneLookup lookup, JobProgress progress, TaskSink sink)
+      throws Exception {
+    int generated = 0;
+    GregorianCalendar day = new GregorianCalendar();
+    day.setTime(partition.getFirstDay());
+    List<String> datasets = DatasetUtil.getSatsInOperationByYear(day.get(Calendar.YEAR));
+    int epochDay = (int) toEpochDay(day);
+
+    while (!day.getTime().after(partition.getLastDay())) {
+      List<String> sceneDatasets =
+          lookup.getDatasets(partition.getRegion(), day.getTime(), datasets);
+      for (String dataset : sceneDatasets) {
+        sink.accept(
+            new TaskDescriptor(UUID.randomUUID(), epochDay, dataset, partition.getRegion()));
+      }
+      generated += sceneDatasets.size();
+      progress.addGeneratedTasks(sceneDatasets.size());
+      day.add(Calendar.DAY_OF_YEAR, 1);
+      epochDay++;
+    }
+    return generated;
+  }
+
+  /**
+   * Generates and inserts the tasks of a job, one partition per executor thread. Each partition
+   * streams its tasks into its own transaction, so no more than one batch of tasks per partition is
+   * held in memory. If a partition fails, the partitions not started yet are cancelled, the running
+   * ones are waited for, and every task already inserted for the job is deleted before the error is
+   * thrown.
+   *
+   * @param reuseTasks link the tasks of other jobs, of any user, that match a scene and the
+   *     template tags and digests, instead of creating new ones
+   * @param taskIds receives the ids of the tasks of the job in partition order, or null when they
+   *     are not needed
+   * @return number of tasks of the job, created or reused
+   */
+  public int generateAndInsert(
+      final String jobId,
+      Set<String> regions,
+      Date initDate,
+      Date endDate,
+      final TaskTemplate template,
+      final SceneLookup lookup,
+      final JobProgress progress,
+      final boolean reuseTasks,
+      List<String> taskIds)
+      throws Exception {
+    List<Partition> partitions = partition(regions, initDate, endDate);
+    LOGGER.debug("Creating tasks of job [" + jobId + "] in " + partitions.size() + " partitions");
+
+    final boolean keepTaskIds = taskIds != null;
+    List<Callable<PartitionResult>> work = new ArrayList<Callable<PartitionResult>>();
+    for (final Partition partition : partitions) {
+      work.add(
+          new Callable<PartitionResult>() {
+            @Override
+            public PartitionResult call() throws Exception {
+              return insertPartition(
+                  jobId, partition, template, lookup, progress, reuseTasks, keepTaskIds);
+            }
+          });
+    }
+
+    int created = 0;
+    if (executor == null || partitions.size() <= 1) {
+      try {
+        for (Callable<PartitionResult> partitionWork : work) {
+          created += partitionWork.call().add(taskIds);
+        }
+      } catch (Exception e) {
+        rollBack(jobId);
+        throw e;
+      }
+      return created;
+    }
+
+    List<Future<PartitionResult>> futures = new ArrayList<Future<PartitionResult>>();
+    for (Callable<PartitionResult> partitionWork : work) {
+      futures.add(executor.submit(partitionWork));
+    }
+
+    Exception failure = null;
+    for (Future<PartitionResult> future : futures) {
+      if (failure != null) {
+        future.cancel(false);
+        continue;
+      }
+      try {
+        created += future.get().add(taskIds);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        failure = cause instanceof Exception ? (Exception) cause : new Exception(cause);
+      }
+    }
+
+    if (failure != null) {
+      waitForRunning(futures);
+      rollBack(jobId);
+      throw failure;
+    }
+    return created;
+  }
+
+  /**
+   * Generates the tasks of a job for scenes it does not cover yet and inserts them in a single
+   * transaction, so an extension is either applied whole or not at all.
+   *
+   * @param coveredScenes scenes the job already has tasks for, as {@link TaskStore#sceneKey(String,
+   *     int, String)} keys
+   * @param taskIds receives the ids of the created tasks in partition order, or null when they are
+   *     not needed
+   * @return number of tasks created
+   */
+  public int generateMissingAndInsert(
+      String jobId,
+      Set<String> regions,
+      Date initDate,
+      Date endDate,
+      TaskTemplate template,
+      SceneLookup lookup,
+      final Set<String> coveredScenes,
+      JobProgress progress,
+      final List<String> taskIds)
+      throws Exception {
+    final int[] created = new int[1];
+    try (final TaskWriter writer = taskStore.openJobTaskWriter(jobId, template, progress)) {
+      for (Partition partition : partition(regions, initDate, endDate)) {
+        generate(
+            partition,
+            lookup,
+            progress,
+            new TaskSink() {
+              @Override
+              public void accept(TaskDescriptor task) throws Exception {
+                String scene =
+                    TaskStore.sceneKey(task.getRegion(), task.getEpochDay(), task.getDataset());
+                if (coveredScenes.contains(scene)) return;
+                writer.write(task);
+                created[0]++;
+                if (taskIds != null) taskIds.add(task.getTaskId());
+              }
+            });
+      }
+      writer.commit();
+    }
+    return created[0];
+  }
+
+  private PartitionResult insertPartition(
+      String jobId,
+      Partition partition,
+      TaskTemplate template,
+      SceneLookup lookup,
+      final JobProgress progress,
+      boolean reuseTasks,
+      boolean keepTaskIds)
+      throws Exception {
+    final PartitionResult result = new PartitionResult(keepTaskIds);
+    final Map<String, String> reusableTasks =
+        reuseTasks
+            ? taskStore.findReusableTasks(
+                partition.getRegion(), partition.getFirstDay(), partition.getLastDay(), template)
+            : Collections.<String, String>emptyMap();
+    try (final TaskWriter writer = taskStore.openJobTaskWriter(jobId, template, progress)) {
+      result.count =
+          generate(
+              partition,
+              lookup,
+              progress,
+              new TaskSink() {
+                @Override
+                public void accept(TaskDescriptor task) throws Exception {
+                  String taskId =
+                      reusableTasks.get(TaskStore.sceneKey(task.getEpochDay(), task.getDataset()));
+                  if (taskId != null) {
+                    writer.link(taskId);
+                    progress.addReusedTasks(1);
+                  } else {
+                    writer.write(task);
+                    taskId = task.getTaskId();
+                  }
+                  if (result.taskIds != null) result.taskIds.add(taskId);
+                }
+              });
+      writer.commit();
+    }
+    return result;
+  }
+
+  private static long toEpochDay(GregorianCalendar day) {
+    return LocalDate.of(
+            day.get(Calendar.YEAR), day.get(Calendar.MONTH) + 1, day.get(Calendar.DAY_OF_MONTH))
+        .toEpochDay();
+  }
+
+  private static void waitForRunning(List<Future<PartitionResult>> futures) {
+    for (Future<PartitionResult> future : futures) {
+      try {
+        future.get();
+      } catch (Exception e) {
+        // cancelled or failed; only completion matters here
+      }
+    }
+  }
+
+  private void rollBack(String jobId) {
+    try {
+      int deleted = taskStore.deleteJobTasks(jobId);
+      LOGGER.info("Deleted " + deleted + " tasks of failed job [" + jobId + "]");
+    } catch (Exception e) {
+      LOGGER.error("Error while deleting tasks of failed job [" + jobId + "]", e);
+    }
+  }
+
+  private static class PartitionResult {
+
+    private final List<String> taskIds;
+    private int count;
+
+    PartitionResult(boolean keepTaskIds) {
+      this.taskIds = keepTaskIds ? new ArrayList<String>() : null;
+    }
+
+    int add(List<String> jobTaskIds) {
+      if (jobTaskIds != null) jobTaskIds.addAll(taskIds);
+      return count;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+/**
+ * Catalog tables and columns written directly by the dispatcher. They mirror the schema created by
+ * JDBCCatalog (saps-catalog) and must be kept in sync with it; {@link TaskStore#checkSchema} tells
+ * at startup whether the catalog in use has them. The values written are the saps-common ones, e.g.
+ * {@code ImageTaskState.CREATED.getValue()}.
+ */
+public final class CatalogSchema {
+
+  private CatalogSchema() {}
+
+  public static final class Tasks {
+
+    private Tasks() {}
+
+    public static final String NAME = "tasks";
+
+    public static final String ID = "task_id";
+    public static final String DATASET = "dataset";
+    public static final String REGION = "region";
+    public static final String IMAGE_DATE = "image_date";
+    public static final String STATE = "state";
+    public static final String ARREBOL_JOB_ID = "arrebol_job_id";
+    public static final String FEDERATION_MEMBER = "federation_member";
+    public static final String PRIORITY = "priority";
+    public static final String USER_EMAIL = "user_email";
+    public static final String INPUTDOWNLOADING_TAG = "inputdownloading_tag";
+    public static final String INPUTDOWNLOADING_DIGEST = "inputdownloading_digest";
+    public static final String PREPROCESSING_TAG = "preprocessing_tag";
+    public static final String PREPROCESSING_DIGEST = "preprocessing_digest";
+    public static final String PROCESSING_TAG = "processing_tag";
+    public static final String PROCESSING_DIGEST = "processing_digest";
+    public static final String CREATION_TIME = "creation_time";
+    public static final String UPDATED_TIME = "updated_time";
+    public static final String STATUS = "status";
+    public static final String ERROR_MSG = "error_msg";
+
+    /**
+     * Index the polling of the job task counts needs to read the tasks updated since a time without
+     * scanning them all. JDBCCatalog does not create it.
+     */
+    public static final String UPDATED_TIME_INDEX_DDL =
+        "CREATE INDEX tasks_updated_time_idx ON " + NAME + " (" + UPDATED_TIME + ")";
+
+    /** Error message JDBCCatalog gives to a task that was just created. */
+    public static final String NO_ERROR_MSG = "";
+
+    /** Columns read and written by the dispatcher, checked against the catalog at startup. */
+    public static final String[] COLUMNS = {
+      ID,
+      DATASET,
+      REGION,
+      IMAGE_DATE,
+      STATE,
+      ARREBOL_JOB_ID,
+      FEDERATION_MEMBER,
+      PRIORITY,
+      USER_EMAIL,
+      INPUTDOWNLOADING_TAG,
+      INPUTDOWNLOADING_DIGEST,
+      PREPROCESSING_TAG,
+      PREPROCESSING_DIGEST,
+      PROCESSING_TAG,
+      PROCESSING_DIGEST,
+      CREATION_TIME,
+      UPDATED_TIME,
+      STATUS,
+      ERROR_MSG
+    };
+
+    /** Inserts a task, given its {@link #COLUMNS} in order. */
+    public static final String INSERT_SQL = insertSql(NAME, COLUMNS);
+  }
+
+  public static final class Jobs {
+
+    private Jobs() {}
+
+    public static final String NAME = "jobs";
+
+    public static final String ID = "job_id";
+    public static final String USER_EMAIL = "user_email";
+
+    public static final String[] COLUMNS = {ID, USER_EMAIL};
+  }
+
+  public static final class JobTasks {
+
+    private JobTasks() {}
+
+    public static final String NAME = "jobs_tasks";
+
+    public static final String JOB_ID = "job_id";
+    public static final String TASK_ID = "task_id";
+
+    public static final String[] COLUMNS = {JOB_ID, TASK_ID};
+
+    public static final String INSERT_SQL = insertSql(NAME, COLUMNS);
+  }
+
+  public static final class LandsatImages {
+
+    private LandsatImages() {}
+
+    public static final String NAME = "landsat_images";
+
+    public static final String REGION = "region";
+    public static final String IMAGE_DATE = "image_date";
+    public static final String DATASET = "dataset";
+
+    public static final String[] COLUMNS = {REGION, IMAGE_DATE, DATASET};
+  }
+
+  /** Gives the statement inserting a row with the given columns, in order. */
+  private static String insertSql(String table, String[] columns) {
+    StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+    StringBuilder values = new StringBuilder();
+    for (int i = 0; i < columns.length; i++) {
+      sql.append(i == 0 ? "" : ", ").append(columns[i]);
+      values.append(i == 0 ? "?" : ", ?");
+    }
+    return sql.append(") VALUES (").append(values).append(")").toString();
+  }
+}
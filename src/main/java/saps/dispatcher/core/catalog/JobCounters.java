@@ -0,0 +1,415 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+
+/**
+ * Task counts of every job by state, kept in memory so job progress is served without counting
+ * tasks on each request.
+ *
+ * <p>The counts are kept up to date by polling the catalog for the jobs with a task updated since a
+ * high-water mark, the latest task update time seen, and counting again only the tasks of those
+ * jobs. Each poll looks a little before the mark, so updates committed late with an earlier time
+ * are not missed. Whatever still escapes polling, e.g. deleted tasks, is corrected by a periodic
+ * full count. The counts and the mark are saved to a snapshot file after each full count, at most
+ * once per snapshot interval while polling, and on close, so a restart resumes polling instead of
+ * counting every task again. Listeners are told of the jobs that changed on each poll, so changes
+ * are found once however many clients follow them. They are told after the counts are released, so
+ * slow listeners do not hold up requests for counts, and in the order the changes were found.
+ */
+public class JobCounters {
+
+  private static final Logger LOGGER = Logger.getLogger(JobCounters.class);
+
+  /** Default time between snapshots saved while polling. */
+  public static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = 300000;
+
+  private final TaskStore taskStore;
+  private final File snapshotFile;
+  private final long pollOverlapMillis;
+  private final long snapshotIntervalMillis;
+  private final ConcurrentMap<String, JobSummary> summaries =
+      new ConcurrentHashMap<String, JobSummary>();
+  private final Gson gson = new Gson();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  /** Taken before the counts are released, so listeners are told of changes in order. */
+  private final ReentrantLock notifying = new ReentrantLock();
+
+  private Timestamp highWaterMark;
+  private long snapshotTime;
+  private ScheduledExecutorService updater;
+
+  /**
+   * @param taskStore catalog the tasks are counted in
+   * @param snapshotFile file the counts are saved to, or null to keep them in memory only
+   * @param pollOverlapMillis time before the high-water mark looked at again on each poll
+   */
+  public JobCounters(TaskStore taskStore, File snapshotFile, long pollOverlapMillis) {
+    this(taskStore, snapshotFile, pollOverlapMillis, DEFAULT_SNAPSHOT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * @param taskStore catalog the tasks are counted in
+   * @param snapshotFile file the counts are saved to, or null to keep them in memory only
+   * @param pollOverlapMillis time before the high-water mark looked at again on each poll
+   * @param snapshotIntervalMillis least time between snapshots saved while polling
+   */
+  public JobCounters(
+      TaskStore taskStore, File snapshotFile, long pollOverlapMillis, long snapshotIntervalMillis) {
+    this.taskStore = taskStore;
+    this.snapshotFile = snapshotFile;
+    this.pollOverlapMillis = pollOverlapMillis;
+    this.snapshotIntervalMillis = snapshotIntervalMillis;
+  }
+
+  /**
+   * Loads the counts from the snapshot file and polls the updates made since it was saved, or
+   * counts every task when there is no usable snapshot.
+   */
+  public void load() throws SQLException {
+    boolean read;
+    synchronized (this) {
+      read = readSnapshot();
+    }
+    if (read) {
+      poll();
+    } else {
+      reconcile();
+    }
+  }
+
+  /**
+   * Counts again the tasks of the jobs with a task updated since the high-water mark.
+   *
+   * @return number of jobs counted again
+   */
+  public int poll() throws SQLException {
+    Changes changes;
+    synchronized (this) {
+      changes = highWaterMark == null ? reconcileCounts() : pollCounts();
+      notifying.lock();
+    }
+    return notifyListeners(changes);
+  }
+
+  /**
+   * Counts every task again, replacing the counts that drifted from the catalog.
+   *
+   * @return number of jobs whose counts had drifted
+   */
+  public int reconcile() throws SQLException {
+    Changes changes;
+    synchronized (this) {
+      changes = reconcileCounts();
+      notifying.lock();
+    }
+    return notifyListeners(changes);
+  }
+
+  private Changes pollCounts() throws SQLException {
+    Timestamp since = new Timestamp(highWaterMark.getTime() - pollOverlapMillis);
+    Map<String, Timestamp> updatedJobs = taskStore.findJobsUpdatedSince(since);
+    if (updatedJobs.isEmpty()) {
+      return new Changes(Collections.<String, JobSummary>emptyMap(), since, 0);
+    }
+
+    // jobs looked at again only because of the overlap are not reported again
+    Map<String, JobSummary> changed = new HashMap<String, JobSummary>();
+    for (JobSummary summary : taskStore.summarizeJobs(updatedJobs.keySet()).values()) {
+      JobSummary previous = summaries.put(summary.getJobId(), summary);
+      Timestamp updateTime = updatedJobs.get(summary.getJobId());
+      if (previous == null
+          || !previous.getTasksByState().equals(summary.getTasksByState())
+          || (updateTime != null && updateTime.after(highWaterMark))) {
+        changed.put(summary.getJobId(), summary);
+      }
+    }
+    for (Timestamp updateTime : updatedJobs.values()) {
+      if (updateTime != null && updateTime.after(highWaterMark)) highWaterMark = updateTime;
+    }
+    if (System.currentTimeMillis() - snapshotTime >= snapshotIntervalMillis) writeSnapshot();
+    return new Changes(changed, since, updatedJobs.size());
+  }
+
+  private Changes reconcileCounts() throws SQLException {
+    long start = System.currentTimeMillis();
+    // read before counting, so updates made while counting are polled again
+    Timestamp latestUpdate = taskStore.findLatestTaskUpdate();
+    Map<String, JobSummary> counted = taskStore.summarizeAllJobs();
+
+    Map<String, JobSummary> changed = new HashMap<String, JobSummary>();
+    for (JobSummary summary : counted.values()) {
+      JobSummary previous = summaries.put(summary.getJobId(), summary);
+      if (previous != null && !previous.getTasksByState().equals(summary.getTasksByState())) {
+        changed.put(summary.getJobId(), summary);
+      }
+    }
+    List<String> withoutTasks = new ArrayList<String>();
+    for (JobSummary summary : summaries.values()) {
+      if (!counted.containsKey(summary.getJobId())) withoutTasks.add(summary.getJobId());
+    }
+    for (String jobId : withoutTasks) {
+      JobSummary summary = JobSummary.fromStateCounts(jobId, new HashMap<String, Integer>());
+      JobSummary previous = summaries.put(jobId, summary);
+      if (previous.getTotalTasks() > 0) changed.put(jobId, summary);
+    }
+    int drifted = changed.size();
+
+    if (latestUpdate != null && (highWaterMark == null || latestUpdate.after(highWaterMark))) {
+      highWaterMark = latestUpdate;
+    } else if (highWaterMark == null) {
+      highWaterMark = new Timestamp(start);
+    }
+    writeSnapshot();
+
+    LOGGER.info(
+        "Reconciled task counts of "
+            + summaries.size()
+            + " jobs in "
+            + (System.currentTimeMillis() - start)
+            + " ms; "
+            + drifted
+            + " had drifted");
+    return new Changes(changed, null, drifted);
+  }
+
+  /**
+   * Gives the task counts of jobs. Jobs not counted yet, e.g. created since the last poll, are
+   * counted in the catalog with one query and kept from then on.
+   *
+   * @param jobIds jobs to summarize
+   * @return the summary of each job, by job id
+   */
+  public Map<String, JobSummary> get(Collection<String> jobIds) throws SQLException {
+    Map<String, JobSummary> found = new HashMap<String, JobSummary>();
+    List<String> missing = new ArrayList<String>();
+    for (String jobId : jobIds) {
+      JobSummary summary = summaries.get(jobId);
+      if (summary == null) {
+        missing.add(jobId);
+      } else {
+        found.put(jobId, summary);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      Map<String, JobSummary> counted = taskStore.summarizeJobs(missing);
+      for (JobSummary summary : counted.values()) {
+        JobSummary current = summaries.putIfAbsent(summary.getJobId(), summary);
+        found.put(summary.getJobId(), current == null ? summary : current);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Starts a daemon thread that loads the counts, as {@link #load} does, and then polls the catalog
+   * and reconciles the counts periodically, so the first full count does not hold up the caller.
+   * Until the counts are loaded, jobs are counted on request. A failed load, poll or reconciliation
+   * is logged and the counts are kept as they are; a failed load is retried by the next poll.
+   *
+   * @param pollIntervalMillis time between polls
+   * @param reconcileIntervalMillis time between full counts, or 0 to never count again
+   */
+  public synchronized void schedule(long pollIntervalMillis, long reconcileIntervalMillis) {
+    if (updater != null) return;
+
+    updater =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "job-counters-updater");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    updater.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              load();
+            } catch (Exception e) {
+              LOGGER.error("Error while counting job tasks", e);
+            }
+          }
+        });
+    updater.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              poll();
+            } catch (Exception e) {
+              LOGGER.error("Error while polling task updates", e);
+            }
+          }
+        },
+        pollIntervalMillis,
+        pollIntervalMillis,
+        TimeUnit.MILLISECONDS);
+    if (reconcileIntervalMillis > 0) {
+      updater.scheduleWithFixedDelay(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                reconcile();
+              } catch (Exception e) {
+                LOGGER.error("Error while reconciling task counts", e);
+              }
+            }
+          },
+          reconcileIntervalMillis,
+          reconcileIntervalMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Stops the periodic updates and saves the counts. */
+  public synchronized void close() {
+    if (updater != null) {
+      updater.shutdownNow();
+      updater = null;
+    }
+    writeSnapshot();
+  }
+
+  /** Registers a listener told of the jobs whose counts change from then on. */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /** Latest task update time the counts include. */
+  public synchronized Timestamp getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  /**
+   * Tells the listeners of changes found while holding the counts, then releases the {@link
+   * #notifying} lock taken before the counts were released.
+   *
+   * @return the result of the update that found the changes
+   */
+  private int notifyListeners(Changes changes) {
+    try {
+      if (!changes.changed.isEmpty()) {
+        for (Listener listener : listeners) {
+          try {
+            listener.jobsChanged(changes.changed, changes.since);
+          } catch (Exception e) {
+            LOGGER.error("Error while telling a listener of task count changes", e);
+          }
+        }
+      }
+    } finally {
+      notifying.unlock();
+    }
+    return changes.result;
+  }
+
+  private boolean readSnapshot() {
+    if (snapshotFile == null || !snapshotFile.isFile()) return false;
+
+    try (Reader reader = Files.newBufferedReader(snapshotFile.toPath(), StandardCharsets.UTF_8)) {
+      Snapshot snapshot = gson.fromJson(reader, Snapshot.class);
+      if (snapshot == null || snapshot.jobs == null) return false;
+      for (Map.Entry<String, Map<String, Integer>> job : snapshot.jobs.entrySet()) {
+        summaries.put(job.getKey(), JobSummary.fromStateCounts(job.getKey(), job.getValue()));
+      }
+      highWaterMark = new Timestamp(snapshot.highWaterMark);
+      LOGGER.info(
+          "Loaded task counts of " + summaries.size() + " jobs from [" + snapshotFile + "]");
+      return true;
+    } catch (IOException | JsonParseException e) {
+      LOGGER.warn("Task counts snapshot [" + snapshotFile + "] cannot be read; counting tasks", e);
+      summaries.clear();
+      return false;
+    }
+  }
+
+  private void writeSnapshot() {
+    if (snapshotFile == null || highWaterMark == null) return;
+    snapshotTime = System.currentTimeMillis();
+
+    Snapshot snapshot = new Snapshot();
+    snapshot.highWaterMark = highWaterMark.getTime();
+    snapshot.jobs = new HashMap<String, Map<String, Integer>>();
+    for (JobSummary summary : summaries.values()) {
+      snapshot.jobs.put(summary.getJobId(), summary.getTasksByState());
+    }
+
+    File temporary = new File(snapshotFile.getPath() + ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(temporary.toPath(), StandardCharsets.UTF_8)) {
+        gson.toJson(snapshot, writer);
+      }
+      Files.move(
+          temporary.toPath(),
+          snapshotFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.warn("Error while saving task counts to [" + snapshotFile + "]", e);
+    }
+  }
+
+  /**
+   * Told of the jobs whose counts changed on the thread that updated them, one change at a time.
+   */
+  public interface Listener {
+
+    /**
+     * @param changed the new summary of each job whose counts changed or whose tasks were updated,
+     *     by job id
+     * @param since earliest update time of the tasks that changed them, or null if they were
+     *     corrected by a full count
+     */
+    void jobsChanged(Map<String, JobSummary> changed, Timestamp since) throws Exception;
+  }
+
+  /** Jobs whose counts changed in an update, told to the listeners once the counts are released. */
+  private static class Changes {
+    final Map<String, JobSummary> changed;
+    final Timestamp since;
+    final int result;
+
+    Changes(Map<String, JobSummary> changed, Timestamp since, int result) {
+      this.changed = changed;
+      this.since = since;
+      this.result = result;
+    }
+  }
+
+  /** Contents of the snapshot file. */
+  private static class Snapshot {
+    long highWaterMark;
+    Map<String, Map<String, Integer>> jobs;
+  }
+}
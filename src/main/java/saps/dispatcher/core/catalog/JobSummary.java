@@ -0,0 +1,79 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.util.Collections;
+import java.util.Map;
+import saps.common.core.model.enums.ImageTaskState;
+
+/**
+ * Task counts of a job by state. A task is ongoing while it is neither archived nor failed, as in
+ * the ongoing filter of the catalog.
+ */
+public class JobSummary {
+
+  private final String jobId;
+  private final int totalTasks;
+  private final int ongoingTasks;
+  private final Map<String, Integer> tasksByState;
+
+  /**
+   * @param jobId job id
+   * @param totalTasks number of tasks of the job
+   * @param ongoingTasks number of tasks neither archived nor failed
+   * @param tasksByState number of tasks by catalog state; states without tasks may be left out
+   */
+  public JobSummary(
+      String jobId, int totalTasks, int ongoingTasks, Map<String, Integer> tasksByState) {
+    this.jobId = jobId;
+    this.totalTasks = totalTasks;
+    this.ongoingTasks = ongoingTasks;
+    this.tasksByState = Collections.unmodifiableMap(tasksByState);
+  }
+
+  /** Summary of a job whose tasks are counted by state, deriving its total and ongoing counts. */
+  static JobSummary fromStateCounts(String jobId, Map<String, Integer> tasksByState) {
+    int total = 0;
+    for (int count : tasksByState.values()) {
+      total += count;
+    }
+    int ongoing =
+        total
+            - getOrZero(tasksByState, ImageTaskState.ARCHIVED.getValue())
+            - getOrZero(tasksByState, ImageTaskState.FAILED.getValue());
+    return new JobSummary(jobId, total, ongoing, tasksByState);
+  }
+
+  public String getJobId() {
+    return jobId;
+  }
+
+  public int getTotalTasks() {
+    return totalTasks;
+  }
+
+  public int getOngoingTasks() {
+    return ongoingTasks;
+  }
+
+  public int getFailedTasks() {
+    return getTasks(ImageTaskState.FAILED.getValue());
+  }
+
+  public int getArchivedTasks() {
+    return getTasks(ImageTaskState.ARCHIVED.getValue());
+  }
+
+  /** Number of tasks in a catalog state, e.g. {@code ImageTaskState.CREATED.getValue()}. */
+  public int getTasks(String state) {
+    return getOrZero(tasksByState, state);
+  }
+
+  public Map<String, Integer> getTasksByState() {
+    return tasksByState;
+  }
+
+  private static int getOrZero(Map<String, Integer> counts, String state) {
+    Integer count = counts.get(state);
+    return count == null ? 0 : count;
+  }
+}
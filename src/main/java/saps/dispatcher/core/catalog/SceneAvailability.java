@@ -0,0 +1,70 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of (region, day) pairs with a known Landsat scene inside a date window, stored as one bit per
+ * day of the window for each region.
+ */
+public class SceneAvailability {
+
+  private final long firstEpochDay;
+  private final Map<String, BitSet> daysByRegion = new HashMap<String, BitSet>();
+  private int size;
+
+  /** @param initDate first day of the window */
+  public SceneAvailability(Date initDate) {
+    this.firstEpochDay = toEpochDay(initDate);
+  }
+
+  void add(String region, LocalDate day) {
+    long offset = day.toEpochDay() - firstEpochDay;
+    if (offset < 0 || offset > Integer.MAX_VALUE) return;
+
+    BitSet days = daysByRegion.get(region);
+    if (days == null) {
+      days = new BitSet();
+      daysByRegion.put(region, days);
+    }
+    if (!days.get((int) offset)) {
+      days.set((int) offset);
+      size++;
+    }
+  }
+
+  /**
+   * Checks if there is a scene of the region on the day.
+   *
+   * @param region region in the PPPRRR form
+   * @param date day, in the default time zone, as used to iterate the job date range
+   */
+  public boolean contains(String region, Date date) {
+    BitSet days = daysByRegion.get(region);
+    if (days == null) return false;
+
+    long offset = toEpochDay(date) - firstEpochDay;
+    return offset >= 0 && offset <= Integer.MAX_VALUE && days.get((int) offset);
+  }
+
+  /** Number of (region, day) pairs in the set. */
+  public int size() {
+    return size;
+  }
+
+  static long toEpochDay(Date date) {
+    GregorianCalendar calendar = new GregorianCalendar();
+    calendar.setTime(date);
+    return LocalDate.of(
+            calendar.get(Calendar.YEAR),
+            calendar.get(Calendar.MONTH) + 1,
+            calendar.get(Calendar.DAY_OF_MONTH))
+        .toEpochDay();
+  }
+}
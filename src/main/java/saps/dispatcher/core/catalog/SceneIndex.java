@@ -0,0 +1,343 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.sql.DataSource;
+import org.apache.log4j.Logger;
+
+/**
+ * In-memory bitmap index of the Landsat scenes known by the catalog, with one bit per (tile,
+ * dataset, day). Tiles get an ordinal when first seen and days are counted from {@link #FIRST_DAY},
+ * so forty years of a tile and dataset take about 2 KB.
+ *
+ * <p>The index is loaded once and then refreshed incrementally by reading only the scenes dated
+ * after the latest loaded day minus a lookback window, which covers scenes the catalog receives
+ * late. Scenes removed from the catalog stay in the index until it is loaded again.
+ */
+public class SceneIndex {
+
+  private static final Logger LOGGER = Logger.getLogger(SceneIndex.class);
+
+  /** Earliest day in the index, before the first Landsat launch. */
+  public static final LocalDate FIRST_DAY = LocalDate.of(1972, 1, 1);
+
+  private static final int FETCH_SIZE = 10000;
+
+  private final DataSource dataSource;
+  private final int refreshLookbackDays;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Map<String, Integer> tileOrdinals = new HashMap<String, Integer>();
+  private final Map<String, List<BitSet>> daysByDataset = new HashMap<String, List<BitSet>>();
+  private final List<BitSet> daysOfAnyDataset = new ArrayList<BitSet>();
+  private LocalDate latestDay;
+  private long sceneCount;
+  private ScheduledExecutorService refresher;
+
+  /**
+   * @param dataSource catalog database
+   * @param refreshLookbackDays days before the latest loaded day read again on each refresh
+   */
+  public SceneIndex(DataSource dataSource, int refreshLookbackDays) {
+    this.dataSource = dataSource;
+    this.refreshLookbackDays = refreshLookbackDays;
+  }
+
+  /** Loads every scene of the catalog. */
+  public void load() throws SQLException {
+    read(null);
+  }
+
+  /** Loads the scenes dated from the latest loaded day minus the lookback window on. */
+  public void refresh() throws SQLException {
+    LocalDate from;
+    lock.readLock().lock();
+    try {
+      from = latestDay == null ? null : latestDay.minusDays(refreshLookbackDays);
+    } finally {
+      lock.readLock().unlock();
+    }
+    read(from);
+  }
+
+  /**
+   * Starts a daemon thread that refreshes the index periodically. A failed refresh is logged and
+   * the index keeps answering with what it has.
+   *
+   * @param intervalMillis time between refreshes
+   */
+  public synchronized void scheduleRefresh(long intervalMillis) {
+    if (refresher != null) return;
+
+    refresher =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "scene-index-refresher");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    refresher.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              refresh();
+            } catch (Exception e) {
+              LOGGER.error("Error while refreshing scene index", e);
+            }
+          }
+        },
+        intervalMillis,
+        intervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops the periodic refresh. */
+  public synchronized void close() {
+    if (refresher != null) {
+      refresher.shutdownNow();
+      refresher = null;
+    }
+  }
+
+  /**
+   * Checks if there is a scene of any dataset of the region on the day.
+   *
+   * @param region region in the PPPRRR form
+   * @param date day, in the default time zone
+   */
+  public boolean contains(String region, Date date) {
+    int day = toDayIndex(SceneAvailability.toEpochDay(date));
+    lock.readLock().lock();
+    try {
+      Integer ordinal = tileOrdinals.get(region);
+      return day >= 0 && ordinal != null && daysOfAnyDataset.get(ordinal).get(day);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the datasets, among the candidates, with a scene of the region on the day.
+   *
+   * @param region region in the PPPRRR form
+   * @param date day, in the default time zone
+   * @param candidates datasets to check, e.g. the satellites in operation that year
+   */
+  public List<String> getDatasets(String region, Date date, List<String> candidates) {
+    List<String> datasets = new ArrayList<String>(candidates.size());
+    int day = toDayIndex(SceneAvailability.toEpochDay(date));
+    if (day < 0) return datasets;
+
+    lock.readLock().lock();
+    try {
+      Integer ordinal = tileOrdinals.get(region);
+      if (ordinal == null) return datasets;
+
+      for (String dataset : candidates) {
+        List<BitSet> tiles = daysByDataset.get(normalize(dataset));
+        if (tiles != null && ordinal < tiles.size() && tiles.get(ordinal).get(day)) {
+          datasets.add(dataset);
+        }
+      }
+      return datasets;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the datasets of the indexed scenes that are not among the given names, compared without
+   * case. Scenes of those datasets are never answered by {@link #getDatasets}, so a non-empty
+   * result means the catalog names datasets differently from the caller.
+   *
+   * @param known dataset names used by the caller
+   */
+  public Set<String> getUnknownDatasets(Collection<String> known) {
+    Set<String> names = new HashSet<String>();
+    for (String dataset : known) {
+      names.add(normalize(dataset));
+    }
+
+    Set<String> unknown = new HashSet<String>();
+    lock.readLock().lock();
+    try {
+      for (String dataset : daysByDataset.keySet()) {
+        if (!names.contains(dataset)) unknown.add(dataset);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return unknown;
+  }
+
+  /** Number of (tile, dataset, day) bits set. */
+  public long size() {
+    lock.readLock().lock();
+    try {
+      return sceneCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Approximate heap used by the bitmaps, in bytes. */
+  public long getMemoryUsage() {
+    lock.readLock().lock();
+    try {
+      long bytes = 0;
+      for (List<BitSet> tiles : daysByDataset.values()) {
+        for (BitSet days : tiles) {
+          bytes += days.size() / 8;
+        }
+      }
+      for (BitSet days : daysOfAnyDataset) {
+        bytes += days.size() / 8;
+      }
+      return bytes;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Reads the scenes dated from the given day on, or every scene when it is null. Rows are applied
+   * a fetch at a time, so lookups are only blocked while the bits of a fetch are set.
+   */
+  private void read(LocalDate from) throws SQLException {
+    long start = System.currentTimeMillis();
+    String sql =
+        "SELECT "
+            + CatalogSchema.LandsatImages.REGION
+            + ", "
+            + CatalogSchema.LandsatImages.DATASET
+            + ", "
+            + CatalogSchema.LandsatImages.IMAGE_DATE
+            + " FROM "
+            + CatalogSchema.LandsatImages.NAME
+            + (from == null ? "" : " WHERE " + CatalogSchema.LandsatImages.IMAGE_DATE + " >= ?");
+
+    int read = 0;
+    int added = 0;
+    try (Connection connection = dataSource.getConnection()) {
+      // PostgreSQL only streams the result set inside a transaction
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        statement.setFetchSize(FETCH_SIZE);
+        if (from != null) statement.setDate(1, java.sql.Date.valueOf(from));
+
+        String[] regions = new String[FETCH_SIZE];
+        String[] datasets = new String[FETCH_SIZE];
+        LocalDate[] dates = new LocalDate[FETCH_SIZE];
+        int pending = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+          while (resultSet.next()) {
+            regions[pending] = resultSet.getString(1);
+            datasets[pending] = normalize(resultSet.getString(2));
+            dates[pending] = resultSet.getDate(3).toLocalDate();
+            read++;
+            if (++pending == FETCH_SIZE) {
+              added += apply(regions, datasets, dates, pending);
+              pending = 0;
+            }
+          }
+        }
+        added += apply(regions, datasets, dates, pending);
+        connection.commit();
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+
+    LOGGER.info(
+        "Scene index read "
+            + read
+            + " scenes"
+            + (from == null ? "" : " dated from " + from)
+            + " in "
+            + (System.currentTimeMillis() - start)
+            + " ms; "
+            + added
+            + " new, "
+            + size()
+            + " in total, using about "
+            + getMemoryUsage() / 1024
+            + " KB");
+  }
+
+  private int apply(String[] regions, String[] datasets, LocalDate[] dates, int count) {
+    int added = 0;
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < count; i++) {
+        if (set(regions[i], datasets[i], dates[i])) added++;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return added;
+  }
+
+  private boolean set(String region, String dataset, LocalDate date) {
+    int day = toDayIndex(date.toEpochDay());
+    if (region == null || day < 0) return false;
+
+    Integer ordinal = tileOrdinals.get(region);
+    if (ordinal == null) {
+      ordinal = tileOrdinals.size();
+      tileOrdinals.put(region, ordinal);
+      daysOfAnyDataset.add(new BitSet());
+    }
+    daysOfAnyDataset.get(ordinal).set(day);
+
+    List<BitSet> tiles = daysByDataset.get(dataset);
+    if (tiles == null) {
+      tiles = new ArrayList<BitSet>();
+      daysByDataset.put(dataset, tiles);
+    }
+    while (tiles.size() <= ordinal) {
+      tiles.add(new BitSet());
+    }
+
+    if (latestDay == null || date.isAfter(latestDay)) latestDay = date;
+
+    BitSet days = tiles.get(ordinal);
+    if (days.get(day)) return false;
+    days.set(day);
+    sceneCount++;
+    return true;
+  }
+
+  private static int toDayIndex(long epochDay) {
+    long day = epochDay - FIRST_DAY.toEpochDay();
+    return day > Integer.MAX_VALUE ? -1 : (int) day;
+  }
+
+  private static String normalize(String dataset) {
+    return dataset == null ? "" : dataset.trim().toLowerCase(Locale.ROOT);
+  }
+}
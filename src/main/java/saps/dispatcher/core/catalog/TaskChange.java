@@ -0,0 +1,36 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.Timestamp;
+
+/** State of a task of a job as of its latest update. */
+public class TaskChange {
+
+  private final String jobId;
+  private final String taskId;
+  private final String state;
+  private final Timestamp updatedTime;
+
+  public TaskChange(String jobId, String taskId, String state, Timestamp updatedTime) {
+    this.jobId = jobId;
+    this.taskId = taskId;
+    this.state = state;
+    this.updatedTime = updatedTime;
+  }
+
+  public String getJobId() {
+    return jobId;
+  }
+
+  public String getTaskId() {
+    return taskId;
+  }
+
+  public String getState() {
+    return state;
+  }
+
+  public Timestamp getUpdatedTime() {
+    return updatedTime;
+  }
+}
@@ -0,0 +1,93 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position after the last task of a page: the sort field and order of the page, and the sort value
+ * and id of its last task. The next page starts right after it with a keyset condition, so a deep
+ * page costs as much as the first one. Clients get it as an opaque URL-safe token.
+ */
+public class TaskCursor {
+
+  private static final Gson GSON = new Gson();
+
+  private final TaskSortField sortField;
+  private final boolean descending;
+  private final String value;
+  private final String taskId;
+
+  /**
+   * @param sortField field the pages are sorted by
+   * @param descending if the pages are sorted in descending order
+   * @param value sort field value of the last task read, as given by the catalog
+   * @param taskId id of the last task read
+   */
+  public TaskCursor(TaskSortField sortField, boolean descending, String value, String taskId) {
+    this.sortField = sortField;
+    this.descending = descending;
+    this.value = value;
+    this.taskId = taskId;
+  }
+
+  public TaskSortField getSortField() {
+    return sortField;
+  }
+
+  public boolean isDescending() {
+    return descending;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  public String getTaskId() {
+    return taskId;
+  }
+
+  /** Gives the token clients send back to read the next page. */
+  public String encode() {
+    Token token = new Token();
+    token.field = sortField.getFieldName();
+    token.desc = descending;
+    token.value = value;
+    token.id = taskId;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(GSON.toJson(token).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Reads a token given by {@link #encode()}.
+   *
+   * @throws IllegalArgumentException if the token was not given by {@link #encode()}
+   */
+  public static TaskCursor decode(String encoded) {
+    Token token;
+    try {
+      token =
+          GSON.fromJson(
+              new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8),
+              Token.class);
+    } catch (IllegalArgumentException | JsonParseException e) {
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
+    TaskSortField sortField = token == null ? null : TaskSortField.fromName(token.field);
+    if (sortField == null || token.value == null || token.id == null) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+    return new TaskCursor(sortField, token.desc, token.value, token.id);
+  }
+
+  /** Contents of an encoded cursor. */
+  private static class Token {
+    String field;
+    boolean desc;
+    String value;
+    String id;
+  }
+}
@@ -0,0 +1,81 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Identity and scene of a task to be created: what differs from one task of a job to another. It is
+ * kept compact, since a job may have hundreds of thousands of tasks: the id is held as the two
+ * halves of its UUID, the image date as an epoch day, and region and dataset are expected to be
+ * instances shared by every task of the job.
+ */
+public class TaskDescriptor {
+
+  private final long taskIdMostSigBits;
+  private final long taskIdLeastSigBits;
+  private final int epochDay;
+  private final String dataset;
+  private final String region;
+
+  /**
+   * @param taskId task id
+   * @param epochDay image date, as days since 1970-01-01
+   * @param dataset dataset of the image
+   * @param region region of the image, in the PPPRRR form
+   */
+  public TaskDescriptor(UUID taskId, int epochDay, String dataset, String region) {
+    this.taskIdMostSigBits = taskId.getMostSignificantBits();
+    this.taskIdLeastSigBits = taskId.getLeastSignificantBits();
+    this.epochDay = epochDay;
+    this.dataset = dataset;
+    this.region = region;
+  }
+
+  /**
+   * @param taskId task id, in the UUID form
+   * @param imageDate image date; only its day in the default time zone is kept
+   * @param dataset dataset of the image
+   * @param region region of the image, in the PPPRRR form
+   */
+  public TaskDescriptor(String taskId, Date imageDate, String dataset, String region) {
+    this(UUID.fromString(taskId), (int) SceneAvailability.toEpochDay(imageDate), dataset, region);
+  }
+
+  public String getTaskId() {
+    return new UUID(taskIdMostSigBits, taskIdLeastSigBits).toString();
+  }
+
+  public int getEpochDay() {
+    return epochDay;
+  }
+
+  /** Image date at the start of its day in the default time zone. */
+  public Date getImageDate() {
+    return Date.from(
+        LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+  }
+
+  public String getDataset() {
+    return dataset;
+  }
+
+  public String getRegion() {
+    return region;
+  }
+
+  @Override
+  public String toString() {
+    return "TaskDescriptor [taskId="
+        + getTaskId()
+        + ", imageDate="
+        + LocalDate.ofEpochDay(epochDay)
+        + ", dataset="
+        + dataset
+        + ", region="
+        + region
+        + "]";
+  }
+}
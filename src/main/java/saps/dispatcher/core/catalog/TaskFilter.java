@@ -0,0 +1,50 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Subset of the tasks of a job selected by region, dataset and image date. A null or empty field
+ * does not restrict the tasks.
+ */
+public class TaskFilter {
+
+  /** Selects every task of the job. */
+  public static final TaskFilter ALL = new TaskFilter(null, null, null, null);
+
+  private final Set<String> regions;
+  private final Set<String> datasets;
+  private final Date initDate;
+  private final Date endDate;
+
+  /**
+   * @param regions regions in the PPPRRR form
+   * @param datasets datasets of the images
+   * @param initDate first day
+   * @param endDate last day, inclusive
+   */
+  public TaskFilter(Set<String> regions, Set<String> datasets, Date initDate, Date endDate) {
+    this.regions = regions == null ? Collections.<String>emptySet() : regions;
+    this.datasets = datasets == null ? Collections.<String>emptySet() : datasets;
+    this.initDate = initDate;
+    this.endDate = endDate;
+  }
+
+  public Set<String> getRegions() {
+    return regions;
+  }
+
+  public Set<String> getDatasets() {
+    return datasets;
+  }
+
+  public Date getInitDate() {
+    return initDate;
+  }
+
+  public Date getEndDate() {
+    return endDate;
+  }
+}
@@ -0,0 +1,9 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+/** Notified as the tasks of a job are written to the catalog. */
+public interface TaskInsertListener {
+
+  /** @param count tasks written since the last notification */
+  void tasksInserted(int count);
+}
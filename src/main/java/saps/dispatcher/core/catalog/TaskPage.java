@@ -0,0 +1,29 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.util.List;
+import saps.common.core.model.SapsImage;
+
+/** Tasks of a cursor page and the cursor of the page after it. */
+public class TaskPage {
+
+  private final List<SapsImage> tasks;
+  private final TaskCursor next;
+
+  /**
+   * @param tasks tasks of the page
+   * @param next position after the last task, or null if this is the last page
+   */
+  public TaskPage(List<SapsImage> tasks, TaskCursor next) {
+    this.tasks = tasks;
+    this.next = next;
+  }
+
+  public List<SapsImage> getTasks() {
+    return tasks;
+  }
+
+  public TaskCursor getNext() {
+    return next;
+  }
+}
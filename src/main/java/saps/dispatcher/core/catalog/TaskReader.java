@@ -0,0 +1,19 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.SQLException;
+import saps.common.core.model.SapsImage;
+
+/**
+ * Reads the tasks of a catalog query one at a time, as they are fetched. The query is run when the
+ * reader is opened, so its errors are known before the first task is read; closing the reader
+ * releases its connection.
+ */
+public interface TaskReader extends AutoCloseable {
+
+  /** Gives the next task, or null after the last one. */
+  SapsImage next() throws SQLException;
+
+  @Override
+  void close() throws SQLException;
+}
@@ -0,0 +1,81 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Task fields a cursor page can be sorted by. They are the fields that do not change while a job is
+ * processed, so a task never moves from a page not read yet to one already read. Ties are broken by
+ * the task id.
+ */
+public enum TaskSortField {
+  TASK_ID("taskId", CatalogSchema.Tasks.ID),
+  IMAGE_DATE("imageDate", CatalogSchema.Tasks.IMAGE_DATE),
+  REGION("region", CatalogSchema.Tasks.REGION),
+  DATASET("dataset", CatalogSchema.Tasks.DATASET),
+  PRIORITY("priority", CatalogSchema.Tasks.PRIORITY),
+  CREATION_TIME("creationTime", CatalogSchema.Tasks.CREATION_TIME);
+
+  private final String fieldName;
+  private final String column;
+
+  TaskSortField(String fieldName, String column) {
+    this.fieldName = fieldName;
+    this.column = column;
+  }
+
+  /** Name of the field in the task JSON. */
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  public String getColumn() {
+    return column;
+  }
+
+  /**
+   * Finds the field by its name in the task JSON or by its catalog column.
+   *
+   * @return the field, or null if tasks cannot be paged by it
+   */
+  public static TaskSortField fromName(String name) {
+    for (TaskSortField field : values()) {
+      if (field.fieldName.equals(name) || field.column.equals(name)) return field;
+    }
+    return null;
+  }
+
+  /** Reads the value of the field of a task as the text kept in a cursor. */
+  String read(ResultSet resultSet) throws SQLException {
+    switch (this) {
+      case IMAGE_DATE:
+        return resultSet.getDate(column).toLocalDate().toString();
+      case CREATION_TIME:
+        return resultSet.getTimestamp(column).toString();
+      case PRIORITY:
+        return String.valueOf(resultSet.getInt(column));
+      default:
+        return resultSet.getString(column);
+    }
+  }
+
+  /** Binds a value kept in a cursor as a parameter of the column type. */
+  void bind(PreparedStatement statement, int index, String value) throws SQLException {
+    switch (this) {
+      case IMAGE_DATE:
+        statement.setDate(index, java.sql.Date.valueOf(value));
+        break;
+      case CREATION_TIME:
+        statement.setTimestamp(index, Timestamp.valueOf(value));
+        break;
+      case PRIORITY:
+        statement.setInt(index, Integer.parseInt(value));
+        break;
+      default:
+        statement.setString(index, value);
+    }
+  }
+}
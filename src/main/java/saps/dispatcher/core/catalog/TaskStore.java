@@ -0,0 +1,1472 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.log4j.Logger;
+import saps.common.core.model.SapsImage;
+import saps.common.core.model.enums.ImageTaskState;
+
+/**
+ * Bulk access to the catalog tables used by job submission. Where CatalogUtils does one statement
+ * and one commit per row, this class sends JDBC batches inside a single transaction.
+ */
+public class TaskStore {
+
+  private static final Logger LOGGER = Logger.getLogger(TaskStore.class);
+
+  public static final String DATASTORE_URL_PREFIX_KEY = "datastore_url_prefix";
+  public static final String DATASTORE_IP_KEY = "datastore_ip";
+  public static final String DATASTORE_PORT_KEY = "datastore_port";
+  public static final String DATASTORE_NAME_KEY = "datastore_name";
+  public static final String DATASTORE_DRIVER_KEY = "datastore_driver";
+  public static final String DATASTORE_USERNAME_KEY = "datastore_username";
+  public static final String DATASTORE_PASSWORD_KEY = "datastore_password";
+
+  public static final String TASK_INSERT_BATCH_SIZE_KEY = "task_insert_batch_size";
+  /**
+   * Rows sent in each batch once batches are enabled. They are off unless task_insert_batch_size is
+   * set, until {@link CatalogSchema} is confirmed against the saps-catalog schema in use.
+   */
+  public static final int DEFAULT_TASK_INSERT_BATCH_SIZE = 1000;
+
+  /** Regions bound in each availability query, kept below driver parameter limits. */
+  private static final int MAX_REGIONS_PER_QUERY = 1000;
+
+  /** Jobs bound in each summary query, kept below driver parameter limits. */
+  private static final int MAX_JOBS_PER_QUERY = 1000;
+
+  private final DataSource dataSource;
+  private final int batchSize;
+  private volatile long maxCommitDelayMillis = Long.MAX_VALUE;
+
+  /**
+   * @param dataSource catalog database
+   * @param batchSize rows sent in each JDBC batch
+   */
+  public TaskStore(DataSource dataSource, int batchSize) {
+    if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive");
+    this.dataSource = dataSource;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Sets how long tasks written by a {@link TaskWriter} may stay uncommitted with the update time
+   * of the batch they were sent in. Tasks of a transaction committed later get the commit time as
+   * their update time, with one more UPDATE, so a poll looking this far behind its high-water mark
+   * still sees them once they are visible.
+   *
+   * @param maxCommitDelayMillis longest delay between a batch and the commit, by default unbounded
+   */
+  public void setMaxCommitDelayMillis(long maxCommitDelayMillis) {
+    this.maxCommitDelayMillis = maxCommitDelayMillis;
+  }
+
+  /**
+   * Creates a pooled data source for the catalog database configured by the datastore_* properties,
+   * the same ones read by JDBCCatalog.
+   *
+   * @param properties dispatcher configuration
+   */
+  public static BasicDataSource createDataSource(Properties properties) {
+    BasicDataSource dataSource = new BasicDataSource();
+    dataSource.setDriverClassName(properties.getProperty(DATASTORE_DRIVER_KEY));
+    dataSource.setUrl(
+        properties.getProperty(DATASTORE_URL_PREFIX_KEY)
+            + properties.getProperty(DATASTORE_IP_KEY)
+            + ":"
+            + properties.getProperty(DATASTORE_PORT_KEY)
+            + "/"
+            + properties.getProperty(DATASTORE_NAME_KEY));
+    dataSource.setUsername(properties.getProperty(DATASTORE_USERNAME_KEY));
+    dataSource.setPassword(properties.getProperty(DATASTORE_PASSWORD_KEY));
+    return dataSource;
+  }
+
+  /**
+   * Checks that the catalog has the tables and columns named in {@link CatalogSchema}, with one
+   * query per table that reads no rows, so a catalog whose schema differs is found at startup
+   * instead of failing every job submission.
+   *
+   * @throws SQLException naming the table or column the catalog does not have
+   */
+  public void checkSchema() throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      checkColumns(connection, CatalogSchema.Tasks.NAME, CatalogSchema.Tasks.COLUMNS);
+      checkColumns(connection, CatalogSchema.Jobs.NAME, CatalogSchema.Jobs.COLUMNS);
+      checkColumns(connection, CatalogSchema.JobTasks.NAME, CatalogSchema.JobTasks.COLUMNS);
+      checkColumns(
+          connection, CatalogSchema.LandsatImages.NAME, CatalogSchema.LandsatImages.COLUMNS);
+    }
+  }
+
+  /**
+   * Checks that the catalog has an index led by the update time of the tasks, as created by {@link
+   * CatalogSchema.Tasks#UPDATED_TIME_INDEX_DDL}. Without it, every poll of {@link
+   * #findJobsUpdatedSince}, {@link #findJobTasksUpdatedSince} and {@link #findLatestTaskUpdate}
+   * scans all of the tasks.
+   *
+   * @throws SQLException if the catalog has no such index
+   */
+  public void checkUpdatedTimeIndex() throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      DatabaseMetaData metaData = connection.getMetaData();
+      // unquoted names are kept in lower case by PostgreSQL and in upper case by others
+      for (String table :
+          new String[] {CatalogSchema.Tasks.NAME, CatalogSchema.Tasks.NAME.toUpperCase()}) {
+        try (ResultSet indexes = metaData.getIndexInfo(null, null, table, false, true)) {
+          while (indexes.next()) {
+            if (indexes.getShort("ORDINAL_POSITION") == 1
+                && CatalogSchema.Tasks.UPDATED_TIME.equalsIgnoreCase(
+                    indexes.getString("COLUMN_NAME"))) {
+              return;
+            }
+          }
+        }
+      }
+    }
+    throw new SQLException(
+        "Table "
+            + CatalogSchema.Tasks.NAME
+            + " has no index on "
+            + CatalogSchema.Tasks.UPDATED_TIME);
+  }
+
+  private static void checkColumns(Connection connection, String table, String[] columns)
+      throws SQLException {
+    StringBuilder sql = new StringBuilder("SELECT ");
+    for (int i = 0; i < columns.length; i++) {
+      sql.append(i == 0 ? "" : ", ").append(columns[i]);
+    }
+    sql.append(" FROM ").append(table).append(" WHERE 1 = 0");
+
+    try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+      statement.executeQuery().close();
+    }
+  }
+
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Inserts the tasks of a job and links them to the job, all in one transaction. Either every task
+   * is created or none is.
+   *
+   * @param jobId job the tasks belong to, already in the catalog
+   * @param tasks tasks to be created
+   * @param template settings shared by every task
+   * @param listener notified as task batches are sent, or null
+   */
+  public void insertJobTasks(
+      String jobId, List<TaskDescriptor> tasks, TaskTemplate template, TaskInsertListener listener)
+      throws SQLException {
+    long start = System.currentTimeMillis();
+    try (TaskWriter writer = openJobTaskWriter(jobId, template, listener)) {
+      for (TaskDescriptor task : tasks) {
+        writer.write(task);
+      }
+      writer.commit();
+    }
+    LOGGER.info(
+        "Inserted "
+            + tasks.size()
+            + " tasks of job ["
+            + jobId
+            + "] in "
+            + (System.currentTimeMillis() - start)
+            + " ms");
+  }
+
+  /**
+   * Opens a transaction in which tasks of a job are inserted and linked to the job as they are
+   * written, one JDBC batch at a time. Tasks are created and updated at the time of their batch;
+   * see {@link #setMaxCommitDelayMillis} for transactions that take long to commit.
+   *
+   * @param jobId job the tasks belong to, already in the catalog
+   * @param template settings shared by every task
+   * @param listener notified as task batches are sent, or null
+   */
+  public TaskWriter openJobTaskWriter(
+      String jobId, TaskTemplate template, TaskInsertListener listener) throws SQLException {
+    Connection connection = dataSource.getConnection();
+    try {
+      return new BatchTaskWriter(
+          connection, jobId, template, listener, batchSize, maxCommitDelayMillis);
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Deletes the links of a job and every task linked only to it, in one transaction. Used to undo
+   * the tasks of a job whose creation failed halfway; tasks reused from other jobs are kept.
+   *
+   * @param jobId job whose tasks are deleted
+   * @return number of tasks deleted
+   */
+  public int deleteJobTasks(String jobId) throws SQLException {
+    String deleteTasksSql =
+        "DELETE FROM "
+            + CatalogSchema.Tasks.NAME
+            + " WHERE "
+            + CatalogSchema.Tasks.ID
+            + " IN (SELECT "
+            + CatalogSchema.JobTasks.TASK_ID
+            + " FROM "
+            + CatalogSchema.JobTasks.NAME
+            + " WHERE "
+            + CatalogSchema.JobTasks.JOB_ID
+            + " = ?) AND "
+            + CatalogSchema.Tasks.ID
+            + " NOT IN (SELECT "
+            + CatalogSchema.JobTasks.TASK_ID
+            + " FROM "
+            + CatalogSchema.JobTasks.NAME
+            + " WHERE "
+            + CatalogSchema.JobTasks.JOB_ID
+            + " <> ?)";
+    String deleteLinksSql =
+        "DELETE FROM "
+            + CatalogSchema.JobTasks.NAME
+            + " WHERE "
+            + CatalogSchema.JobTasks.JOB_ID
+            + " = ?";
+
+    try (Connection connection = dataSource.getConnection()) {
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try (PreparedStatement deleteTasks = connection.prepareStatement(deleteTasksSql);
+          PreparedStatement deleteLinks = connection.prepareStatement(deleteLinksSql)) {
+        deleteTasks.setString(1, jobId);
+        deleteTasks.setString(2, jobId);
+        int deleted = deleteTasks.executeUpdate();
+        deleteLinks.setString(1, jobId);
+        deleteLinks.executeUpdate();
+        connection.commit();
+        return deleted;
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+  }
+
+  /**
+   * Finds the distinct settings of the failed tasks of a job, so the digests of each set of phase
+   * tags can be resolved before the tasks are retried.
+   *
+   * @param jobId job whose failed tasks are read
+   * @param filter subset of the job tasks to read
+   * @return priority, user, phase tags and digests of the failed tasks, once per distinct value
+   */
+  public List<TaskTemplate> findFailedTaskTemplates(String jobId, TaskFilter filter)
+      throws SQLException {
+    StringBuilder sql =
+        new StringBuilder("SELECT DISTINCT ")
+            .append(CatalogSchema.Tasks.PRIORITY)
+            .append(", ")
+            .append(CatalogSchema.Tasks.USER_EMAIL)
+            .append(", ")
+            .append(CatalogSchema.Tasks.INPUTDOWNLOADING_TAG)
+            .append(", ")
+            .append(CatalogSchema.Tasks.INPUTDOWNLOADING_DIGEST)
+            .append(", ")
+            .append(CatalogSchema.Tasks.PREPROCESSING_TAG)
+            .append(", ")
+            .append(CatalogSchema.Tasks.PREPROCESSING_DIGEST)
+            .append(", ")
+            .append(CatalogSchema.Tasks.PROCESSING_TAG)
+            .append(", ")
+            .append(CatalogSchema.Tasks.PROCESSING_DIGEST)
+            .append(" FROM ")
+            .append(CatalogSchema.Tasks.NAME);
+    appendFailedTasksWhere(sql, filter);
+
+    List<TaskTemplate> templates = new ArrayList<TaskTemplate>();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+      setFailedTasksWhere(statement, 1, jobId, filter);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          templates.add(
+              new TaskTemplate(
+                  resultSet.getInt(1),
+                  resultSet.getString(2),
+                  resultSet.getString(3),
+                  resultSet.getString(4),
+                  resultSet.getString(5),
+                  resultSet.getString(6),
+                  resultSet.getString(7),
+                  resultSet.getString(8)));
+        }
+      }
+    }
+    return templates;
+  }
+
+  /**
+   * Puts the failed tasks of a job back in the state of a task that was just created. Tasks in any
+   * other state, archived ones included, are left as they are.
+   *
+   * <p>Without digests the tasks are retried with a single UPDATE. With digests, each template
+   * retries, in a single transaction, the failed tasks with its phase tags and gives them its
+   * digests; failed tasks whose tags have no template are left as they are.
+   *
+   * @param jobId job whose failed tasks are retried
+   * @param filter subset of the job tasks to retry
+   * @param digests if not null, the image digests the retried tasks are given, by phase tags
+   * @return number of tasks retried
+   */
+  public int retryFailedTasks(String jobId, TaskFilter filter, List<TaskTemplate> digests)
+      throws SQLException {
+    StringBuilder sql =
+        new StringBuilder("UPDATE ")
+            .append(CatalogSchema.Tasks.NAME)
+            .append(" SET ")
+            .append(CatalogSchema.Tasks.STATE)
+            .append(" = ?, ")
+            .append(CatalogSchema.Tasks.ARREBOL_JOB_ID)
+            .append(" = ?, ")
+            .append(CatalogSchema.Tasks.FEDERATION_MEMBER)
+            .append(" = ?, ")
+            .append(CatalogSchema.Tasks.STATUS)
+            .append(" = ?, ")
+            .append(CatalogSchema.Tasks.ERROR_MSG)
+            .append(" = ?, ")
+            .append(CatalogSchema.Tasks.UPDATED_TIME)
+            .append(" = ?");
+    if (digests != null) {
+      sql.append(", ")
+          .append(CatalogSchema.Tasks.INPUTDOWNLOADING_DIGEST)
+          .append(" = ?, ")
+          .append(CatalogSchema.Tasks.PREPROCESSING_DIGEST)
+          .append(" = ?, ")
+          .append(CatalogSchema.Tasks.PROCESSING_DIGEST)
+          .append(" = ?");
+    }
+    appendFailedTasksWhere(sql, filter);
+    if (digests != null) {
+      sql.append(" AND ")
+          .append(CatalogSchema.Tasks.INPUTDOWNLOADING_TAG)
+          .append(" = ? AND ")
+          .append(CatalogSchema.Tasks.PREPROCESSING_TAG)
+          .append(" = ? AND ")
+          .append(CatalogSchema.Tasks.PROCESSING_TAG)
+          .append(" = ?");
+    }
+
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+      if (digests == null) {
+        setFailedTasksWhere(statement, setRetriedTask(statement), jobId, filter);
+        return statement.executeUpdate();
+      }
+
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        int retried = 0;
+        for (TaskTemplate template : digests) {
+          int index = setRetriedTask(statement);
+          statement.setString(index++, template.getInputdownloadingDigest());
+          statement.setString(index++, template.getPreprocessingDigest());
+          statement.setString(index++, template.getProcessingDigest());
+          index = setFailedTasksWhere(statement, index, jobId, filter);
+          statement.setString(index++, template.getInputdownloadingTag());
+          statement.setString(index++, template.getPreprocessingTag());
+          statement.setString(index, template.getProcessingTag());
+          retried += statement.executeUpdate();
+        }
+        connection.commit();
+        return retried;
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+  }
+
+  /**
+   * Sets the values a retried task is given, as a task that was just created.
+   *
+   * @return index of the next parameter
+   */
+  private static int setRetriedTask(PreparedStatement statement) throws SQLException {
+    int index = 1;
+    statement.setString(index++, ImageTaskState.CREATED.getValue());
+    statement.setString(index++, SapsImage.NONE_ARREBOL_JOB_ID);
+    statement.setString(index++, SapsImage.NONE_FEDERATION_MEMBER);
+    statement.setString(index++, SapsImage.AVAILABLE);
+    statement.setString(index++, CatalogSchema.Tasks.NO_ERROR_MSG);
+    statement.setTimestamp(index++, new Timestamp(System.currentTimeMillis()));
+    return index;
+  }
+
+  /** Appends the conditions selecting the failed tasks of a job inside a filter. */
+  private static void appendFailedTasksWhere(StringBuilder sql, TaskFilter filter) {
+    sql.append(" WHERE ")
+        .append(CatalogSchema.Tasks.STATE)
+        .append(" = ? AND ")
+        .append(CatalogSchema.Tasks.ID)
+        .append(" IN (SELECT ")
+        .append(CatalogSchema.JobTasks.TASK_ID)
+        .append(" FROM ")
+        .append(CatalogSchema.JobTasks.NAME)
+        .append(" WHERE ")
+        .append(CatalogSchema.JobTasks.JOB_ID)
+        .append(" = ?)");
+    appendIn(sql, CatalogSchema.Tasks.REGION, filter.getRegions().size());
+    appendIn(sql, CatalogSchema.Tasks.DATASET, filter.getDatasets().size());
+    if (filter.getInitDate() != null) {
+      sql.append(" AND ").append(CatalogSchema.Tasks.IMAGE_DATE).append(" >= ?");
+    }
+    if (filter.getEndDate() != null) {
+      sql.append(" AND ").append(CatalogSchema.Tasks.IMAGE_DATE).append(" <= ?");
+    }
+  }
+
+  /**
+   * Sets the values of the conditions appended by {@link #appendFailedTasksWhere}.
+   *
+   * @param index index of the first parameter
+   * @return index of the next parameter
+   */
+  private static int setFailedTasksWhere(
+      PreparedStatement statement, int index, String jobId, TaskFilter filter) throws SQLException {
+    statement.setString(index++, ImageTaskState.FAILED.getValue());
+    statement.setString(index++, jobId);
+    for (String region : filter.getRegions()) {
+      statement.setString(index++, region);
+    }
+    for (String dataset : filter.getDatasets()) {
+      statement.setString(index++, dataset);
+    }
+    if (filter.getInitDate() != null) {
+      statement.setDate(index++, toSqlDate(filter.getInitDate()));
+    }
+    if (filter.getEndDate() != null) {
+      statement.setDate(index++, toSqlDate(filter.getEndDate()));
+    }
+    return index;
+  }
+
+  /** Appends a condition on a column being in a list of values, unless the list is empty. */
+  private static void appendIn(StringBuilder sql, String column, int valueCount) {
+    if (valueCount == 0) return;
+    sql.append(" AND ").append(column).append(" IN (");
+    for (int i = 0; i < valueCount; i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    sql.append(")");
+  }
+
+  /**
+   * Reads the user who submitted a job from the job record.
+   *
+   * @param jobId job to read
+   * @return email of the job owner, or null if there is no such job
+   */
+  public String findJobOwner(String jobId) throws SQLException {
+    String sql =
+        "SELECT "
+            + CatalogSchema.Jobs.USER_EMAIL
+            + " FROM "
+            + CatalogSchema.Jobs.NAME
+            + " WHERE "
+            + CatalogSchema.Jobs.ID
+            + " = ?";
+
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setString(1, jobId);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next() ? resultSet.getString(1) : null;
+      }
+    }
+  }
+
+  /**
+   * Reads the settings shared by the tasks of a job from one of the tasks of the given user, so a
+   * task linked from another job never lends its settings to the job.
+   *
+   * @param jobId job whose tasks are read
+   * @param userEmail owner of the job
+   * @return priority, user, phase tags and digests of the job tasks, or null if it has no task of
+   *     the user
+   */
+  public TaskTemplate findJobTemplate(String jobId, String userEmail) throws SQLException {
+    String sql =
+        "SELECT t."
+            + CatalogSchema.Tasks.PRIORITY
+            + ", t."
+            + CatalogSchema.Tasks.USER_EMAIL
+            + ", t."
+            + CatalogSchema.Tasks.INPUTDOWNLOADING_TAG
+            + ", t."
+            + CatalogSchema.Tasks.INPUTDOWNLOADING_DIGEST
+            + ", t."
+            + CatalogSchema.Tasks.PREPROCESSING_TAG
+            + ", t."
+            + CatalogSchema.Tasks.PREPROCESSING_DIGEST
+            + ", t."
+            + CatalogSchema.Tasks.PROCESSING_TAG
+            + ", t."
+            + CatalogSchema.Tasks.PROCESSING_DIGEST
+            + jobTasksFromSql()
+            + " AND t."
+            + CatalogSchema.Tasks.USER_EMAIL
+            + " = ? LIMIT 1";
+
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setString(1, jobId);
+      statement.setString(2, userEmail);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (!resultSet.next()) return null;
+        return new TaskTemplate(
+            resultSet.getInt(1),
+            resultSet.getString(2),
+            resultSet.getString(3),
+            resultSet.getString(4),
+            resultSet.getString(5),
+            resultSet.getString(6),
+            resultSet.getString(7),
+            resultSet.getString(8));
+      }
+    }
+  }
+
+  /**
+   * Finds the scenes the tasks of a job already cover inside a date window.
+   *
+   * @param jobId job whose tasks are read
+   * @param initDate first day
+   * @param endDate last day, inclusive
+   * @return the covered scenes, as {@link #sceneKey(String, int, String)} keys
+   */
+  public Set<String> findJobScenes(String jobId, Date initDate, Date endDate) throws SQLException {
+    String sql =
+        "SELECT t."
+            + CatalogSchema.Tasks.REGION
+            + ", t."
+            + CatalogSchema.Tasks.IMAGE_DATE
+            + ", t."
+            + CatalogSchema.Tasks.DATASET
+            + jobTasksFromSql()
+            + " AND t."
+            + CatalogSchema.Tasks.IMAGE_DATE
+            + " BETWEEN ? AND ?";
+
+    Set<String> scenes = new HashSet<String>();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setString(1, jobId);
+      statement.setDate(2, toSqlDate(initDate));
+      statement.setDate(3, toSqlDate(endDate));
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          scenes.add(
+              sceneKey(
+                  resultSet.getString(1),
+                  (int) resultSet.getDate(2).toLocalDate().toEpochDay(),
+                  resultSet.getString(3)));
+        }
+      }
+    }
+    return scenes;
+  }
+
+  /**
+   * Counts the tasks of each job by state with one GROUP BY query per thousand jobs, instead of one
+   * count query per job and state.
+   *
+   * @param jobIds jobs to summarize
+   * @return the summary of each job, by job id; jobs without tasks have an empty summary
+   */
+  public Map<String, JobSummary> summarizeJobs(Collection<String> jobIds) throws SQLException {
+    Map<String, Map<String, Integer>> countsByJob = new HashMap<String, Map<String, Integer>>();
+    for (String jobId : jobIds) {
+      countsByJob.put(jobId, new HashMap<String, Integer>());
+    }
+    List<String> jobIdList = new ArrayList<String>(countsByJob.keySet());
+
+    try (Connection connection = dataSource.getConnection()) {
+      for (int from = 0; from < jobIdList.size(); from += MAX_JOBS_PER_QUERY) {
+        List<String> chunk =
+            jobIdList.subList(from, Math.min(from + MAX_JOBS_PER_QUERY, jobIdList.size()));
+        try (PreparedStatement statement =
+            connection.prepareStatement(jobSummarySql(chunk.size()))) {
+          int index = 1;
+          for (String jobId : chunk) {
+            statement.setString(index++, jobId);
+          }
+          try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+              countsByJob
+                  .get(resultSet.getString(1))
+                  .put(resultSet.getString(2), resultSet.getInt(3));
+            }
+          }
+        }
+      }
+    }
+
+    return toSummaries(countsByJob);
+  }
+
+  /** Counts the tasks of every job by state with a single GROUP BY query. */
+  public Map<String, JobSummary> summarizeAllJobs() throws SQLException {
+    String sql =
+        "SELECT j."
+            + CatalogSchema.JobTasks.JOB_ID
+            + ", t."
+            + CatalogSchema.Tasks.STATE
+            + ", COUNT(*)"
+            + jobsTasksFromSql()
+            + " GROUP BY j."
+            + CatalogSchema.JobTasks.JOB_ID
+            + ", t."
+            + CatalogSchema.Tasks.STATE;
+
+    Map<String, Map<String, Integer>> countsByJob = new HashMap<String, Map<String, Integer>>();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql);
+        ResultSet resultSet = statement.executeQuery()) {
+      while (resultSet.next()) {
+        Map<String, Integer> counts = countsByJob.get(resultSet.getString(1));
+        if (counts == null) {
+          counts = new HashMap<String, Integer>();
+          countsByJob.put(resultSet.getString(1), counts);
+        }
+        counts.put(resultSet.getString(2), resultSet.getInt(3));
+      }
+    }
+
+    return toSummaries(countsByJob);
+  }
+
+  /**
+   * Finds the jobs with a task created or updated at or after an instant.
+   *
+   * @param since earliest update time of the tasks looked at
+   * @return the latest update time of the tasks of each job found, by job id
+   */
+  public Map<String, Timestamp> findJobsUpdatedSince(Timestamp since) throws SQLException {
+    String sql =
+        "SELECT j."
+            + CatalogSchema.JobTasks.JOB_ID
+            + ", MAX(t."
+            + CatalogSchema.Tasks.UPDATED_TIME
+            + ")"
+            + jobsTasksFromSql()
+            + " WHERE t."
+            + CatalogSchema.Tasks.UPDATED_TIME
+            + " >= ? GROUP BY j."
+            + CatalogSchema.JobTasks.JOB_ID;
+
+    Map<String, Timestamp> jobs = new HashMap<String, Timestamp>();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setTimestamp(1, since);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          jobs.put(resultSet.getString(1), resultSet.getTimestamp(2));
+        }
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * Finds the tasks of some jobs created or updated at or after an instant, oldest update first.
+   *
+   * @param jobIds jobs whose tasks are looked at
+   * @param since earliest update time of the tasks looked at
+   * @param limit most tasks read; one more is read to tell that there were more
+   * @return the state of each task found as of its latest update
+   */
+  public List<TaskChange> findJobTasksUpdatedSince(
+      Collection<String> jobIds, Timestamp since, int limit) throws SQLException {
+    List<String> jobIdList = new ArrayList<String>(jobIds);
+    List<TaskChange> changes = new ArrayList<TaskChange>();
+
+    try (Connection connection = dataSource.getConnection()) {
+      for (int from = 0;
+          from < jobIdList.size() && changes.size() <= limit;
+          from += MAX_JOBS_PER_QUERY) {
+        List<String> chunk =
+            jobIdList.subList(from, Math.min(from + MAX_JOBS_PER_QUERY, jobIdList.size()));
+        StringBuilder sql =
+            new StringBuilder("SELECT j.")
+                .append(CatalogSchema.JobTasks.JOB_ID)
+                .append(", t.")
+                .append(CatalogSchema.Tasks.ID)
+                .append(", t.")
+                .append(CatalogSchema.Tasks.STATE)
+                .append(", t.")
+                .append(CatalogSchema.Tasks.UPDATED_TIME)
+                .append(jobsTasksFromSql())
+                .append(" WHERE t.")
+                .append(CatalogSchema.Tasks.UPDATED_TIME)
+                .append(" >= ?");
+        appendIn(sql, "j." + CatalogSchema.JobTasks.JOB_ID, chunk.size());
+        sql.append(" ORDER BY t.").append(CatalogSchema.Tasks.UPDATED_TIME).append(" LIMIT ?");
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+          int index = 1;
+          statement.setTimestamp(index++, since);
+          for (String jobId : chunk) {
+            statement.setString(index++, jobId);
+          }
+          statement.setInt(index, limit + 1 - changes.size());
+          try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+              changes.add(
+                  new TaskChange(
+                      resultSet.getString(1),
+                      resultSet.getString(2),
+                      resultSet.getString(3),
+                      resultSet.getTimestamp(4)));
+            }
+          }
+        }
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Finds the users that submitted some jobs, as recorded in the jobs table.
+   *
+   * @param jobIds jobs looked up
+   * @return the user email of each job found, by job id
+   */
+  public Map<String, String> findJobOwners(Collection<String> jobIds) throws SQLException {
+    List<String> jobIdList = new ArrayList<String>(jobIds);
+    Map<String, String> owners = new HashMap<String, String>();
+
+    try (Connection connection = dataSource.getConnection()) {
+      for (int from = 0; from < jobIdList.size(); from += MAX_JOBS_PER_QUERY) {
+        List<String> chunk =
+            jobIdList.subList(from, Math.min(from + MAX_JOBS_PER_QUERY, jobIdList.size()));
+        StringBuilder sql =
+            new StringBuilder("SELECT ")
+                .append(CatalogSchema.Jobs.ID)
+                .append(", ")
+                .append(CatalogSchema.Jobs.USER_EMAIL)
+                .append(" FROM ")
+                .append(CatalogSchema.Jobs.NAME)
+                .append(" WHERE ")
+                .append(CatalogSchema.Jobs.ID)
+                .append(" IN (");
+        for (int i = 0; i < chunk.size(); i++) {
+          sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+          int index = 1;
+          for (String jobId : chunk) {
+            statement.setString(index++, jobId);
+          }
+          try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+              owners.put(resultSet.getString(1), resultSet.getString(2));
+            }
+          }
+        }
+      }
+    }
+    return owners;
+  }
+
+  /** Gives the latest update time of any task, or null if there are no tasks. */
+  public Timestamp findLatestTaskUpdate() throws SQLException {
+    String sql =
+        "SELECT MAX(" + CatalogSchema.Tasks.UPDATED_TIME + ") FROM " + CatalogSchema.Tasks.NAME;
+
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql);
+        ResultSet resultSet = statement.executeQuery()) {
+      return resultSet.next() ? resultSet.getTimestamp(1) : null;
+    }
+  }
+
+  /**
+   * Gives a version of the tasks of a job that changes whenever a task is linked to the job,
+   * unlinked from it or updated, read with one aggregate over the links of the job.
+   *
+   * @param jobId job whose tasks are looked at
+   * @return the number of tasks and their latest update time, as text
+   */
+  public String findJobTasksVersion(String jobId) throws SQLException {
+    String sql =
+        "SELECT COUNT(*), MAX(t." + CatalogSchema.Tasks.UPDATED_TIME + ")" + jobTasksFromSql();
+
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setString(1, jobId);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (!resultSet.next()) return "0";
+        Timestamp latestUpdate = resultSet.getTimestamp(2);
+        return resultSet.getInt(1) + (latestUpdate == null ? "" : "-" + latestUpdate.getTime());
+      }
+    }
+  }
+
+  private static Map<String, JobSummary> toSummaries(
+      Map<String, Map<String, Integer>> countsByJob) {
+    Map<String, JobSummary> summaries = new HashMap<String, JobSummary>();
+    for (Map.Entry<String, Map<String, Integer>> counts : countsByJob.entrySet()) {
+      summaries.put(
+          counts.getKey(), JobSummary.fromStateCounts(counts.getKey(), counts.getValue()));
+    }
+    return summaries;
+  }
+
+  private static String jobSummarySql(int jobCount) {
+    StringBuilder sql =
+        new StringBuilder("SELECT j.")
+            .append(CatalogSchema.JobTasks.JOB_ID)
+            .append(", t.")
+            .append(CatalogSchema.Tasks.STATE)
+            .append(", COUNT(*)")
+            .append(jobsTasksFromSql())
+            .append(" WHERE j.")
+            .append(CatalogSchema.JobTasks.JOB_ID)
+            .append(" IN (");
+    for (int i = 0; i < jobCount; i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    return sql.append(") GROUP BY j.")
+        .append(CatalogSchema.JobTasks.JOB_ID)
+        .append(", t.")
+        .append(CatalogSchema.Tasks.STATE)
+        .toString();
+  }
+
+  /**
+   * Reads a page of the tasks of a job with keyset pagination: the page starts right after the
+   * cursor instead of skipping the tasks of every page before it, so reading a deep page costs as
+   * much as reading the first one.
+   *
+   * @param jobId job whose tasks are read
+   * @param state if not null, the only state of the tasks read
+   * @param search if not null nor empty, text the task id, region or dataset must contain
+   * @param ongoingOnly if only tasks neither archived nor failed are read
+   * @param completedOnly if only archived or failed tasks are read
+   * @param sortField field the tasks are sorted by, then by task id
+   * @param descending if the tasks are sorted in descending order
+   * @param after position after the last task of the previous page, or null for the first page
+   * @param size maximum number of tasks in the page
+   * @throws IllegalArgumentException if the size is not positive or the cursor was given for
+   *     another sort
+   */
+  public TaskPage findJobTasksPage(
+      String jobId,
+      ImageTaskState state,
+      String search,
+      boolean ongoingOnly,
+      boolean completedOnly,
+      TaskSortField sortField,
+      boolean descending,
+      TaskCursor after,
+      int size)
+      throws SQLException {
+    if (size <= 0) throw new IllegalArgumentException("Page size must be positive");
+    if (after != null
+        && (after.getSortField() != sortField || after.isDescending() != descending)) {
+      throw new IllegalArgumentException("Cursor was given for another sort");
+    }
+    boolean searching = search != null && !search.isEmpty();
+    String order = descending ? " DESC" : " ASC";
+
+    StringBuilder sql = new StringBuilder("SELECT ");
+    for (int i = 0; i < CatalogSchema.Tasks.COLUMNS.length; i++) {
+      sql.append(i == 0 ? "t." : ", t.").append(CatalogSchema.Tasks.COLUMNS[i]);
+    }
+    sql.append(jobTasksFromSql());
+    if (state != null) {
+      sql.append(" AND t.").append(CatalogSchema.Tasks.STATE).append(" = ?");
+    }
+    if (ongoingOnly) {
+      sql.append(" AND t.").append(CatalogSchema.Tasks.STATE).append(" NOT IN (?, ?)");
+    }
+    if (completedOnly) {
+      sql.append(" AND t.").append(CatalogSchema.Tasks.STATE).append(" IN (?, ?)");
+    }
+    if (searching) {
+      sql.append(" AND (LOWER(t.")
+          .append(CatalogSchema.Tasks.ID)
+          .append(") LIKE ? OR LOWER(t.")
+          .append(CatalogSchema.Tasks.REGION)
+          .append(") LIKE ? OR LOWER(t.")
+          .append(CatalogSchema.Tasks.DATASET)
+          .append(") LIKE ?)");
+    }
+    if (after != null) {
+      String comparison = descending ? " < " : " > ";
+      if (sortField == TaskSortField.TASK_ID) {
+        sql.append(" AND t.").append(CatalogSchema.Tasks.ID).append(comparison).append("?");
+      } else {
+        // a row comparison, so the (field, id) index is read from the cursor on
+        sql.append(" AND (t.")
+            .append(sortField.getColumn())
+            .append(", t.")
+            .append(CatalogSchema.Tasks.ID)
+            .append(")")
+            .append(comparison)
+            .append("(?, ?)");
+      }
+    }
+    sql.append(" ORDER BY ");
+    if (sortField != TaskSortField.TASK_ID) {
+      sql.append("t.").append(sortField.getColumn()).append(order).append(", ");
+    }
+    sql.append("t.").append(CatalogSchema.Tasks.ID).append(order).append(" LIMIT ?");
+
+    List<SapsImage> tasks = new ArrayList<SapsImage>();
+    TaskCursor next = null;
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+      int index = 1;
+      statement.setString(index++, jobId);
+      if (state != null) {
+        statement.setString(index++, state.getValue());
+      }
+      if (ongoingOnly) {
+        statement.setString(index++, ImageTaskState.ARCHIVED.getValue());
+        statement.setString(index++, ImageTaskState.FAILED.getValue());
+      }
+      if (completedOnly) {
+        statement.setString(index++, ImageTaskState.ARCHIVED.getValue());
+        statement.setString(index++, ImageTaskState.FAILED.getValue());
+      }
+      if (searching) {
+        String pattern = "%" + search.toLowerCase() + "%";
+        statement.setString(index++, pattern);
+        statement.setString(index++, pattern);
+        statement.setString(index++, pattern);
+      }
+      if (after != null) {
+        if (sortField != TaskSortField.TASK_ID) {
+          sortField.bind(statement, index++, after.getValue());
+        }
+        statement.setString(index++, after.getTaskId());
+      }
+      // one more task than the page holds tells if there is a next page
+      statement.setInt(index, size + 1);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        String lastValue = null;
+        String lastTaskId = null;
+        while (resultSet.next()) {
+          if (tasks.size() == size) {
+            next = new TaskCursor(sortField, descending, lastValue, lastTaskId);
+            break;
+          }
+          lastValue = sortField.read(resultSet);
+          lastTaskId = resultSet.getString(CatalogSchema.Tasks.ID);
+          tasks.add(toSapsImage(resultSet));
+        }
+      }
+    }
+    return new TaskPage(tasks, next);
+  }
+
+  /**
+   * Opens a reader of the archived tasks of some regions, days and phase tags, sorted by region and
+   * image date. The query is run before this returns; the rows are then fetched in batches as they
+   * are read, so they are not all held in memory.
+   *
+   * @param regions regions of the tasks, in the PPPRRR form
+   * @param initDate first image day
+   * @param endDate last image day, inclusive
+   */
+  public TaskReader openProcessedTasks(
+      Collection<String> regions,
+      Date initDate,
+      Date endDate,
+      String inputdownloadingTag,
+      String preprocessingTag,
+      String processingTag)
+      throws SQLException {
+    if (regions.isEmpty()) {
+      return new ResultSetTaskReader(null, null, null, true);
+    }
+    StringBuilder sql = new StringBuilder("SELECT ");
+    for (int i = 0; i < CatalogSchema.Tasks.COLUMNS.length; i++) {
+      sql.append(i == 0 ? "" : ", ").append(CatalogSchema.Tasks.COLUMNS[i]);
+    }
+    sql.append(" FROM ")
+        .append(CatalogSchema.Tasks.NAME)
+        .append(" WHERE ")
+        .append(CatalogSchema.Tasks.STATE)
+        .append(" = ? AND ")
+        .append(CatalogSchema.Tasks.IMAGE_DATE)
+        .append(" BETWEEN ? AND ? AND ")
+        .append(CatalogSchema.Tasks.INPUTDOWNLOADING_TAG)
+        .append(" = ? AND ")
+        .append(CatalogSchema.Tasks.PREPROCESSING_TAG)
+        .append(" = ? AND ")
+        .append(CatalogSchema.Tasks.PROCESSING_TAG)
+        .append(" = ? AND ")
+        .append(CatalogSchema.Tasks.REGION)
+        .append(" IN (");
+    for (int i = 0; i < regions.size(); i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    sql.append(") ORDER BY ")
+        .append(CatalogSchema.Tasks.REGION)
+        .append(", ")
+        .append(CatalogSchema.Tasks.IMAGE_DATE);
+
+    Connection connection = dataSource.getConnection();
+    boolean autoCommit = true;
+    PreparedStatement statement = null;
+    try {
+      autoCommit = connection.getAutoCommit();
+      // drivers such as PostgreSQL only fetch rows in batches inside a transaction
+      connection.setAutoCommit(false);
+      statement = connection.prepareStatement(sql.toString());
+      statement.setFetchSize(batchSize);
+      int index = 1;
+      statement.setString(index++, ImageTaskState.ARCHIVED.getValue());
+      statement.setDate(index++, toSqlDate(initDate));
+      statement.setDate(index++, toSqlDate(endDate));
+      statement.setString(index++, inputdownloadingTag);
+      statement.setString(index++, preprocessingTag);
+      statement.setString(index++, processingTag);
+      for (String region : regions) {
+        statement.setString(index++, region);
+      }
+      return new ResultSetTaskReader(connection, statement, statement.executeQuery(), autoCommit);
+    } catch (SQLException | RuntimeException e) {
+      try {
+        if (statement != null) statement.close();
+        connection.rollback();
+        connection.setAutoCommit(autoCommit);
+      } catch (SQLException closeError) {
+        e.addSuppressed(closeError);
+      } finally {
+        connection.close();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Builds a task from a row holding the {@link CatalogSchema.Tasks#COLUMNS}, read by name so the
+   * row and the select list cannot get out of step.
+   */
+  private static SapsImage toSapsImage(ResultSet resultSet) throws SQLException {
+    return new SapsImage(
+        resultSet.getString(CatalogSchema.Tasks.ID),
+        resultSet.getString(CatalogSchema.Tasks.DATASET),
+        resultSet.getString(CatalogSchema.Tasks.REGION),
+        resultSet.getDate(CatalogSchema.Tasks.IMAGE_DATE),
+        ImageTaskState.getStateFromStr(resultSet.getString(CatalogSchema.Tasks.STATE)),
+        resultSet.getString(CatalogSchema.Tasks.ARREBOL_JOB_ID),
+        resultSet.getString(CatalogSchema.Tasks.FEDERATION_MEMBER),
+        resultSet.getInt(CatalogSchema.Tasks.PRIORITY),
+        resultSet.getString(CatalogSchema.Tasks.USER_EMAIL),
+        resultSet.getString(CatalogSchema.Tasks.INPUTDOWNLOADING_TAG),
+        resultSet.getString(CatalogSchema.Tasks.INPUTDOWNLOADING_DIGEST),
+        resultSet.getString(CatalogSchema.Tasks.PREPROCESSING_TAG),
+        resultSet.getString(CatalogSchema.Tasks.PREPROCESSING_DIGEST),
+        resultSet.getString(CatalogSchema.Tasks.PROCESSING_TAG),
+        resultSet.getString(CatalogSchema.Tasks.PROCESSING_DIGEST),
+        resultSet.getTimestamp(CatalogSchema.Tasks.CREATION_TIME),
+        resultSet.getTimestamp(CatalogSchema.Tasks.UPDATED_TIME),
+        resultSet.getString(CatalogSchema.Tasks.STATUS),
+        resultSet.getString(CatalogSchema.Tasks.ERROR_MSG));
+  }
+
+  /** Joins the tasks to the links of the job bound to the first parameter. */
+  private static String jobTasksFromSql() {
+    return jobsTasksFromSql() + " WHERE j." + CatalogSchema.JobTasks.JOB_ID + " = ?";
+  }
+
+  /** Joins the tasks, as t, to the links of every job, as j. */
+  private static String jobsTasksFromSql() {
+    return " FROM "
+        + CatalogSchema.Tasks.NAME
+        + " t JOIN "
+        + CatalogSchema.JobTasks.NAME
+        + " j ON t."
+        + CatalogSchema.Tasks.ID
+        + " = j."
+        + CatalogSchema.JobTasks.TASK_ID;
+  }
+
+  /**
+   * Finds the tasks of a region, archived or in flight, that ran or will run the same phase tags
+   * and image digests as the template, so they can be linked to a new job instead of being created
+   * again. The tasks of every user are reused, as their outputs only depend on the scene, tags and
+   * digests; ownership is kept by the job record and its links, and the settings of a job are only
+   * read from the tasks of its owner (see {@link #findJobTemplate}). Failed tasks are not reused;
+   * when there is more than one task for a scene, an archived one is preferred.
+   *
+   * @param region region in the PPPRRR form
+   * @param initDate first day
+   * @param endDate last day, inclusive
+   * @param template phase tags and digests the tasks must match
+   * @return ids of the reusable tasks by {@link #sceneKey}
+   */
+  public Map<String, String> findReusableTasks(
+      String region, Date initDate, Date endDate, TaskTemplate template) throws SQLException {
+    String sql =
+        "SELECT "
+            + CatalogSchema.Tasks.ID
+            + ", "
+            + CatalogSchema.Tasks.IMAGE_DATE
+            + ", "
+            + CatalogSchema.Tasks.DATASET
+            + ", "
+            + CatalogSchema.Tasks.STATE
+            + " FROM "
+            + CatalogSchema.Tasks.NAME
+            + " WHERE "
+            + CatalogSchema.Tasks.REGION
+            + " = ? AND "
+            + CatalogSchema.Tasks.IMAGE_DATE
+            + " BETWEEN ? AND ? AND "
+            + CatalogSchema.Tasks.STATE
+            + " <> ? AND "
+            + CatalogSchema.Tasks.INPUTDOWNLOADING_TAG
+            + " = ? AND "
+            + CatalogSchema.Tasks.INPUTDOWNLOADING_DIGEST
+            + " = ? AND "
+            + CatalogSchema.Tasks.PREPROCESSING_TAG
+            + " = ? AND "
+            + CatalogSchema.Tasks.PREPROCESSING_DIGEST
+            + " = ? AND "
+            + CatalogSchema.Tasks.PROCESSING_TAG
+            + " = ? AND "
+            + CatalogSchema.Tasks.PROCESSING_DIGEST
+            + " = ?";
+
+    Map<String, String> taskIds = new HashMap<String, String>();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setString(1, region);
+      statement.setDate(2, toSqlDate(initDate));
+      statement.setDate(3, toSqlDate(endDate));
+      statement.setString(4, ImageTaskState.FAILED.getValue());
+      statement.setString(5, template.getInputdownloadingTag());
+      statement.setString(6, template.getInputdownloadingDigest());
+      statement.setString(7, template.getPreprocessingTag());
+      statement.setString(8, template.getPreprocessingDigest());
+      statement.setString(9, template.getProcessingTag());
+      statement.setString(10, template.getProcessingDigest());
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          String key =
+              sceneKey(
+                  (int) resultSet.getDate(2).toLocalDate().toEpochDay(), resultSet.getString(3));
+          if (ImageTaskState.ARCHIVED.getValue().equals(resultSet.getString(4))
+              || !taskIds.containsKey(key)) {
+            taskIds.put(key, resultSet.getString(1));
+          }
+        }
+      }
+    }
+    return taskIds;
+  }
+
+  /** Key of the scene of a day and dataset in the map given by {@link #findReusableTasks}. */
+  public static String sceneKey(int epochDay, String dataset) {
+    return epochDay + "/" + dataset;
+  }
+
+  /** Key of the scene of a region, day and dataset in the set given by {@link #findJobScenes}. */
+  public static String sceneKey(String region, int epochDay, String dataset) {
+    return region + "/" + sceneKey(epochDay, dataset);
+  }
+
+  /**
+   * Finds every (region, day) pair with a known Landsat scene for the regions inside the date
+   * window, with a single query instead of one per pair.
+   *
+   * @param regions regions in the PPPRRR form
+   * @param initDate first day of the window
+   * @param endDate last day of the window, inclusive
+   */
+  public SceneAvailability findAvailableScenes(Set<String> regions, Date initDate, Date endDate)
+      throws SQLException {
+    long start = System.currentTimeMillis();
+    SceneAvailability availability = new SceneAvailability(initDate);
+    List<String> regionList = new ArrayList<String>(regions);
+
+    try (Connection connection = dataSource.getConnection()) {
+      for (int from = 0; from < regionList.size(); from += MAX_REGIONS_PER_QUERY) {
+        List<String> chunk =
+            regionList.subList(from, Math.min(from + MAX_REGIONS_PER_QUERY, regionList.size()));
+        try (PreparedStatement statement =
+            connection.prepareStatement(availableScenesSql(chunk.size()))) {
+          int index = 1;
+          for (String region : chunk) {
+            statement.setString(index++, region);
+          }
+          statement.setDate(index++, toSqlDate(initDate));
+          statement.setDate(index, toSqlDate(endDate));
+
+          try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+              availability.add(resultSet.getString(1), resultSet.getDate(2).toLocalDate());
+            }
+          }
+        }
+      }
+    }
+
+    LOGGER.debug(
+        "Found "
+            + availability.size()
+            + " available scenes for "
+            + regions.size()
+            + " regions in "
+            + (System.currentTimeMillis() - start)
+            + " ms");
+    return availability;
+  }
+
+  private static String availableScenesSql(int regionCount) {
+    StringBuilder sql =
+        new StringBuilder("SELECT DISTINCT ")
+            .append(CatalogSchema.LandsatImages.REGION)
+            .append(", ")
+            .append(CatalogSchema.LandsatImages.IMAGE_DATE)
+            .append(" FROM ")
+            .append(CatalogSchema.LandsatImages.NAME)
+            .append(" WHERE ")
+            .append(CatalogSchema.LandsatImages.REGION)
+            .append(" IN (");
+    for (int i = 0; i < regionCount; i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    return sql.append(") AND ")
+        .append(CatalogSchema.LandsatImages.IMAGE_DATE)
+        .append(" BETWEEN ? AND ?")
+        .toString();
+  }
+
+  /** Converts to the SQL date of the same calendar day in the default time zone. */
+  private static java.sql.Date toSqlDate(Date date) {
+    return java.sql.Date.valueOf(LocalDate.ofEpochDay(SceneAvailability.toEpochDay(date)));
+  }
+
+  private static class ResultSetTaskReader implements TaskReader {
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final boolean autoCommit;
+    private boolean closed;
+
+    /** Reads the rows of a result set; a null one reads no task. */
+    ResultSetTaskReader(
+        Connection connection,
+        PreparedStatement statement,
+        ResultSet resultSet,
+        boolean autoCommit) {
+      this.connection = connection;
+      this.statement = statement;
+      this.resultSet = resultSet;
+      this.autoCommit = autoCommit;
+    }
+
+    @Override
+    public SapsImage next() throws SQLException {
+      if (resultSet == null || closed || !resultSet.next()) return null;
+      return toSapsImage(resultSet);
+    }
+
+    @Override
+    public void close() throws SQLException {
+      if (closed || connection == null) return;
+      closed = true;
+      try {
+        resultSet.close();
+        statement.close();
+        connection.rollback();
+        connection.setAutoCommit(autoCommit);
+      } finally {
+        connection.close();
+      }
+    }
+  }
+
+  private static class BatchTaskWriter implements TaskWriter {
+
+    private final Connection connection;
+    private final boolean autoCommit;
+    private final PreparedStatement insertTask;
+    private final PreparedStatement insertLink;
+    private final String jobId;
+    private final TaskTemplate template;
+    private final TaskInsertListener listener;
+    private final int batchSize;
+    private final long maxCommitDelayMillis;
+    private Timestamp batchTime;
+    private Timestamp firstBatchTime;
+    private int pendingTasks;
+    private int pendingLinks;
+    private boolean committed;
+
+    BatchTaskWriter(
+        Connection connection,
+        String jobId,
+        TaskTemplate template,
+        TaskInsertListener listener,
+        int batchSize,
+        long maxCommitDelayMillis)
+        throws SQLException {
+      this.connection = connection;
+      this.jobId = jobId;
+      this.template = template;
+      this.listener = listener;
+      this.batchSize = batchSize;
+      this.maxCommitDelayMillis = maxCommitDelayMillis;
+      this.autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      this.insertTask = connection.prepareStatement(CatalogSchema.Tasks.INSERT_SQL);
+      this.insertLink = connection.prepareStatement(CatalogSchema.JobTasks.INSERT_SQL);
+    }
+
+    @Override
+    public void write(TaskDescriptor task) throws SQLException {
+      if (pendingTasks == 0) {
+        batchTime = new Timestamp(System.currentTimeMillis());
+        if (firstBatchTime == null) firstBatchTime = batchTime;
+      }
+      String taskId = task.getTaskId();
+      insertTask.setString(1, taskId);
+      insertTask.setString(2, task.getDataset());
+      insertTask.setString(3, task.getRegion());
+      insertTask.setDate(4, java.sql.Date.valueOf(LocalDate.ofEpochDay(task.getEpochDay())));
+      insertTask.setString(5, ImageTaskState.CREATED.getValue());
+      insertTask.setString(6, SapsImage.NONE_ARREBOL_JOB_ID);
+      insertTask.setString(7, SapsImage.NONE_FEDERATION_MEMBER);
+      insertTask.setInt(8, template.getPriority());
+      insertTask.setString(9, template.getUserEmail());
+      insertTask.setString(10, template.getInputdownloadingTag());
+      insertTask.setString(11, template.getInputdownloadingDigest());
+      insertTask.setString(12, template.getPreprocessingTag());
+      insertTask.setString(13, template.getPreprocessingDigest());
+      insertTask.setString(14, template.getProcessingTag());
+      insertTask.setString(15, template.getProcessingDigest());
+      insertTask.setTimestamp(16, batchTime);
+      insertTask.setTimestamp(17, batchTime);
+      insertTask.setString(18, SapsImage.AVAILABLE);
+      insertTask.setString(19, CatalogSchema.Tasks.NO_ERROR_MSG);
+      insertTask.addBatch();
+
+      insertLink.setString(1, jobId);
+      insertLink.setString(2, taskId);
+      insertLink.addBatch();
+
+      pendingTasks++;
+      if (++pendingLinks == batchSize) flush();
+    }
+
+    @Override
+    public void link(String taskId) throws SQLException {
+      insertLink.setString(1, jobId);
+      insertLink.setString(2, taskId);
+      insertLink.addBatch();
+
+      if (++pendingLinks == batchSize) flush();
+    }
+
+    @Override
+    public void commit() throws SQLException {
+      flush();
+      if (firstBatchTime != null
+          && System.currentTimeMillis() - firstBatchTime.getTime() > maxCommitDelayMillis) {
+        touchWrittenTasks();
+      }
+      connection.commit();
+      committed = true;
+    }
+
+    @Override
+    public void close() throws SQLException {
+      try {
+        if (!committed) connection.rollback();
+      } finally {
+        try {
+          insertTask.close();
+          insertLink.close();
+          connection.setAutoCommit(autoCommit);
+        } finally {
+          connection.close();
+        }
+      }
+    }
+
+    /**
+     * Gives the tasks written in the transaction the current time as their update time, so they are
+     * not committed with a time polls have already left behind.
+     */
+    private void touchWrittenTasks() throws SQLException {
+      String sql =
+          "UPDATE "
+              + CatalogSchema.Tasks.NAME
+              + " SET "
+              + CatalogSchema.Tasks.UPDATED_TIME
+              + " = ? WHERE "
+              + CatalogSchema.Tasks.CREATION_TIME
+              + " >= ? AND "
+              + CatalogSchema.Tasks.ID
+              + " IN (SELECT "
+              + CatalogSchema.JobTasks.TASK_ID
+              + " FROM "
+              + CatalogSchema.JobTasks.NAME
+              + " WHERE "
+              + CatalogSchema.JobTasks.JOB_ID
+              + " = ?)";
+      try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        statement.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+        statement.setTimestamp(2, firstBatchTime);
+        statement.setString(3, jobId);
+        statement.executeUpdate();
+      }
+    }
+
+    private void flush() throws SQLException {
+      if (pendingTasks > 0) insertTask.executeBatch();
+      if (pendingLinks > 0) insertLink.executeBatch();
+      if (listener != null && pendingTasks > 0) listener.tasksInserted(pendingTasks);
+      pendingTasks = 0;
+      pendingLinks = 0;
+    }
+  }
+}
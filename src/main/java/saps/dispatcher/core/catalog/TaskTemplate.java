@@ -0,0 +1,66 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+/** Settings shared by every task of a job submission. */
+public class TaskTemplate {
+
+  private final int priority;
+  private final String userEmail;
+  private final String inputdownloadingTag;
+  private final String inputdownloadingDigest;
+  private final String preprocessingTag;
+  private final String preprocessingDigest;
+  private final String processingTag;
+  private final String processingDigest;
+
+  public TaskTemplate(
+      int priority,
+      String userEmail,
+      String inputdownloadingTag,
+      String inputdownloadingDigest,
+      String preprocessingTag,
+      String preprocessingDigest,
+      String processingTag,
+      String processingDigest) {
+    this.priority = priority;
+    this.userEmail = userEmail;
+    this.inputdownloadingTag = inputdownloadingTag;
+    this.inputdownloadingDigest = inputdownloadingDigest;
+    this.preprocessingTag = preprocessingTag;
+    this.preprocessingDigest = preprocessingDigest;
+    this.processingTag = processingTag;
+    this.processingDigest = processingDigest;
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  public String getUserEmail() {
+    return userEmail;
+  }
+
+  public String getInputdownloadingTag() {
+    return inputdownloadingTag;
+  }
+
+  public String getInputdownloadingDigest() {
+    return inputdownloadingDigest;
+  }
+
+  public String getPreprocessingTag() {
+    return preprocessingTag;
+  }
+
+  public String getPreprocessingDigest() {
+    return preprocessingDigest;
+  }
+
+  public String getProcessingTag() {
+    return processingTag;
+  }
+
+  public String getProcessingDigest() {
+    return processingDigest;
+  }
+}
@@ -0,0 +1,24 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.SQLException;
+
+/**
+ * Writes the tasks of a job to the catalog as they are generated, holding at most one batch of
+ * them, so the memory used does not grow with the size of the job. Nothing written is visible
+ * until {@link #commit()}; closing a writer that was not committed discards every task written.
+ */
+public interface TaskWriter extends AutoCloseable {
+
+  /** Adds a task and links it to the job, sending the pending batch when it is full. */
+  void write(TaskDescriptor task) throws SQLException;
+
+  /** Links a task that already exists, e.g. one created for another job, to the job. */
+  void link(String taskId) throws SQLException;
+
+  /** Sends the pending batch and commits every task written. */
+  void commit() throws SQLException;
+
+  @Override
+  void close() throws SQLException;
+}
@@ -2,13 +2,17 @@
 package saps.dispatcher.core.restlet;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import org.apache.log4j.Logger;
+import org.locationtech.jts.geom.Geometry;
 import org.restlet.Application;
 import org.restlet.Component;
 import org.restlet.Restlet;
@@ -25,9 +29,22 @@ import saps.common.core.model.enums.JobState;
 import saps.common.exceptions.SapsException;
 import saps.common.utils.SapsPropertiesConstants;
 import saps.common.utils.SapsPropertiesUtil;
+import saps.dispatcher.core.JobChangeFeed;
+import saps.dispatcher.core.JobProgress;
+import saps.dispatcher.core.JobRequest;
 import saps.dispatcher.core.SubmissionDispatcher;
+import saps.dispatcher.core.catalog.JobSummary;
+import saps.dispatcher.core.catalog.TaskCursor;
+import saps.dispatcher.core.catalog.TaskFilter;
+import saps.dispatcher.core.catalog.TaskPage;
+import saps.dispatcher.core.catalog.TaskReader;
+import saps.dispatcher.core.catalog.TaskSortField;
 import saps.dispatcher.core.restlet.resource.EmailResource;
+import saps.dispatcher.core.restlet.resource.JobEventsResource;
 import saps.dispatcher.core.restlet.resource.ImageResource;
+import saps.dispatcher.core.restlet.resource.JobExtensionResource;
+import saps.dispatcher.core.restlet.resource.JobProgressResource;
+import saps.dispatcher.core.restlet.resource.JobRetryResource;
 import saps.dispatcher.core.restlet.resource.LinkResource;
 import saps.dispatcher.core.restlet.resource.MainResource;
 import saps.dispatcher.core.restlet.resource.RegionResource;
@@ -43,7 +60,8 @@ public class DatabaseApplication extends Application {
   private SubmissionDispatcher submissionDispatcher;
   private Component restletComponent;
 
-  public DatabaseApplication(Properties properties) throws SapsException, SQLException {
+  public DatabaseApplication(Properties properties)
+      throws SapsException, SQLException, IOException {
     if (!checkProperties(properties))
       throw new SapsException(
           "Error on validate the file. Missing properties for start Database Application.");
@@ -94,26 +112,44 @@ public class DatabaseApplication extends Application {
 
   public void stopServer() throws Exception {
     this.restletComponent.stop();
+    this.submissionDispatcher.close();
   }
 
   @Override
   /** This function define application routes */
   public Restlet createInboundRoot() {
+    File staticRoot = new File(DB_WEB_STATIC_ROOT);
+
     Router router = new Router(getContext());
     router.attach("/", MainResource.class);
     router.attach("/ui/{requestPath}", MainResource.class);
     router.attach(
         "/static",
-        new Directory(getContext(), "file:///" + new File(DB_WEB_STATIC_ROOT).getAbsolutePath()));
+        new Directory(getContext(), "file:///" + staticRoot.getAbsolutePath()));
     router.attach("/users", UserResource.class);
     router.attach("/processings", ImageResource.class);
+    router.attach("/processings/{jobId}/progress", JobProgressResource.class);
+    router.attach("/processings/{jobId}/extension", JobExtensionResource.class);
+    router.attach("/processings/{jobId}/retry", JobRetryResource.class);
+    router.attach("/processings/{jobId}/events", JobEventsResource.class);
+    router.attach("/events", JobEventsResource.class);
     router.attach("/images/{imgName}", ImageResource.class);
     router.attach("/regions/details", RegionResource.class);
     router.attach("/regions/search", RegionResource.class);
     router.attach("/email", EmailResource.class);
     router.attach("/links", LinkResource.class);
     router.attach("/tasks/{id}", TaskResource.class);
-    return router;
+
+    ResponseCompressor compressor = ResponseCompressor.create(getContext(), properties);
+    if (compressor == null) {
+      return router;
+    }
+    // the copies are kept apart, so the deployed static files are left as they are
+    File cacheRoot = ResponseCompressor.cacheDirectory(properties);
+    int compressed = compressor.compressStaticFiles(staticRoot, cacheRoot);
+    LOGGER.info("Compressed " + compressed + " static files under [" + staticRoot + "] to [" + cacheRoot + "]");
+    compressor.setNext(router);
+    return compressor;
   }
 
   /** It creates new User in {@code Catalog}. */
@@ -177,6 +213,127 @@ public class DatabaseApplication extends Application {
         label);
   }
 
+  /**
+   * This function adds a new job in Catalog and creates its tasks, linking
+   * matching tasks of other jobs, of any user, instead of creating new ones
+   * when asked to.
+   *
+   * @param request area, dates, phase tags and owner of the job
+   * @param taskIds receives the ids of the tasks of the job
+   * @return job progress, with the number of reused tasks
+   */
+  public JobProgress createJobSubmission(JobRequest request, List<String> taskIds)
+      throws Exception {
+    return submissionDispatcher.createJobSubmission(request, taskIds);
+  }
+
+  /**
+   * This function adds a new job in Catalog and returns its id right away, while
+   * its tasks are created in background.
+   *
+   * @param request area, dates, phase tags and owner of the job
+   * @return job id
+   */
+  public String submitJob(JobRequest request) throws Exception {
+    return submissionDispatcher.submitJob(request);
+  }
+
+  /**
+   * This function gets the progress of the task creation of a job.
+   *
+   * @param jobId job id
+   * @return job progress, or null if the job was not submitted since the
+   *         dispatcher started
+   */
+  public JobProgress getJobProgress(String jobId) {
+    return submissionDispatcher.getJobProgress(jobId);
+  }
+
+  /**
+   * This function gets the user who submitted a job.
+   *
+   * @param jobId job id
+   * @return email of the job owner, or null if the job does not exist
+   */
+  public String getJobOwner(String jobId) throws Exception {
+    return submissionDispatcher.getJobOwner(jobId);
+  }
+
+  /**
+   * This function adds to an existing job the tasks of the scenes it does not
+   * cover yet in a new area and date window. The area and dates of the job
+   * record are not updated.
+   *
+   * @param jobId               job id
+   * @param lowerLeftLatitude   lower left latitude (coordinate)
+   * @param lowerLeftLongitude  lower left longitude (coordinate)
+   * @param upperRightLatitude  upper right latitude (coordinate)
+   * @param upperRightLongitude upper right longitude (coordinate)
+   * @param initDate            initial date
+   * @param endDate             end date
+   * @param taskIds             receives the ids of the created tasks
+   * @return progress of the extension
+   */
+  public JobProgress extendJob(
+      String jobId,
+      String lowerLeftLatitude,
+      String lowerLeftLongitude,
+      String upperRightLatitude,
+      String upperRightLongitude,
+      Date initDate,
+      Date endDate,
+      List<String> taskIds)
+      throws Exception {
+    return submissionDispatcher.extendJob(
+        jobId,
+        lowerLeftLatitude,
+        lowerLeftLongitude,
+        upperRightLatitude,
+        upperRightLongitude,
+        initDate,
+        endDate,
+        taskIds);
+  }
+
+  /**
+   * This function adds to an existing job the tasks of the scenes it does not
+   * cover yet in the tiles of a polygonal area of interest and a new date window.
+   * The area and dates of the job record are not updated.
+   *
+   * @param jobId           job id
+   * @param areaOfInterest  polygon or multipolygon (lon/lat coordinates)
+   * @param minTileCoverage minimum tile coverage fraction
+   * @param initDate        initial date
+   * @param endDate         end date
+   * @param taskIds         receives the ids of the created tasks
+   * @return progress of the extension
+   */
+  public JobProgress extendJob(
+      String jobId,
+      Geometry areaOfInterest,
+      double minTileCoverage,
+      Date initDate,
+      Date endDate,
+      List<String> taskIds)
+      throws Exception {
+    return submissionDispatcher.extendJob(
+        jobId, areaOfInterest, minTileCoverage, initDate, endDate, taskIds);
+  }
+
+  /**
+   * This function puts the failed tasks of a job, or of a subset of them, back
+   * in the created state so they are processed again. Archived tasks are kept.
+   *
+   * @param jobId          job id
+   * @param filter         subset of the job tasks to retry
+   * @param refreshDigests if the tasks get the current digests of their tags
+   * @return number of tasks retried
+   */
+  public int retryFailedTasks(String jobId, TaskFilter filter, boolean refreshDigests)
+      throws Exception {
+    return submissionDispatcher.retryFailedTasks(jobId, filter, refreshDigests);
+  }
+
   /**
    * This function get all saps user job in Catalog.
    * 
@@ -238,6 +395,28 @@ public class DatabaseApplication extends Application {
     return submissionDispatcher.getJobTasks(jobId, state, search, page, size, sortField, sortOrder, recoverOngoing, recoverCompleted);
   }
 
+  /**
+   * This function gets a page of the jobs tasks in Catalog starting right after
+   * a cursor.
+   *
+   * @param jobId            job id to be searched
+   * @param state            state of tasks
+   * @param search           search string
+   * @param recoverOngoing   if true, only ongoing tasks will be recovered
+   * @param recoverCompleted if true, only completed tasks will be recovered
+   * @param sortField        sort field
+   * @param descending       if the tasks are sorted in descending order
+   * @param after            cursor of the previous page, or null for the first
+   * @param size             page size
+   * @return tasks of the page and cursor of the next one
+   */
+  public TaskPage getJobTasksPage(String jobId, ImageTaskState state, String search,
+      boolean recoverOngoing, boolean recoverCompleted, TaskSortField sortField,
+      boolean descending, TaskCursor after, int size) throws Exception {
+    return submissionDispatcher.getJobTasksPage(jobId, state, search, recoverOngoing,
+        recoverCompleted, sortField, descending, after, size);
+  }
+
   /**
    * This function get tha amount of all jobs tasks in Catalog.
    * 
@@ -252,6 +431,50 @@ public class DatabaseApplication extends Application {
     return submissionDispatcher.getJobTasksCount(jobId, state, search, recoverOngoing, recoverCompleted);
   }
 
+  /**
+   * This function counts the tasks of each job by state in a single round trip
+   * to the Catalog.
+   *
+   * @param jobIds jobs to summarize
+   * @return the summary of each job, by job id
+   */
+  public Map<String, JobSummary> getJobSummaries(Collection<String> jobIds) throws SQLException {
+    return submissionDispatcher.getJobSummaries(jobIds);
+  }
+
+  /**
+   * This function follows the changes of a job, or of every job of a user.
+   *
+   * @param jobId     job followed, or null to follow the jobs of the user
+   * @param userEmail user following the changes
+   * @return the subscription the changes are read from
+   */
+  public JobChangeFeed.Subscription subscribeToJobChanges(String jobId, String userEmail)
+      throws SapsException {
+    return submissionDispatcher.subscribeToJobChanges(jobId, userEmail);
+  }
+
+  /**
+   * This function gives a version of the jobs and their tasks that changes
+   * whenever the job listing may change.
+   *
+   * @return the version, or null if it cannot be read cheaply
+   */
+  public String getJobsVersion() throws SQLException {
+    return submissionDispatcher.getJobsVersion();
+  }
+
+  /**
+   * This function gives a version of a job and its tasks that changes
+   * whenever its task listing may change.
+   *
+   * @param jobId job whose version is given
+   * @return the version, or null if it cannot be read cheaply
+   */
+  public String getJobVersion(String jobId) throws SQLException {
+    return submissionDispatcher.getJobVersion(jobId);
+  }
+
   /**
    * This function get saps image with specific id in Catalog.
    *
@@ -312,6 +535,43 @@ public class DatabaseApplication extends Application {
         processingPhaseTag);
   }
 
+  /**
+   * This function opens a reader of the processed {@code SapsImage} of an area
+   * in Catalog. The query is run before it returns; the reader must be closed.
+   *
+   * @param lowerLeftLatitude        lower left latitude (coordinate)
+   * @param lowerLeftLongitude       lower left longitude (coordinate)
+   * @param upperRightLatitude       upper right latitude (coordinate)
+   * @param upperRightLongitude      upper right longitude (coordinate)
+   * @param initDate                 initial date
+   * @param endDate                  end date
+   * @param inputdownloadingPhaseTag inputdownloading phase tag
+   * @param preprocessingPhaseTag    preprocessing phase tag
+   * @param processingPhaseTag       processing phase tag
+   * @return reader of the processed tasks
+   */
+  public TaskReader openProcessedTasks(
+      String lowerLeftLatitude,
+      String lowerLeftLongitude,
+      String upperRightLatitude,
+      String upperRightLongitude,
+      Date initDate,
+      Date endDate,
+      String inputdownloadingPhaseTag,
+      String preprocessingPhaseTag,
+      String processingPhaseTag) throws SQLException {
+    return submissionDispatcher.openProcessedTasks(
+        lowerLeftLatitude,
+        lowerLeftLongitude,
+        upperRightLatitude,
+        upperRightLongitude,
+        initDate,
+        endDate,
+        inputdownloadingPhaseTag,
+        preprocessingPhaseTag,
+        processingPhaseTag);
+  }
+
   /**
    * This function gets tasks with specific state in Catalog.
    *
@@ -0,0 +1,370 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.log4j.Logger;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Dimension;
+import org.restlet.data.Encoding;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.FileRepresentation;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.routing.Filter;
+
+/**
+ * Compresses responses with gzip or deflate, as negotiated by the Accept-Encoding header of the
+ * request. The body is compressed while it is written, so streamed responses are neither buffered
+ * nor delayed.
+ *
+ * <p>Responses of known size are compressed only from a minimum size. Streamed responses have no
+ * known size before they are written, and are always compressed: they are the large listings.
+ * Responses that are already encoded are sent as they are. Static files are sent from the gzip
+ * copies kept in a cache directory, outside the deployed files, while the copies are up to date.
+ */
+public class ResponseCompressor extends Filter {
+
+  public static final String RESPONSE_COMPRESSION_ENABLED_KEY = "response_compression_enabled";
+  public static final String RESPONSE_COMPRESSION_LEVEL_KEY = "response_compression_level";
+  public static final String RESPONSE_COMPRESSION_MIN_SIZE_KEY = "response_compression_min_size";
+  public static final String RESPONSE_COMPRESSION_CACHE_DIR_KEY = "response_compression_cache_dir";
+
+  private static final Logger LOGGER = Logger.getLogger(ResponseCompressor.class);
+
+  private static final int DEFAULT_LEVEL = 6;
+  private static final long DEFAULT_MIN_SIZE = 1024;
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final List<Encoding> ENCODINGS = Arrays.asList(Encoding.GZIP, Encoding.DEFLATE);
+
+  private static final List<String> COMPRESSIBLE_TYPES =
+      Arrays.asList(
+          "application/json",
+          "application/javascript",
+          "application/xml",
+          "application/cbor",
+          "application/x-jackson-smile",
+          "image/svg+xml");
+
+  /** Extensions of the static files worth keeping a gzip copy of. */
+  private static final List<String> COMPRESSIBLE_EXTENSIONS =
+      Arrays.asList(".html", ".css", ".js", ".json", ".map", ".svg", ".txt", ".xml");
+
+  private final int level;
+  private final long minSize;
+  private volatile File staticDirectory;
+  private volatile File cacheDirectory;
+
+  /**
+   * @param level compression level, from 1 (fastest) to 9 (smallest)
+   * @param minSize smallest response of known size compressed, in bytes
+   */
+  public ResponseCompressor(Context context, int level, long minSize) {
+    super(context);
+    this.level = level;
+    this.minSize = minSize;
+  }
+
+  /**
+   * Creates the compressor configured by the dispatcher properties.
+   *
+   * @return the compressor, or null if responses are not compressed
+   */
+  public static ResponseCompressor create(Context context, Properties properties) {
+    if (!Boolean.parseBoolean(properties.getProperty(RESPONSE_COMPRESSION_ENABLED_KEY, "true"))) {
+      LOGGER.info("Responses will not be compressed");
+      return null;
+    }
+    int level =
+        Integer.parseInt(
+            properties.getProperty(RESPONSE_COMPRESSION_LEVEL_KEY, String.valueOf(DEFAULT_LEVEL)));
+    if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException(
+          RESPONSE_COMPRESSION_LEVEL_KEY + " must be between 1 and 9, not " + level);
+    }
+    long minSize =
+        Long.parseLong(
+            properties.getProperty(
+                RESPONSE_COMPRESSION_MIN_SIZE_KEY, String.valueOf(DEFAULT_MIN_SIZE)));
+    return new ResponseCompressor(context, level, minSize);
+  }
+
+  /**
+   * Gives the directory the gzip copies of the static files are kept in: the configured one, or one
+   * in the temporary directory.
+   */
+  public static File cacheDirectory(Properties properties) {
+    String directory = properties.getProperty(RESPONSE_COMPRESSION_CACHE_DIR_KEY, "").trim();
+    return directory.isEmpty()
+        ? new File(System.getProperty("java.io.tmpdir"), "saps-dispatcher-static-gz")
+        : new File(directory);
+  }
+
+  @Override
+  protected void afterHandle(Request request, Response response) {
+    Representation entity = response.getEntity();
+    if (entity == null) return;
+
+    if (Status.REDIRECTION_NOT_MODIFIED.equals(response.getStatus())) {
+      // the client holds the tag it was given with the compressed response
+      Encoding encoding = negotiate(request);
+      if (encoding != null) entity.setTag(encodedTag(entity.getTag(), encoding));
+      return;
+    }
+    if (!isCompressible(entity.getMediaType())) return;
+
+    response.getDimensions().add(Dimension.ENCODING);
+    Encoding encoding = negotiate(request);
+    if (encoding == null
+        || !entity.isAvailable()
+        || !entity.getEncodings().isEmpty()
+        || (entity.getSize() != Representation.UNKNOWN_SIZE && entity.getSize() < minSize)) {
+      return;
+    }
+    if (Encoding.GZIP.equals(encoding) && entity instanceof FileRepresentation) {
+      Representation copy = cachedCopy((FileRepresentation) entity);
+      if (copy != null) {
+        entity.release();
+        response.setEntity(copy);
+        return;
+      }
+    }
+    response.setEntity(new CompressedRepresentation(entity, encoding, level));
+  }
+
+  /**
+   * Gives the tag of the uncompressed response a tag given with a compressed one stands for, so
+   * resources can compare the tags sent back by clients with their own.
+   */
+  public static Tag decodedTag(Tag tag) {
+    if (tag == null) return null;
+    for (Encoding encoding : ENCODINGS) {
+      String suffix = "-" + encoding.getName();
+      if (tag.getName().endsWith(suffix)) {
+        String name = tag.getName();
+        return new Tag(name.substring(0, name.length() - suffix.length()), tag.isWeak());
+      }
+    }
+    return tag;
+  }
+
+  /**
+   * Writes a gzip copy of each text file of a directory that has no up-to-date one to a cache
+   * directory, at the same relative path, so the static files are compressed once instead of on
+   * each request. The deployed files are left as they are. The copies are then sent, encoded as
+   * gzip, to the clients that accept it.
+   *
+   * @param directory root of the static files
+   * @param cacheDirectory root of the gzip copies
+   * @return number of files compressed
+   */
+  public int compressStaticFiles(File directory, File cacheDirectory) {
+    this.staticDirectory = directory.getAbsoluteFile();
+    this.cacheDirectory = cacheDirectory.getAbsoluteFile();
+    return compressDirectory(staticDirectory, this.cacheDirectory);
+  }
+
+  private int compressDirectory(File directory, File copies) {
+    File[] files = directory.listFiles();
+    if (files == null) return 0;
+
+    int compressed = 0;
+    for (File file : files) {
+      if (file.isDirectory()) {
+        compressed += compressDirectory(file, new File(copies, file.getName()));
+      } else if (isCompressible(file)) {
+        File copy = new File(copies, file.getName() + ".gz");
+        if (copy.isFile() && copy.lastModified() >= file.lastModified()) continue;
+        try {
+          if (!copies.isDirectory() && !copies.mkdirs()) {
+            throw new IOException("Cannot create directory [" + copies + "]");
+          }
+          compressFile(file, copy);
+          compressed++;
+        } catch (IOException e) {
+          LOGGER.warn("Error while compressing static file [" + file + "]", e);
+          copy.delete();
+        }
+      }
+    }
+    return compressed;
+  }
+
+  /**
+   * Gives the gzip copy of a static file in the cache, with the metadata of the file, or null if
+   * there is no copy or the file changed after it was written.
+   */
+  private Representation cachedCopy(FileRepresentation entity) {
+    File root = staticDirectory;
+    File file = entity.getFile();
+    if (root == null || file == null) return null;
+
+    String rootPath = root.getPath() + File.separator;
+    String path = file.getAbsolutePath();
+    if (!path.startsWith(rootPath)) return null;
+    File copy = new File(cacheDirectory, path.substring(rootPath.length()) + ".gz");
+    if (!copy.isFile() || copy.lastModified() < file.lastModified()) return null;
+
+    FileRepresentation representation = new FileRepresentation(copy, entity.getMediaType());
+    copyMetadata(entity, representation);
+    representation.getEncodings().add(Encoding.GZIP);
+    representation.setTag(encodedTag(entity.getTag(), Encoding.GZIP));
+    return representation;
+  }
+
+  private boolean isCompressible(File file) {
+    if (file.length() < minSize) return false;
+    String name = file.getName().toLowerCase();
+    for (String extension : COMPRESSIBLE_EXTENSIONS) {
+      if (name.endsWith(extension)) return true;
+    }
+    return false;
+  }
+
+  private void compressFile(File file, File copy) throws IOException {
+    File temporary = new File(copy.getPath() + ".tmp");
+    try (InputStream input = new FileInputStream(file);
+        OutputStream output = gzip(new FileOutputStream(temporary), level)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+        output.write(buffer, 0, read);
+      }
+    }
+    if (!temporary.renameTo(copy)) {
+      temporary.delete();
+      throw new IOException("Cannot rename [" + temporary + "] to [" + copy + "]");
+    }
+  }
+
+  private static boolean isCompressible(MediaType mediaType) {
+    if (mediaType == null) return false;
+    String name = mediaType.getName();
+    // events must reach the client when they are written, not when a block is compressed
+    if (name.equals("text/event-stream")) return false;
+    return name.startsWith("text/") || COMPRESSIBLE_TYPES.contains(name);
+  }
+
+  private static Encoding negotiate(Request request) {
+    if (request.getClientInfo() == null) return null;
+    Encoding preferred =
+        request
+            .getClientInfo()
+            .getPreferredMetadata(ENCODINGS, request.getClientInfo().getAcceptedEncodings());
+    return ENCODINGS.contains(preferred) ? preferred : null;
+  }
+
+  /**
+   * Gives a compressed response the metadata of the response it was made from, other than its
+   * encodings, size and tag, which differ.
+   */
+  private static void copyMetadata(Representation from, Representation to) {
+    to.setCharacterSet(from.getCharacterSet());
+    to.getLanguages().addAll(from.getLanguages());
+    to.setLocationRef(from.getLocationRef());
+    to.setModificationDate(from.getModificationDate());
+    to.setExpirationDate(from.getExpirationDate());
+    to.setDisposition(from.getDisposition());
+  }
+
+  /** A strong tag must differ between the encodings of a response. */
+  private static Tag encodedTag(Tag tag, Encoding encoding) {
+    if (tag == null) return null;
+    return new Tag(tag.getName() + "-" + encoding.getName(), tag.isWeak());
+  }
+
+  private static OutputStream compressing(OutputStream output, Encoding encoding, int level)
+      throws IOException {
+    return Encoding.GZIP.equals(encoding) ? gzip(output, level) : deflate(output, level);
+  }
+
+  private static OutputStream gzip(OutputStream output, final int level) throws IOException {
+    return new GZIPOutputStream(output, BUFFER_SIZE) {
+      {
+        def.setLevel(level);
+      }
+    };
+  }
+
+  private static OutputStream deflate(OutputStream output, int level) {
+    final Deflater deflater = new Deflater(level);
+    return new DeflaterOutputStream(output, deflater, BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          deflater.end();
+        }
+      }
+    };
+  }
+
+  /** Compressed copy of a response, written while the response is written. */
+  private static class CompressedRepresentation extends OutputRepresentation {
+
+    private final Representation wrapped;
+    private final Encoding encoding;
+    private final int level;
+
+    CompressedRepresentation(Representation wrapped, Encoding encoding, int level) {
+      super(wrapped.getMediaType());
+      this.wrapped = wrapped;
+      this.encoding = encoding;
+      this.level = level;
+      copyMetadata(wrapped, this);
+      getEncodings().add(encoding);
+      setTag(encodedTag(wrapped.getTag(), encoding));
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+      OutputStream compressed =
+          compressing(new UnclosableOutputStream(outputStream), encoding, level);
+      try {
+        wrapped.write(compressed);
+      } finally {
+        // writes the trailer without closing the connection, which Restlet closes
+        compressed.close();
+      }
+    }
+
+    @Override
+    public void release() {
+      wrapped.release();
+    }
+  }
+
+  /** Keeps the connection open when the compressed stream around it is closed. */
+  private static class UnclosableOutputStream extends FilterOutputStream {
+
+    UnclosableOutputStream(OutputStream output) {
+      super(output);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      out.write(bytes, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
@@ -8,17 +8,30 @@ import java.util.Locale;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.log4j.Logger;
+import org.locationtech.jts.geom.Geometry;
+import org.restlet.data.Conditions;
+import org.restlet.data.Dimension;
 import org.restlet.data.Form;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ResourceException;
 import org.restlet.resource.ServerResource;
 
 import freemarker.core.ReturnInstruction.Return;
 import saps.common.core.model.SapsUser;
 import saps.dispatcher.core.restlet.DatabaseApplication;
+import saps.dispatcher.core.restlet.ResponseCompressor;
+import saps.dispatcher.utils.RegionUtil;
 
 public class BaseResource extends ServerResource {
 
   private static final Logger LOGGER = Logger.getLogger(BaseResource.class);
 
+  static final String AREA_OF_INTEREST = "areaOfInterest";
+  static final String MIN_TILE_COVERAGE = "minTileCoverage";
+
   protected DatabaseApplication application;
 
   public BaseResource() {
@@ -80,6 +93,108 @@ public class BaseResource extends ServerResource {
     return false;
   }
 
+  /**
+   * Picks the encoding of a streamed response by the Accept header of the
+   * request, telling caches that the response varies with it.
+   */
+  protected ResponseEncoding negotiateEncoding() {
+    getDimensions().add(Dimension.MEDIA_TYPE);
+    return ResponseEncoding.negotiate(getClientInfo());
+  }
+
+  /**
+   * Gives the strong entity tag of a response from the version of the data it
+   * is read from and everything else it depends on: its encoding and the
+   * parameters of the request.
+   *
+   * @return the tag, or null if the data has no version
+   */
+  protected Tag entityTag(String version, ResponseEncoding encoding, String... parameters) {
+    if (version == null) {
+      return null;
+    }
+    StringBuilder key = new StringBuilder(version).append('\n').append(encoding.name());
+    for (String parameter : parameters) {
+      key.append('\n').append(parameter);
+    }
+    return new Tag(DigestUtils.sha1Hex(key.toString()), false);
+  }
+
+  /**
+   * Answers 304 Not Modified when the client already has the response with the
+   * given tag, so the response is not read again.
+   *
+   * @return the empty response, or null if the response must be sent
+   */
+  protected Representation notModified(Tag tag) {
+    Conditions conditions = getRequest().getConditions();
+    if (tag == null || conditions == null || conditions.getNoneMatch() == null) {
+      return null;
+    }
+    for (Tag noneMatch : conditions.getNoneMatch()) {
+      if (Tag.ALL.equals(noneMatch) || tag.equals(ResponseCompressor.decodedTag(noneMatch), false)) {
+        Representation representation = new EmptyRepresentation();
+        representation.setTag(tag);
+        setStatus(Status.REDIRECTION_NOT_MODIFIED);
+        return representation;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks that a job exists and was submitted by the given user, answering
+   * 404 Not Found or 403 Forbidden otherwise.
+   */
+  protected void checkJobOwner(String jobId, String userEmail) throws Exception {
+    String owner = application.getJobOwner(jobId);
+    if (owner == null) {
+      throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, "Job [" + jobId + "] not found");
+    }
+    if (!owner.equals(userEmail)) {
+      LOGGER.error("User [" + userEmail + "] is not the owner of job [" + jobId + "]");
+      throw new ResourceException(Status.CLIENT_ERROR_FORBIDDEN);
+    }
+  }
+
+  /**
+   * Reads the polygonal area of interest of a form, in GeoJSON, answering 400
+   * Bad Request when it is not valid.
+   *
+   * @return the area, or null if the form has none
+   */
+  Geometry extractAreaOfInterest(Form form) {
+    String areaOfInterestGeoJson = form.getFirstValue(AREA_OF_INTEREST);
+    if (areaOfInterestGeoJson == null || areaOfInterestGeoJson.isEmpty()) {
+      return null;
+    }
+    try {
+      return RegionUtil.parseAreaOfInterest(areaOfInterestGeoJson);
+    } catch (IllegalArgumentException e) {
+      LOGGER.error("Failed to parse area of interest.", e);
+      throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+    }
+  }
+
+  /**
+   * Reads the minimum tile coverage of an area of interest, 0 when the form has
+   * none, answering 400 Bad Request when it is out of the [0, 1] range.
+   */
+  double extractMinTileCoverage(Form form) {
+    String value = form.getFirstValue(MIN_TILE_COVERAGE);
+    double minTileCoverage;
+    try {
+      minTileCoverage = value == null || value.isEmpty() ? 0 : Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      minTileCoverage = -1;
+    }
+    if (minTileCoverage < 0 || minTileCoverage > 1) {
+      throw new ResourceException(
+          Status.CLIENT_ERROR_BAD_REQUEST, "Minimum tile coverage must be in the [0, 1] range.");
+    }
+    return minTileCoverage;
+  }
+
   String extractCoordinate(Form form, String name, int index) {
 
     String value = form.getFirstValue(name);
@@ -1,18 +1,26 @@
 /* (C)2020 */
 package saps.dispatcher.core.restlet.resource;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.restlet.data.Form;
 import org.restlet.data.Header;
 import org.restlet.data.MediaType;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
 import org.restlet.resource.Get;
@@ -20,12 +28,21 @@ import org.restlet.resource.Post;
 import org.restlet.resource.ResourceException;
 import org.restlet.util.Series;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 
 import saps.common.core.model.SapsImage;
 import saps.common.core.model.SapsUserJob;
 import saps.common.core.model.enums.ImageTaskState;
 import saps.common.core.model.enums.JobState;
+import saps.common.exceptions.SapsException;
+import saps.dispatcher.core.JobProgress;
+import saps.dispatcher.core.JobRequest;
+import saps.dispatcher.core.catalog.JobSummary;
+import saps.dispatcher.core.catalog.TaskCursor;
+import saps.dispatcher.core.catalog.TaskPage;
+import saps.dispatcher.core.catalog.TaskSortField;
 
 public class ImageResource extends BaseResource {
 
@@ -36,10 +53,13 @@ public class ImageResource extends BaseResource {
   private static final String QUERY_KEY_WITHOUT_TASKS = "withoutTasks";
   private static final String QUERY_KEY_RECOVER_ONGOING = "recoverOngoing";
   private static final String QUERY_KEY_RECOVER_COMPLETED = "recoverCompleted";
+  private static final String QUERY_KEY_WITH_SUMMARY = "withSummary";
   private static final String QUERY_KEY_PAGINATION_PAGE = "page";
   private static final String QUERY_KEY_PAGINATION_SIZE = "size";
   private static final String QUERY_KEY_PAGINATION_SORT = "sort";
   private static final String QUERY_KEY_PAGINATION_SEARCH = "search";
+  private static final String QUERY_KEY_PAGINATION_CURSOR = "cursor";
+  private static final int DEFAULT_CURSOR_PAGE_SIZE = 100;
 
   private static final String LOWER_LEFT = "lowerLeft";
   private static final String UPPER_RIGHT = "upperRight";
@@ -52,6 +72,8 @@ public class ImageResource extends BaseResource {
   private static final String PRIORITY = "priority";
   private static final String EMAIL = "email";
   private static final String LABEL = "label";
+  private static final String ASYNC = "async";
+  private static final String REUSE_TASKS = "reuseTasks";
 
   private static final String ADD_IMAGES_MESSAGE_OK = "Tasks successfully added";
   private static final String ADD_JOB_MESSAGE_FAILURE = "Failed to add new jobs";
@@ -75,9 +97,11 @@ public class ImageResource extends BaseResource {
     String page = series.getFirstValue(QUERY_KEY_PAGINATION_PAGE, true);
     String size = series.getFirstValue(QUERY_KEY_PAGINATION_SIZE, true);
     String sortOptions = series.getFirstValue(QUERY_KEY_PAGINATION_SORT, true);
+    String cursor = series.getFirstValue(QUERY_KEY_PAGINATION_CURSOR, true);
     Boolean withoutTasks = Boolean.parseBoolean(series.getFirstValue(QUERY_KEY_WITHOUT_TASKS, true));
     Boolean recoverOngoing = Boolean.parseBoolean(series.getFirstValue(QUERY_KEY_RECOVER_ONGOING, true));
     Boolean recoverCompleted = Boolean.parseBoolean(series.getFirstValue(QUERY_KEY_RECOVER_COMPLETED, true));
+    boolean withSummary = Boolean.parseBoolean(series.getFirstValue(QUERY_KEY_WITH_SUMMARY, true));
 
     if (!authenticateUser(userEmail, userPass, userEGI)) {
       throw new ResourceException(HttpStatus.SC_UNAUTHORIZED);
@@ -85,8 +109,6 @@ public class ImageResource extends BaseResource {
 
     String sortField = "";
     String sortOrder = "";
-    JSONArray listJSON = new JSONArray();
-    JSONObject responseJSON = new JSONObject();
     Integer pageInt = page != null ? Integer.parseInt(page) : 0;
     Integer sizeInt = size != null ? Integer.parseInt(size) : 0;
 
@@ -95,35 +117,142 @@ public class ImageResource extends BaseResource {
       sortOrder = new JSONObject(sortOptions).get(sortField).toString();
     }
 
+    // jobs are paged by page number, as saps-catalog builds them
+    if (jobId == null && cursor != null) {
+      throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST,
+          "Only the tasks of a job can be paged with a cursor");
+    }
+
+    final ResponseEncoding encoding = negotiateEncoding();
+    // read before the data, so a change made meanwhile is sent again instead of missed
+    String version = jobId != null ? application.getJobVersion(jobId) : application.getJobsVersion();
+    Tag tag = entityTag(version, encoding, jobId, state, search, page, size, sortOptions, cursor,
+        String.valueOf(withoutTasks), String.valueOf(recoverOngoing), String.valueOf(recoverCompleted),
+        String.valueOf(withSummary));
+    Representation notModified = notModified(tag);
+    if (notModified != null) {
+      return notModified;
+    }
+
+    // the catalog is read before streaming, so its errors still change the response status
     if (jobId != null) {
       ImageTaskState imageTaskState = state != null ? ImageTaskState.valueOf(state) : null;
-      Integer tasksAmount = application.getJobTasksCount(jobId, null, null, false, false);
-      Integer tasksOngoing = application.getJobTasksCount(jobId, null, null, true, false);
-      Integer tasksFailed = application.getJobTasksCount(jobId, ImageTaskState.FAILED, null, false, false);
-      Integer tasksArchived = application.getJobTasksCount(jobId, ImageTaskState.ARCHIVED, null, false, false);
-      List<SapsImage> jobTasks = application.getJobTasks(jobId, imageTaskState, search, pageInt, sizeInt, sortField, sortOrder,
-          recoverOngoing, recoverCompleted);
-      for (SapsImage task : jobTasks) {
-        listJSON.put(task.toJSON());
+      final JobSummary summary = application.getJobSummaries(Collections.singleton(jobId)).get(jobId);
+      final List<SapsImage> jobTasks;
+      final TaskPage taskPage;
+      if (cursor != null) {
+        taskPage = getJobTasksPage(jobId, imageTaskState, search, recoverOngoing, recoverCompleted,
+            sortField, sortOrder, cursor, sizeInt);
+        jobTasks = taskPage.getTasks();
+      } else {
+        taskPage = null;
+        jobTasks = application.getJobTasks(jobId, imageTaskState, search, pageInt, sizeInt, sortField, sortOrder,
+            recoverOngoing, recoverCompleted);
       }
-      responseJSON.put("tasks", listJSON);
-      responseJSON.put("tasksAmount", tasksAmount);
-      responseJSON.put("tasksOngoing", tasksOngoing);
-      responseJSON.put("tasksFailed", tasksFailed);
-      responseJSON.put("tasksArchived", tasksArchived);
-    } else {
-      JobState jobState = state != null ? JobState.getStateFromStr(state) : null;
-      Integer jobsCount = application.getJobsCount(jobState, search, recoverOngoing, recoverCompleted);
-      List<SapsUserJob> jobList = application.getAllJobs(jobState, search, pageInt, sizeInt, sortField, sortOrder, withoutTasks,
-          recoverOngoing, recoverCompleted);
+
+      Representation representation = new JsonStreamRepresentation(encoding) {
+        @Override
+        protected void writeJson(JsonGenerator generator) throws Exception {
+          generator.writeStartObject();
+          generator.writeArrayFieldStart("tasks");
+          for (SapsImage task : jobTasks) {
+            writeValue(generator, task.toJSON());
+          }
+          generator.writeEndArray();
+          writeSummary(generator, summary);
+          if (taskPage != null) {
+            generator.writeFieldName("nextCursor");
+            writeValue(generator, taskPage.getNext() == null ? null : taskPage.getNext().encode());
+          }
+          generator.writeEndObject();
+        }
+      };
+      representation.setTag(tag);
+      return representation;
+    }
+
+    JobState jobState = state != null ? JobState.getStateFromStr(state) : null;
+    final Integer jobsCount = application.getJobsCount(jobState, search, recoverOngoing, recoverCompleted);
+    final List<SapsUserJob> jobList = application.getAllJobs(jobState, search, pageInt, sizeInt, sortField, sortOrder,
+        withoutTasks, recoverOngoing, recoverCompleted);
+    Map<String, JobSummary> jobSummaries = null;
+    if (withSummary) {
+      List<String> jobIds = new ArrayList<String>();
       for (SapsUserJob userJob : jobList) {
-        listJSON.put(userJob.toJSON());
+        jobIds.add(userJob.getJobId());
       }
-      responseJSON.put("jobs", listJSON);
-      responseJSON.put("jobsCount", jobsCount);
+      jobSummaries = application.getJobSummaries(jobIds);
     }
+    final Map<String, JobSummary> summaries = jobSummaries;
+
+    Representation representation = new JsonStreamRepresentation(encoding) {
+      @Override
+      protected void writeJson(JsonGenerator generator) throws Exception {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("jobs");
+        for (SapsUserJob userJob : jobList) {
+          JSONObject jobJSON = userJob.toJSON();
+          if (summaries != null) {
+            putSummary(jobJSON, summaries.get(userJob.getJobId()));
+          }
+          writeValue(generator, jobJSON);
+        }
+        generator.writeEndArray();
+        generator.writeFieldName("jobsCount");
+        writeValue(generator, jobsCount);
+        generator.writeEndObject();
+      }
+    };
+    representation.setTag(tag);
+    return representation;
+  }
 
-    return new StringRepresentation(responseJSON.toString(), MediaType.APPLICATION_JSON);
+  /**
+   * Reads a page of the tasks of a job right after a cursor. An empty cursor
+   * reads the first page.
+   */
+  private TaskPage getJobTasksPage(String jobId, ImageTaskState state, String search, boolean recoverOngoing,
+      boolean recoverCompleted, String sortField, String sortOrder, String cursor, int size) {
+    TaskSortField taskSortField = sortField.isEmpty() ? TaskSortField.TASK_ID : TaskSortField.fromName(sortField);
+    if (taskSortField == null) {
+      throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST,
+          "Tasks cannot be paged with a cursor when sorted by " + sortField);
+    }
+    boolean descending = "desc".equalsIgnoreCase(sortOrder);
+
+    try {
+      TaskCursor after = cursor.isEmpty() ? null : TaskCursor.decode(cursor);
+      return application.getJobTasksPage(jobId, state, search, recoverOngoing, recoverCompleted, taskSortField,
+          descending, after, size > 0 ? size : DEFAULT_CURSOR_PAGE_SIZE);
+    } catch (IllegalArgumentException e) {
+      throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+    } catch (SapsException e) {
+      throw new ResourceException(Status.CLIENT_ERROR_CONFLICT, e.getMessage());
+    } catch (Exception e) {
+      LOGGER.error("Error while reading tasks of job [" + jobId + "]", e);
+      throw new ResourceException(Status.SERVER_ERROR_INTERNAL, "Failed to read job tasks");
+    }
+  }
+
+  /**
+   * Adds the task counts of a job the dashboard shows to its JSON.
+   */
+  private static void putSummary(JSONObject json, JobSummary summary) throws JSONException {
+    json.put("tasksAmount", summary.getTotalTasks());
+    json.put("tasksOngoing", summary.getOngoingTasks());
+    json.put("tasksFailed", summary.getFailedTasks());
+    json.put("tasksArchived", summary.getArchivedTasks());
+  }
+
+  /**
+   * Writes the task counts of a job the dashboard shows as fields of the
+   * object being written.
+   */
+  private static void writeSummary(JsonGenerator generator, JobSummary summary) throws IOException {
+    generator.writeNumberField("tasksAmount", summary.getTotalTasks());
+    generator.writeNumberField("tasksOngoing", summary.getOngoingTasks());
+    generator.writeNumberField("tasksFailed", summary.getFailedTasks());
+    generator.writeNumberField("tasksArchived", summary.getArchivedTasks());
   }
 
   @Post
@@ -143,19 +272,30 @@ public class ImageResource extends BaseResource {
     String lowerLeftLongitude;
     String upperRightLatitude;
     String upperRightLongitude;
-    try {
-      lowerLeftLatitude = extractCoordinate(form, LOWER_LEFT, 0);
-      LOGGER.info(lowerLeftLatitude);
-      lowerLeftLongitude = extractCoordinate(form, LOWER_LEFT, 1);
-      LOGGER.info(lowerLeftLongitude);
-      upperRightLatitude = extractCoordinate(form, UPPER_RIGHT, 0);
-      LOGGER.info(upperRightLatitude);
-      upperRightLongitude = extractCoordinate(form, UPPER_RIGHT, 1);
-      LOGGER.info(upperRightLongitude);
-    } catch (Exception e) {
-      LOGGER.error("Failed to parse coordinates of new processing.", e);
-      throw new ResourceException(
-          Status.CLIENT_ERROR_BAD_REQUEST, "All coordinates must be informed.");
+    Geometry areaOfInterest = extractAreaOfInterest(form);
+    double minTileCoverage = 0;
+    if (areaOfInterest != null) {
+      minTileCoverage = extractMinTileCoverage(form);
+      Envelope envelope = areaOfInterest.getEnvelopeInternal();
+      lowerLeftLatitude = String.valueOf(envelope.getMinY());
+      lowerLeftLongitude = String.valueOf(envelope.getMinX());
+      upperRightLatitude = String.valueOf(envelope.getMaxY());
+      upperRightLongitude = String.valueOf(envelope.getMaxX());
+    } else {
+      try {
+        lowerLeftLatitude = extractCoordinate(form, LOWER_LEFT, 0);
+        LOGGER.info(lowerLeftLatitude);
+        lowerLeftLongitude = extractCoordinate(form, LOWER_LEFT, 1);
+        LOGGER.info(lowerLeftLongitude);
+        upperRightLatitude = extractCoordinate(form, UPPER_RIGHT, 0);
+        LOGGER.info(upperRightLatitude);
+        upperRightLongitude = extractCoordinate(form, UPPER_RIGHT, 1);
+        LOGGER.info(upperRightLongitude);
+      } catch (Exception e) {
+        LOGGER.error("Failed to parse coordinates of new processing.", e);
+        throw new ResourceException(
+            Status.CLIENT_ERROR_BAD_REQUEST, "All coordinates must be informed.");
+      }
     }
 
     Date initDate;
@@ -211,6 +351,12 @@ public class ImageResource extends BaseResource {
         + ", "
         + upperRightLongitude
         + "\n"
+        + "\tArea of interest: "
+        + (areaOfInterest != null ? areaOfInterest.getGeometryType() : "bounding box")
+        + "\n"
+        + "\tMinimum tile coverage: "
+        + minTileCoverage
+        + "\n"
         + "\tInterval: "
         + initDate
         + " - "
@@ -235,25 +381,68 @@ public class ImageResource extends BaseResource {
         + label;
     LOGGER.info(builder);
 
+    boolean reuseTasks = Boolean.parseBoolean(form.getFirstValue(REUSE_TASKS));
+    JobRequest request;
+    try {
+      request = (areaOfInterest != null
+          ? JobRequest.forAreaOfInterest(areaOfInterest, minTileCoverage)
+          : JobRequest.forBoundingBox(
+              lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude))
+          .setDates(initDate, endDate)
+          .setPhaseTags(inputdownloadingPhaseTag, preprocessingPhaseTag, processingPhaseTag)
+          .setOwner(Integer.parseInt(priority), email, label)
+          .setReuseTasks(reuseTasks);
+    } catch (NumberFormatException e) {
+      LOGGER.error("Error while add new job.", e);
+      return new StringRepresentation(ADD_JOB_MESSAGE_FAILURE, MediaType.TEXT_PLAIN);
+    }
+
+    if (Boolean.parseBoolean(form.getFirstValue(ASYNC))) {
+      return submitJob(request);
+    }
+
+    List<String> taskIds = new ArrayList<String>();
+    JobProgress progress;
     try {
-      List<String> taskIds = application.createJobSubmission(
-          lowerLeftLatitude,
-          lowerLeftLongitude,
-          upperRightLatitude,
-          upperRightLongitude,
-          initDate,
-          endDate,
-          inputdownloadingPhaseTag,
-          preprocessingPhaseTag,
-          processingPhaseTag,
-          priority,
-          email,
-          label);
+      progress = application.createJobSubmission(request, taskIds);
+    } catch (Exception e) {
+      LOGGER.error("Error while add new job.", e);
+      return new StringRepresentation(ADD_JOB_MESSAGE_FAILURE, MediaType.TEXT_PLAIN);
+    }
+
+    if (!reuseTasks) {
       return new StringRepresentation(gson.toJson(taskIds), MediaType.APPLICATION_JSON);
+    }
+
+    // jobs linking matching tasks of other jobs also answer how many were reused
+    JsonObject response = new JsonObject();
+    response.addProperty("jobId", progress.getJobId());
+    response.add("taskIds", gson.toJsonTree(taskIds));
+    response.addProperty("createdTasks", progress.getInsertedTasks());
+    response.addProperty("reusedTasks", progress.getReusedTasks());
+    return new StringRepresentation(gson.toJson(response), MediaType.APPLICATION_JSON);
+  }
 
+  /**
+   * Creates the job and answers 202 Accepted with its id, leaving task creation
+   * to the dispatcher background pipeline.
+   */
+  private StringRepresentation submitJob(JobRequest request) {
+    String jobId;
+    try {
+      jobId = application.submitJob(request);
+    } catch (RejectedExecutionException e) {
+      LOGGER.warn("Job submission rejected.", e);
+      throw new ResourceException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, e.getMessage());
     } catch (Exception e) {
       LOGGER.error("Error while add new job.", e);
       return new StringRepresentation(ADD_JOB_MESSAGE_FAILURE, MediaType.TEXT_PLAIN);
     }
+
+    JsonObject response = new JsonObject();
+    response.addProperty("jobId", jobId);
+    response.addProperty("progress", "/processings/" + jobId + "/progress");
+    setStatus(Status.SUCCESS_ACCEPTED);
+    return new StringRepresentation(gson.toJson(response), MediaType.APPLICATION_JSON);
   }
 }
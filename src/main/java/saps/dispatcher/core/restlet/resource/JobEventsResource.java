@@ -0,0 +1,119 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.log4j.Logger;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.Header;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+import org.restlet.util.Series;
+import saps.common.exceptions.SapsException;
+import saps.dispatcher.core.JobChangeFeed;
+import saps.dispatcher.core.JobChangeFeed.JobEvent;
+import saps.dispatcher.core.catalog.JobSummary;
+
+/**
+ * Sends the changes of a job, or of every job of the user, as server-sent events while the client
+ * stays connected: a "counters" event with the new task counts of a job that changed and a "task"
+ * event with the new state of each of its tasks that changed. Clients follow them instead of
+ * polling the job listing.
+ *
+ * <p>Only the owner of a job can follow it. A client following a job first gets its current counts.
+ * Clients following the jobs of the user should read the listing once they are connected, and again
+ * when they reconnect.
+ */
+public class JobEventsResource extends BaseResource {
+
+  private static final Logger LOGGER = Logger.getLogger(JobEventsResource.class);
+
+  private static final String REQUEST_ATTR_JOB_ID = "jobId";
+
+  private static final MediaType TEXT_EVENT_STREAM =
+      MediaType.register("text/event-stream", "Server-sent events");
+
+  private static final long HEARTBEAT_MILLIS = 15000;
+  private static final long RECONNECT_MILLIS = 5000;
+
+  @SuppressWarnings("unchecked")
+  @Get
+  public Representation getJobEvents() {
+    Series<Header> series = (Series<Header>) getRequestAttributes().get("org.restlet.http.headers");
+    String userEmail = series.getFirstValue(UserResource.REQUEST_ATTR_USER_EMAIL, true);
+    String userPass = series.getFirstValue(UserResource.REQUEST_ATTR_USERPASS, true);
+    String userEGI = series.getFirstValue(UserResource.REQUEST_ATTR_USER_EGI, true);
+
+    if (!authenticateUser(userEmail, userPass, userEGI))
+      throw new ResourceException(HttpStatus.SC_UNAUTHORIZED);
+
+    String jobId = getAttribute(REQUEST_ATTR_JOB_ID);
+    JobChangeFeed.Subscription subscribed = null;
+    JobEvent current = null;
+    try {
+      if (jobId != null) checkJobOwner(jobId, userEmail);
+      // subscribed before the counts are read, so no change is missed in between
+      subscribed = application.subscribeToJobChanges(jobId, userEmail);
+      if (jobId != null) {
+        JobSummary summary = application.getJobSummaries(Collections.singleton(jobId)).get(jobId);
+        current = JobChangeFeed.countersEvent(summary, false);
+      }
+    } catch (ResourceException e) {
+      throw e;
+    } catch (RejectedExecutionException e) {
+      throw new ResourceException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, e.getMessage());
+    } catch (SapsException e) {
+      throw new ResourceException(Status.CLIENT_ERROR_CONFLICT, e.getMessage());
+    } catch (Exception e) {
+      LOGGER.error("Error while following changes of job [" + jobId + "]", e);
+      if (subscribed != null) subscribed.close();
+      throw new ResourceException(Status.SERVER_ERROR_INTERNAL, "Failed to follow job changes");
+    }
+
+    getResponse().getCacheDirectives().add(CacheDirective.noCache());
+    final JobChangeFeed.Subscription subscription = subscribed;
+    final JobEvent first = current;
+    return new OutputRepresentation(TEXT_EVENT_STREAM) {
+      @Override
+      public void write(OutputStream outputStream) throws IOException {
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        try {
+          writer.write("retry: " + RECONNECT_MILLIS + "\n\n");
+          if (first != null) write(writer, first);
+          writer.flush();
+          while (true) {
+            JobEvent event = subscription.next(HEARTBEAT_MILLIS);
+            if (event != null) {
+              write(writer, event);
+            } else if (subscription.isDropped()) {
+              break;
+            } else {
+              // also tells that the client is gone, when it fails
+              writer.write(": keep-alive\n\n");
+            }
+            writer.flush();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          subscription.close();
+        }
+      }
+
+      private void write(Writer writer, JobEvent event) throws IOException {
+        writer.write("event: " + event.getName() + "\n");
+        writer.write("data: " + event.getData() + "\n\n");
+      }
+    };
+  }
+}
@@ -0,0 +1,113 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet.resource;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.log4j.Logger;
+import org.locationtech.jts.geom.Geometry;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ResourceException;
+import saps.common.exceptions.SapsException;
+import saps.dispatcher.core.JobProgress;
+
+/**
+ * Extends an existing job to a new area and date window, creating only the tasks of the scenes the
+ * job does not cover yet. The area and dates use the same form fields as a new processing. Only the
+ * owner of the job can extend it. The job keeps the area and dates it was submitted with; the
+ * extension only adds tasks.
+ */
+public class JobExtensionResource extends BaseResource {
+
+  private static final Logger LOGGER = Logger.getLogger(JobExtensionResource.class);
+
+  private static final String REQUEST_ATTR_JOB_ID = "jobId";
+  private static final String LOWER_LEFT = "lowerLeft";
+  private static final String UPPER_RIGHT = "upperRight";
+  private static final String PROCESSING_INIT_DATE = "initialDate";
+  private static final String PROCESSING_FINAL_DATE = "finalDate";
+
+  private final Gson gson = new Gson();
+
+  @Post
+  public Representation extendJob(Representation entity) {
+    Form form = new Form(entity);
+
+    String userEmail = form.getFirstValue(UserResource.REQUEST_ATTR_USER_EMAIL, true);
+    String userPass = form.getFirstValue(UserResource.REQUEST_ATTR_USERPASS, true);
+    String userEGI = form.getFirstValue(UserResource.REQUEST_ATTR_USER_EGI, true);
+
+    if (!authenticateUser(userEmail, userPass, userEGI) || userEmail.equals("anonymous"))
+      throw new ResourceException(HttpStatus.SC_UNAUTHORIZED);
+
+    String jobId = getAttribute(REQUEST_ATTR_JOB_ID);
+
+    Date initDate;
+    Date endDate;
+    try {
+      initDate = extractDate(form, PROCESSING_INIT_DATE);
+      endDate = extractDate(form, PROCESSING_FINAL_DATE);
+    } catch (Exception e) {
+      throw new ResourceException(
+          Status.CLIENT_ERROR_BAD_REQUEST, "Initial and final dates must be informed.");
+    }
+
+    List<String> taskIds = new ArrayList<String>();
+    JobProgress progress;
+    try {
+      checkJobOwner(jobId, userEmail);
+      Geometry areaOfInterest = extractAreaOfInterest(form);
+      if (areaOfInterest != null) {
+        progress =
+            application.extendJob(
+                jobId, areaOfInterest, extractMinTileCoverage(form), initDate, endDate, taskIds);
+      } else {
+        String lowerLeftLatitude;
+        String lowerLeftLongitude;
+        String upperRightLatitude;
+        String upperRightLongitude;
+        try {
+          lowerLeftLatitude = extractCoordinate(form, LOWER_LEFT, 0);
+          lowerLeftLongitude = extractCoordinate(form, LOWER_LEFT, 1);
+          upperRightLatitude = extractCoordinate(form, UPPER_RIGHT, 0);
+          upperRightLongitude = extractCoordinate(form, UPPER_RIGHT, 1);
+        } catch (Exception e) {
+          throw new ResourceException(
+              Status.CLIENT_ERROR_BAD_REQUEST, "All coordinates must be informed.");
+        }
+        progress =
+            application.extendJob(
+                jobId,
+                lowerLeftLatitude,
+                lowerLeftLongitude,
+                upperRightLatitude,
+                upperRightLongitude,
+                initDate,
+                endDate,
+                taskIds);
+      }
+    } catch (ResourceException e) {
+      throw e;
+    } catch (SapsException e) {
+      LOGGER.warn("Job [" + jobId + "] cannot be extended: " + e.getMessage());
+      throw new ResourceException(Status.CLIENT_ERROR_CONFLICT, e.getMessage());
+    } catch (Exception e) {
+      LOGGER.error("Error while extending job [" + jobId + "]", e);
+      throw new ResourceException(Status.SERVER_ERROR_INTERNAL, "Failed to extend job");
+    }
+
+    JsonObject response = new JsonObject();
+    response.addProperty("jobId", jobId);
+    response.add("taskIds", gson.toJsonTree(taskIds));
+    response.addProperty("createdTasks", progress.getInsertedTasks());
+    return new StringRepresentation(gson.toJson(response), MediaType.APPLICATION_JSON);
+  }
+}
@@ -0,0 +1,40 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet.resource;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.json.JSONException;
+import org.restlet.data.Header;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+import org.restlet.util.Series;
+import saps.dispatcher.core.JobProgress;
+
+/** Reports how many tasks of a submitted job were generated and inserted so far. */
+public class JobProgressResource extends BaseResource {
+
+  private static final String REQUEST_ATTR_JOB_ID = "jobId";
+
+  @SuppressWarnings("unchecked")
+  @Get
+  public Representation getJobProgress() throws JSONException {
+    Series<Header> series = (Series<Header>) getRequestAttributes().get("org.restlet.http.headers");
+    String userEmail = series.getFirstValue(UserResource.REQUEST_ATTR_USER_EMAIL, true);
+    String userPass = series.getFirstValue(UserResource.REQUEST_ATTR_USERPASS, true);
+    String userEGI = series.getFirstValue(UserResource.REQUEST_ATTR_USER_EGI, true);
+
+    if (!authenticateUser(userEmail, userPass, userEGI))
+      throw new ResourceException(HttpStatus.SC_UNAUTHORIZED);
+
+    String jobId = getAttribute(REQUEST_ATTR_JOB_ID);
+    JobProgress progress = application.getJobProgress(jobId);
+    if (progress == null)
+      throw new ResourceException(
+          Status.CLIENT_ERROR_NOT_FOUND, "No task creation in progress for job [" + jobId + "]");
+
+    return new StringRepresentation(progress.toJSON().toString(), MediaType.APPLICATION_JSON);
+  }
+}
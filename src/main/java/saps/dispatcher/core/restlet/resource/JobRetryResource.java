@@ -0,0 +1,100 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet.resource;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.log4j.Logger;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ResourceException;
+import saps.common.exceptions.SapsException;
+import saps.dispatcher.core.catalog.TaskFilter;
+
+/**
+ * Puts the failed tasks of a job back in the created state so they are processed again. The tasks
+ * can be narrowed down by comma separated regions and datasets and by a date window; archived tasks
+ * are never retried. Only the owner of the job can retry its tasks.
+ */
+public class JobRetryResource extends BaseResource {
+
+  private static final Logger LOGGER = Logger.getLogger(JobRetryResource.class);
+
+  private static final String REQUEST_ATTR_JOB_ID = "jobId";
+  private static final String REGIONS = "regions";
+  private static final String DATASETS = "datasets";
+  private static final String PROCESSING_INIT_DATE = "initialDate";
+  private static final String PROCESSING_FINAL_DATE = "finalDate";
+  private static final String REFRESH_DIGESTS = "refreshDigests";
+
+  private final Gson gson = new Gson();
+
+  @Post
+  public Representation retryFailedTasks(Representation entity) {
+    Form form = new Form(entity);
+
+    String userEmail = form.getFirstValue(UserResource.REQUEST_ATTR_USER_EMAIL, true);
+    String userPass = form.getFirstValue(UserResource.REQUEST_ATTR_USERPASS, true);
+    String userEGI = form.getFirstValue(UserResource.REQUEST_ATTR_USER_EGI, true);
+
+    if (!authenticateUser(userEmail, userPass, userEGI) || userEmail.equals("anonymous"))
+      throw new ResourceException(HttpStatus.SC_UNAUTHORIZED);
+
+    String jobId = getAttribute(REQUEST_ATTR_JOB_ID);
+    TaskFilter filter =
+        new TaskFilter(
+            extractList(form, REGIONS),
+            extractList(form, DATASETS),
+            extractOptionalDate(form, PROCESSING_INIT_DATE),
+            extractOptionalDate(form, PROCESSING_FINAL_DATE));
+    boolean refreshDigests = Boolean.parseBoolean(form.getFirstValue(REFRESH_DIGESTS));
+
+    int retried;
+    try {
+      checkJobOwner(jobId, userEmail);
+      retried = application.retryFailedTasks(jobId, filter, refreshDigests);
+    } catch (ResourceException e) {
+      throw e;
+    } catch (SapsException e) {
+      LOGGER.warn("Failed tasks of job [" + jobId + "] cannot be retried: " + e.getMessage());
+      throw new ResourceException(Status.CLIENT_ERROR_CONFLICT, e.getMessage());
+    } catch (Exception e) {
+      LOGGER.error("Error while retrying failed tasks of job [" + jobId + "]", e);
+      throw new ResourceException(Status.SERVER_ERROR_INTERNAL, "Failed to retry tasks");
+    }
+
+    JsonObject response = new JsonObject();
+    response.addProperty("jobId", jobId);
+    response.addProperty("retriedTasks", retried);
+    return new StringRepresentation(gson.toJson(response), MediaType.APPLICATION_JSON);
+  }
+
+  private static Set<String> extractList(Form form, String name) {
+    Set<String> values = new LinkedHashSet<String>();
+    String value = form.getFirstValue(name);
+    if (value != null) {
+      for (String part : value.split(",")) {
+        if (!part.trim().isEmpty()) values.add(part.trim());
+      }
+    }
+    return values;
+  }
+
+  private Date extractOptionalDate(Form form, String name) {
+    String value = form.getFirstValue(name);
+    if (value == null || value.isEmpty()) return null;
+    try {
+      return extractDate(form, name);
+    } catch (Exception e) {
+      throw new ResourceException(
+          Status.CLIENT_ERROR_BAD_REQUEST, "Dates must be in the yyyy-MM-dd format.");
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet.resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.restlet.representation.OutputRepresentation;
+
+/**
+ * JSON response written to the connection as it is generated, instead of being built as a tree and
+ * then as one string. Only the value being written is held in memory, and the first bytes are sent
+ * before the last value is known. The same documents are written in any {@link ResponseEncoding},
+ * so resources write them once for every encoding their clients can ask for.
+ *
+ * <p>Writing starts after the resource method returns, so errors found while writing cannot change
+ * the response status anymore: they are logged and the response is cut short. Anything that may be
+ * refused should be checked before the representation is returned.
+ */
+public abstract class JsonStreamRepresentation extends OutputRepresentation {
+
+  private static final Logger LOGGER = Logger.getLogger(JsonStreamRepresentation.class);
+
+  private final ResponseEncoding encoding;
+
+  public JsonStreamRepresentation() {
+    this(ResponseEncoding.JSON);
+  }
+
+  public JsonStreamRepresentation(ResponseEncoding encoding) {
+    super(encoding.getMediaType());
+    this.encoding = encoding;
+  }
+
+  /** Writes the whole response with the generator. */
+  protected abstract void writeJson(JsonGenerator generator) throws Exception;
+
+  @Override
+  public void write(OutputStream outputStream) throws IOException {
+    try (JsonGenerator generator = encoding.getFactory().createGenerator(outputStream)) {
+      writeJson(generator);
+    } catch (IOException e) {
+      LOGGER.warn("Response stream was closed while writing", e);
+      throw e;
+    } catch (Exception e) {
+      LOGGER.error("Error while writing response; it was cut short", e);
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Writes an org.json value, such as the JSON given by the toJSON method of the catalog model,
+   * with the generator.
+   */
+  public static void writeValue(JsonGenerator generator, Object value)
+      throws IOException, JSONException {
+    if (value instanceof JsonElement) {
+      writeGsonValue(generator, (JsonElement) value);
+    } else if (value == null || value == JSONObject.NULL) {
+      generator.writeNull();
+    } else if (value instanceof JSONObject) {
+      JSONObject object = (JSONObject) value;
+      generator.writeStartObject();
+      Iterator<?> keys = object.keys();
+      while (keys.hasNext()) {
+        String key = keys.next().toString();
+        generator.writeFieldName(key);
+        writeValue(generator, object.get(key));
+      }
+      generator.writeEndObject();
+    } else if (value instanceof JSONArray) {
+      JSONArray array = (JSONArray) value;
+      generator.writeStartArray();
+      for (int i = 0; i < array.length(); i++) {
+        writeValue(generator, array.get(i));
+      }
+      generator.writeEndArray();
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else if (value instanceof Number) {
+      writeNumber(generator, (Number) value);
+    } else {
+      generator.writeString(value.toString());
+    }
+  }
+
+  /**
+   * Writes a number without losing precision: integral types as integers, big numbers as they are,
+   * and only floats and doubles as doubles. Other numbers, such as the ones Gson parses lazily, are
+   * read from their text.
+   */
+  private static void writeNumber(JsonGenerator generator, Number number) throws IOException {
+    if (number instanceof Integer
+        || number instanceof Long
+        || number instanceof Short
+        || number instanceof Byte
+        || number instanceof AtomicInteger
+        || number instanceof AtomicLong) {
+      generator.writeNumber(number.longValue());
+    } else if (number instanceof BigInteger) {
+      generator.writeNumber((BigInteger) number);
+    } else if (number instanceof BigDecimal) {
+      generator.writeNumber((BigDecimal) number);
+    } else if (number instanceof Float || number instanceof Double) {
+      generator.writeNumber(number.doubleValue());
+    } else {
+      BigDecimal decimal = new BigDecimal(number.toString());
+      if (decimal.scale() <= 0 && decimal.toBigInteger().bitLength() < 64) {
+        generator.writeNumber(decimal.longValue());
+      } else {
+        generator.writeNumber(decimal);
+      }
+    }
+  }
+
+  private static void writeGsonValue(JsonGenerator generator, JsonElement value)
+      throws IOException {
+    if (value.isJsonObject()) {
+      generator.writeStartObject();
+      for (Map.Entry<String, JsonElement> field : value.getAsJsonObject().entrySet()) {
+        generator.writeFieldName(field.getKey());
+        writeGsonValue(generator, field.getValue());
+      }
+      generator.writeEndObject();
+    } else if (value.isJsonArray()) {
+      generator.writeStartArray();
+      for (JsonElement element : value.getAsJsonArray()) {
+        writeGsonValue(generator, element);
+      }
+      generator.writeEndArray();
+    } else if (value.isJsonNull()) {
+      generator.writeNull();
+    } else {
+      JsonPrimitive primitive = value.getAsJsonPrimitive();
+      if (primitive.isBoolean()) {
+        generator.writeBoolean(primitive.getAsBoolean());
+      } else if (primitive.isNumber()) {
+        writeNumber(generator, primitive.getAsNumber());
+      } else {
+        generator.writeString(primitive.getAsString());
+      }
+    }
+  }
+}
@@ -1,7 +1,9 @@
 /* (C)2020 */
 package saps.dispatcher.core.restlet.resource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import java.io.IOException;
 import java.util.List;
 import java.util.Properties;
@@ -49,7 +51,13 @@ public class LinkResource extends BaseResource {
 
       List<AccessLink> links = permanentStorage.generateAccessLinks(sapsTask);
 
-      return new StringRepresentation(gson.toJson(links), MediaType.APPLICATION_JSON);
+      final JsonElement linksJson = gson.toJsonTree(links);
+      return new JsonStreamRepresentation(negotiateEncoding()) {
+        @Override
+        protected void writeJson(JsonGenerator generator) throws Exception {
+          writeValue(generator, linksJson);
+        }
+      };
     } catch (TaskNotFoundException e) {
       LOGGER.error("Error while getting task by id", e);
     } catch (Exception e) {
@@ -1,6 +1,7 @@
 /* (C)2020 */
 package saps.dispatcher.core.restlet.resource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import java.sql.SQLException;
 import java.util.*;
 import org.apache.commons.httpclient.HttpStatus;
@@ -20,6 +21,7 @@ import org.restlet.resource.ResourceException;
 import org.restlet.util.Series;
 import saps.common.core.model.SapsImage;
 import saps.common.core.model.enums.ImageTaskState;
+import saps.dispatcher.core.catalog.TaskReader;
 
 public class RegionResource extends BaseResource {
 
@@ -142,32 +144,57 @@ public class RegionResource extends BaseResource {
         "\tProcessing tag: " + processingPhaseTag + "\n";
     LOGGER.info(builder);
 
-    List<SapsImage> tasks = application.searchProcessedTasks(
-        lowerLeftLatitude,
-        lowerLeftLongitude,
-        upperRightLatitude,
-        upperRightLongitude,
-        initDate,
-        endDate,
-        inputdownloadingPhaseTag,
-        preprocessingPhaseTag,
-        processingPhaseTag);
-
-    JSONArray arr = new JSONArray();
-    for (SapsImage task : tasks) {
-      try {
-        arr.put(task.toJSON());
-      } catch (JSONException e) {
-        LOGGER.error("Failed to build JSON object of Image Task", e);
-      }
-    }
-    JSONObject resObj = new JSONObject();
+    ResponseEncoding encoding = negotiateEncoding();
+    // the catalog is queried before streaming, so its errors still change the response status
+    final TaskReader tasks;
     try {
-      resObj.put("result", arr);
-    } catch (JSONException e) {
-      LOGGER.error("Failed to build response JSON object", e);
+      tasks = application.openProcessedTasks(
+          lowerLeftLatitude,
+          lowerLeftLongitude,
+          upperRightLatitude,
+          upperRightLongitude,
+          initDate,
+          endDate,
+          inputdownloadingPhaseTag,
+          preprocessingPhaseTag,
+          processingPhaseTag);
+    } catch (SQLException e) {
+      LOGGER.error("Error while reading processed tasks", e);
+      throw new ResourceException(Status.SERVER_ERROR_INTERNAL, "Failed to read processed tasks");
     }
+    return new JsonStreamRepresentation(encoding) {
+      @Override
+      protected void writeJson(final JsonGenerator generator) throws Exception {
+        try {
+          generator.writeStartObject();
+          generator.writeArrayFieldStart("result");
+          for (SapsImage task = tasks.next(); task != null; task = tasks.next()) {
+            JSONObject taskJson;
+            try {
+              taskJson = task.toJSON();
+            } catch (JSONException e) {
+              LOGGER.error("Failed to build JSON object of Image Task", e);
+              continue;
+            }
+            writeValue(generator, taskJson);
+          }
+          generator.writeEndArray();
+          generator.writeEndObject();
+        } finally {
+          tasks.close();
+        }
+      }
 
-    return new StringRepresentation(resObj.toString(), MediaType.APPLICATION_JSON);
+      @Override
+      public void release() {
+        // the response may be dropped before it is written
+        try {
+          tasks.close();
+        } catch (SQLException e) {
+          LOGGER.warn("Error while closing the processed tasks reader", e);
+        }
+        super.release();
+      }
+    };
 }
 }
@@ -0,0 +1,65 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet.resource;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.MediaType;
+
+/**
+ * Encodings a streamed response can be written in. They all carry the same documents as the JSON
+ * one: the binary ones only spend fewer bytes and less parsing on them, e.g. numbers are not
+ * written as text and repeated field names are written once. Dates reach the documents as strings,
+ * from the toJSON methods of the catalog model, so every encoding writes them as text.
+ */
+public enum ResponseEncoding {
+  JSON(MediaType.APPLICATION_JSON, new JsonFactory()),
+  CBOR(
+      MediaType.register("application/cbor", "Concise Binary Object Representation"),
+      new CBORFactory()),
+  SMILE(MediaType.register("application/x-jackson-smile", "Smile binary JSON"), new SmileFactory());
+
+  private static final List<MediaType> MEDIA_TYPES = new ArrayList<MediaType>();
+
+  static {
+    for (ResponseEncoding encoding : values()) {
+      MEDIA_TYPES.add(encoding.mediaType);
+    }
+  }
+
+  private final MediaType mediaType;
+  private final JsonFactory factory;
+
+  ResponseEncoding(MediaType mediaType, JsonFactory factory) {
+    this.mediaType = mediaType;
+    this.factory = factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  public MediaType getMediaType() {
+    return mediaType;
+  }
+
+  /** Factory of the generators and parsers of the encoding. Jackson factories are thread safe. */
+  public JsonFactory getFactory() {
+    return factory;
+  }
+
+  /**
+   * Picks the encoding the client prefers by its Accept header. Clients that do not ask for one of
+   * the binary encodings, or send no Accept header at all, get JSON.
+   */
+  public static ResponseEncoding negotiate(ClientInfo clientInfo) {
+    MediaType preferred =
+        clientInfo == null
+            ? null
+            : clientInfo.getPreferredMetadata(MEDIA_TYPES, clientInfo.getAcceptedMediaTypes());
+    for (ResponseEncoding encoding : values()) {
+      if (encoding.mediaType.equals(preferred, true)) return encoding;
+    }
+    return JSON;
+  }
+}
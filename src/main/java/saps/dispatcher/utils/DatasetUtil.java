@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import saps.common.utils.SapsPropertiesConstants;
 
 public class DatasetUtil {
@@ -58,6 +59,15 @@ public class DatasetUtil {
     return mostRecentDataSet;
   }
 
+  /**
+   * Returns every Satellite known by Saps.
+   *
+   * @return - a set of Satellites names in the Saps definition.
+   */
+  public static Set<String> getDataSets() {
+    return getDataSetStartOperationYear().keySet();
+  }
+
   private static Map<String, Integer> getDataSetStartOperationYear() {
     Map<String, Integer> satYearBegin = new HashMap<String, Integer>();
 
@@ -0,0 +1,187 @@
+/* (C)2020 */
+package saps.dispatcher.utils;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * In-process cache of Docker image digests keyed by (repository, tag).
+ *
+ * <p>Entries younger than the TTL are served directly. Entries older than the TTL but younger
+ * than the maximum staleness are still served, while a background thread refreshes them
+ * (stale-while-revalidate). Concurrent misses for the same key share a single load.
+ */
+public class DigestCache {
+
+  private static final Logger LOGGER = Logger.getLogger(DigestCache.class);
+
+  /** Resolves the digest of an image when it is not cached. */
+  public interface DigestLoader {
+    String load(String dockerRepository, String dockerTag) throws Exception;
+  }
+
+  private final DigestLoader loader;
+  private final long ttlMillis;
+  private final long maxStaleMillis;
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+  private final ConcurrentMap<String, CompletableFuture<String>> loading =
+      new ConcurrentHashMap<String, CompletableFuture<String>>();
+  private final Set<String> refreshing = ConcurrentHashMap.<String>newKeySet();
+  private final ExecutorService refresher;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong loadFailures = new AtomicLong();
+
+  /**
+   * @param loader digest source used on misses and refreshes
+   * @param ttlMillis age after which an entry is refreshed in background
+   * @param maxStaleMillis age after which an entry is no longer served and is loaded again
+   */
+  public DigestCache(DigestLoader loader, long ttlMillis, long maxStaleMillis) {
+    this.loader = loader;
+    this.ttlMillis = ttlMillis;
+    this.maxStaleMillis = Math.max(ttlMillis, maxStaleMillis);
+    this.refresher =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "digest-cache-refresher");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+  }
+
+  /**
+   * Gets the digest of the image, loading it only if it is not cached or too stale.
+   *
+   * @param dockerRepository Docker image repository
+   * @param dockerTag Docker image tag
+   * @return immutable identifier that match with repository and tag passed
+   */
+  public String get(final String dockerRepository, final String dockerTag) throws Exception {
+    final String key = dockerRepository + ":" + dockerTag;
+    Entry entry = entries.get(key);
+    long now = System.currentTimeMillis();
+
+    if (entry != null && now - entry.loadedAt <= ttlMillis) {
+      hits.incrementAndGet();
+      return entry.digest;
+    }
+
+    if (entry != null && now - entry.loadedAt <= maxStaleMillis) {
+      staleHits.incrementAndGet();
+      refreshInBackground(key, dockerRepository, dockerTag);
+      return entry.digest;
+    }
+
+    misses.incrementAndGet();
+    try {
+      return load(key, dockerRepository, dockerTag).get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+    }
+  }
+
+  private void refreshInBackground(
+      final String key, final String dockerRepository, final String dockerTag) {
+    // stale hits keep coming while the refresh waits in the queue, so one is queued per key
+    if (!refreshing.add(key)) return;
+
+    refresher.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              load(key, dockerRepository, dockerTag).get();
+            } catch (Exception e) {
+              LOGGER.warn("Error while refreshing digest of [" + key + "]; serving stale value", e);
+            } finally {
+              refreshing.remove(key);
+            }
+          }
+        });
+  }
+
+  /** Loads the key, or joins the load already in flight for it. */
+  private CompletableFuture<String> load(String key, String dockerRepository, String dockerTag) {
+    CompletableFuture<String> future = new CompletableFuture<String>();
+    CompletableFuture<String> inFlight = loading.putIfAbsent(key, future);
+    if (inFlight != null) return inFlight;
+
+    try {
+      String digest = loader.load(dockerRepository, dockerTag);
+      entries.put(key, new Entry(digest, System.currentTimeMillis()));
+      future.complete(digest);
+    } catch (Exception e) {
+      loadFailures.incrementAndGet();
+      future.completeExceptionally(e);
+    } finally {
+      loading.remove(key, future);
+    }
+    return future;
+  }
+
+  /** Removes every cached digest. */
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getStaleHits() {
+    return staleHits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getLoadFailures() {
+    return loadFailures.get();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    return "DigestCache [size="
+        + size()
+        + ", hits="
+        + getHits()
+        + ", staleHits="
+        + getStaleHits()
+        + ", misses="
+        + getMisses()
+        + ", loadFailures="
+        + getLoadFailures()
+        + "]";
+  }
+
+  private static class Entry {
+
+    private final String digest;
+    private final long loadedAt;
+
+    Entry(String digest, long loadedAt) {
+      this.digest = digest;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
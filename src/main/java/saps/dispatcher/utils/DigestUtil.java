@@ -3,6 +3,15 @@ package saps.dispatcher.utils;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import org.apache.log4j.Logger;
 import saps.common.utils.ExecutionScriptTag;
 
@@ -10,6 +19,135 @@ public class DigestUtil {
 
   private static final Logger LOGGER = Logger.getLogger(DigestUtil.class);
 
+  public static final String DIGEST_SOURCE_KEY = "docker_digest_source";
+  public static final String DOCKER_REGISTRY_URL_KEY = "docker_registry_url";
+  public static final String DOCKER_REGISTRY_MAX_CONNECTIONS_KEY =
+      "docker_registry_max_connections";
+  public static final String DOCKER_REGISTRY_TIMEOUT_MILLIS_KEY = "docker_registry_timeout_ms";
+  public static final String DIGEST_CACHE_TTL_MILLIS_KEY = "docker_digest_cache_ttl_ms";
+  public static final String DIGEST_CACHE_MAX_STALE_MILLIS_KEY = "docker_digest_cache_max_stale_ms";
+
+  /** Digest is resolved by the scripts/get_digest subprocess. */
+  public static final String SOURCE_SCRIPT = "script";
+  /** Digest is resolved by the Java registry client. */
+  public static final String SOURCE_REGISTRY = "registry";
+  /** Digest is read from the docker_digest field pinned on the execution script tags. */
+  public static final String SOURCE_OFFLINE = "offline";
+
+  private static final long DEFAULT_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+  private static final long DEFAULT_CACHE_MAX_STALE_MILLIS = 24 * 60 * 60 * 1000;
+  private static final int DEFAULT_REGISTRY_MAX_CONNECTIONS = 8;
+  private static final int DEFAULT_REGISTRY_TIMEOUT_MILLIS = 10000;
+
+  private static volatile String digestSource = SOURCE_SCRIPT;
+  private static volatile DigestCache digestCache;
+  private static volatile DockerRegistryClient registryClient;
+  private static volatile ExecutionScriptTagRegistry executionScriptTags;
+
+  private static final ExecutorService lookupExecutor =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "digest-lookup");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  /**
+   * Sets up the digest source and cache. A cache TTL of zero disables the cache, so every lookup
+   * goes to the source.
+   *
+   * @param properties dispatcher configuration
+   * @param executionScriptTags execution script tags, holding the pinned digests of offline mode
+   */
+  public static void configure(
+      Properties properties, ExecutionScriptTagRegistry executionScriptTags) {
+    String source = properties.getProperty(DIGEST_SOURCE_KEY, SOURCE_REGISTRY).trim();
+
+    if (registryClient != null) {
+      registryClient.close();
+      registryClient = null;
+    }
+
+    if (SOURCE_OFFLINE.equals(source)) {
+      if (executionScriptTags == null)
+        throw new IllegalArgumentException(
+            "Offline digest source requires the execution script tags file");
+      LOGGER.info("Using Docker digests pinned in the execution script tags file");
+    } else if (SOURCE_REGISTRY.equals(source)) {
+      String baseUrl =
+          properties.getProperty(DOCKER_REGISTRY_URL_KEY, DockerRegistryClient.DEFAULT_BASE_URL);
+      registryClient =
+          new DockerRegistryClient(
+              baseUrl,
+              Integer.parseInt(
+                  properties.getProperty(
+                      DOCKER_REGISTRY_MAX_CONNECTIONS_KEY,
+                      String.valueOf(DEFAULT_REGISTRY_MAX_CONNECTIONS))),
+              Integer.parseInt(
+                  properties.getProperty(
+                      DOCKER_REGISTRY_TIMEOUT_MILLIS_KEY,
+                      String.valueOf(DEFAULT_REGISTRY_TIMEOUT_MILLIS))));
+      LOGGER.info("Resolving Docker digests from registry [" + baseUrl + "]");
+    } else if (SOURCE_SCRIPT.equals(source)) {
+      LOGGER.info("Resolving Docker digests with scripts/get_digest");
+    } else {
+      throw new IllegalArgumentException(
+          "Invalid "
+              + DIGEST_SOURCE_KEY
+              + " ["
+              + source
+              + "]; expected "
+              + SOURCE_SCRIPT
+              + ", "
+              + SOURCE_REGISTRY
+              + " or "
+              + SOURCE_OFFLINE);
+    }
+    DigestUtil.executionScriptTags = executionScriptTags;
+    digestSource = source;
+
+    long ttlMillis =
+        Long.parseLong(
+            properties.getProperty(
+                DIGEST_CACHE_TTL_MILLIS_KEY, String.valueOf(DEFAULT_CACHE_TTL_MILLIS)));
+    long maxStaleMillis =
+        Long.parseLong(
+            properties.getProperty(
+                DIGEST_CACHE_MAX_STALE_MILLIS_KEY,
+                String.valueOf(DEFAULT_CACHE_MAX_STALE_MILLIS)));
+
+    if (ttlMillis <= 0 || SOURCE_OFFLINE.equals(source)) {
+      LOGGER.info("Docker digest cache disabled");
+      digestCache = null;
+      return;
+    }
+
+    LOGGER.info(
+        "Docker digest cache enabled with TTL of "
+            + ttlMillis
+            + " ms and maximum staleness of "
+            + maxStaleMillis
+            + " ms");
+    digestCache =
+        new DigestCache(
+            new DigestCache.DigestLoader() {
+              @Override
+              public String load(String dockerRepository, String dockerTag) throws Exception {
+                return fetchDigest(dockerRepository, dockerTag);
+              }
+            },
+            ttlMillis,
+            maxStaleMillis);
+  }
+
+  /** Gets the digest cache, or null if it is disabled. */
+  public static DigestCache getDigestCache() {
+    return digestCache;
+  }
+
   /**
    * This function gets immutable identifier based in repository and tag
    *
@@ -17,25 +155,60 @@ public class DigestUtil {
    * @return immutable identifier that match with repository and tag passed
    */
   public static String getDigest(ExecutionScriptTag imageDockerInfo) throws Exception {
-
     String dockerRepository = imageDockerInfo.getDockerRepository();
     String dockerTag = imageDockerInfo.getDockerTag();
 
-    String result = null;
+    DigestCache cache = digestCache;
+    if (cache == null) return fetchDigest(dockerRepository, dockerTag);
 
-    try {
-      Process builder =
-          new ProcessBuilder("bash", "./scripts/get_digest", dockerRepository, dockerTag).start();
+    String digest = cache.get(dockerRepository, dockerTag);
+    LOGGER.debug(cache);
+    return digest;
+  }
 
-      LOGGER.debug("Waiting for the process for execute command: " + builder.toString());
-      builder.waitFor();
+  /**
+   * Gets the immutable identifiers of several images concurrently.
+   *
+   * @param imagesDockerInfo images docker information
+   * @return digests, in the same order as the images
+   */
+  public static String[] getDigests(ExecutionScriptTag... imagesDockerInfo) throws Exception {
+    List<Future<String>> lookups = new ArrayList<Future<String>>(imagesDockerInfo.length);
+    for (final ExecutionScriptTag imageDockerInfo : imagesDockerInfo) {
+      lookups.add(
+          lookupExecutor.submit(
+              new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                  return getDigest(imageDockerInfo);
+                }
+              }));
+    }
 
-      if (builder.exitValue() != 0)
-        throw new Exception("Process output exit code: " + builder.exitValue());
+    String[] digests = new String[imagesDockerInfo.length];
+    for (int i = 0; i < digests.length; i++) {
+      try {
+        digests[i] = lookups.get(i).get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+      }
+    }
+    return digests;
+  }
 
-      try (BufferedReader reader = new BufferedReader(new InputStreamReader(builder.getInputStream()))) {
-        result = reader.readLine();
+  private static String fetchDigest(String dockerRepository, String dockerTag) throws Exception {
+    try {
+      if (SOURCE_OFFLINE.equals(digestSource)) {
+        String digest = executionScriptTags.getPinnedDigest(dockerRepository, dockerTag);
+        if (digest == null) throw new Exception("No pinned digest in the execution tags file");
+        return digest;
       }
+
+      DockerRegistryClient client = registryClient;
+      if (client != null) return client.getDigest(dockerRepository, dockerTag);
+
+      return fetchDigestFromScript(dockerRepository, dockerTag);
     } catch (Exception e) {
       LOGGER.error(
           "Error while trying get digest from Docker image ["
@@ -46,6 +219,28 @@ public class DigestUtil {
           e);
       throw new Exception(e);
     }
+  }
+
+  private static String fetchDigestFromScript(String dockerRepository, String dockerTag)
+      throws Exception {
+    String result = null;
+
+    Process builder =
+        new ProcessBuilder("bash", "./scripts/get_digest", dockerRepository, dockerTag).start();
+
+    // the output is drained before waiting, so a full pipe cannot block the script
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(builder.getInputStream()))) {
+      result = reader.readLine();
+      while (reader.readLine() != null) {
+        // discards the rest of the output
+      }
+    }
+
+    LOGGER.debug("Waiting for the process for execute command: " + builder.toString());
+    builder.waitFor();
+
+    if (builder.exitValue() != 0)
+      throw new Exception("Process output exit code: " + builder.exitValue());
 
     return result;
   }
@@ -0,0 +1,116 @@
+/* (C)2020 */
+package saps.dispatcher.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Docker Hub tags API client. Looks up the digest of a tag with a single GET on {@code
+ * <baseUrl>/repositories/<repository>/tags/<tag>}, over pooled keep-alive connections.
+ */
+public class DockerRegistryClient {
+
+  private static final Logger LOGGER = Logger.getLogger(DockerRegistryClient.class);
+
+  public static final String DEFAULT_BASE_URL = "https://hub.docker.com/v2";
+
+  private static final String DIGEST_PREFIX = "sha256:";
+  private static final int DIGEST_LENGTH = 71;
+
+  private final String baseUrl;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+
+  /**
+   * @param baseUrl registry API base URL, e.g. https://hub.docker.com/v2
+   * @param maxConnections maximum pooled connections to the registry
+   * @param timeoutMillis connect and read timeout
+   */
+  public DockerRegistryClient(String baseUrl, int maxConnections, int timeoutMillis) {
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    this.connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    RequestConfig requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout(timeoutMillis)
+            .setConnectionRequestTimeout(timeoutMillis)
+            .setSocketTimeout(timeoutMillis)
+            .build();
+    this.httpClient =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .build();
+  }
+
+  /**
+   * Gets the digest of the image tag from the registry.
+   *
+   * @param dockerRepository Docker image repository, e.g. fogbow/worker
+   * @param dockerTag Docker image tag
+   * @return immutable identifier that match with repository and tag passed
+   */
+  public String getDigest(String dockerRepository, String dockerTag) throws IOException {
+    String url = baseUrl + "/repositories/" + dockerRepository + "/tags/" + dockerTag;
+    HttpGet request = new HttpGet(url);
+    request.setHeader("Accept", "application/json");
+
+    LOGGER.debug("Requesting digest from [" + url + "]");
+    String body;
+    try (CloseableHttpResponse response = httpClient.execute(request)) {
+      int statusCode = response.getStatusLine().getStatusCode();
+      body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+      if (statusCode != HttpStatus.SC_OK)
+        throw new IOException("Registry answered [" + url + "] with status " + statusCode);
+    }
+
+    String digest = parseDigest(body);
+    if (digest == null || digest.length() != DIGEST_LENGTH || !digest.startsWith(DIGEST_PREFIX))
+      throw new IOException("Registry answered [" + url + "] without a valid digest: " + digest);
+    return digest;
+  }
+
+  /**
+   * Reads the digest of the first image of the tag, as get_digest did, falling back to the tag
+   * digest only when the tag lists no images. The tag digest is the one of the manifest list, which
+   * differs from the image digest for multi-platform tags.
+   */
+  static String parseDigest(String body) {
+    JsonObject tag = new JsonParser().parse(body).getAsJsonObject();
+
+    JsonElement images = tag.get("images");
+    if (images != null && images.isJsonArray()) {
+      JsonArray imageArray = images.getAsJsonArray();
+      for (JsonElement image : imageArray) {
+        JsonElement imageDigest = image.getAsJsonObject().get("digest");
+        if (imageDigest != null && !imageDigest.isJsonNull()) return imageDigest.getAsString();
+      }
+    }
+
+    JsonElement digest = tag.get("digest");
+    if (digest != null && !digest.isJsonNull()) return digest.getAsString();
+    return null;
+  }
+
+  /** Closes the pooled connections. */
+  public void close() {
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      LOGGER.warn("Error while closing registry client", e);
+    }
+  }
+}
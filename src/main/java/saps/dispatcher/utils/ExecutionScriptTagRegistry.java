@@ -0,0 +1,221 @@
+/* (C)2020 */
+package saps.dispatcher.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import saps.common.exceptions.SapsException;
+import saps.common.utils.ExecutionScriptTag;
+import saps.common.utils.ExecutionScriptTagUtil;
+
+/**
+ * Execution script tags file loaded once into an immutable map indexed by phase and tag name. A
+ * watcher thread reloads the file when it changes and swaps the new map in atomically, so
+ * submissions never read the disk and new algorithms are picked up without a restart. A file that
+ * fails to load leaves the previous tags in place.
+ */
+public class ExecutionScriptTagRegistry {
+
+  private static final Logger LOGGER = Logger.getLogger(ExecutionScriptTagRegistry.class);
+
+  private static final String[] PHASES = {
+    ExecutionScriptTagUtil.INPUT_DOWNLOADER,
+    ExecutionScriptTagUtil.PRE_PROCESSING,
+    ExecutionScriptTagUtil.PROCESSING
+  };
+
+  /** Optional field of a tag holding its pinned image digest. */
+  public static final String PINNED_DIGEST_FIELD = "docker_digest";
+
+  private final Path tagsFilePath;
+  private volatile Snapshot snapshot;
+  private WatchService watchService;
+
+  private ExecutionScriptTagRegistry(Path tagsFilePath, Snapshot snapshot) {
+    this.tagsFilePath = tagsFilePath;
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Loads the execution script tags file.
+   *
+   * @param tagsFilePath execution script tags file path
+   */
+  public static ExecutionScriptTagRegistry load(String tagsFilePath) throws Exception {
+    Path path = Paths.get(tagsFilePath).toAbsolutePath();
+    return new ExecutionScriptTagRegistry(path, readSnapshot(path));
+  }
+
+  /**
+   * Gets the tag of a phase by name.
+   *
+   * @param name tag name, e.g. ufcg-sebal
+   * @param phase phase, one of the ExecutionScriptTagUtil phase constants
+   */
+  public ExecutionScriptTag getExecutionScriptTag(String name, String phase)
+      throws SapsException {
+    Map<String, ExecutionScriptTag> phaseTags = snapshot.tags.get(phase);
+    ExecutionScriptTag tag = phaseTags == null ? null : phaseTags.get(name);
+    if (tag == null)
+      throw new SapsException(
+          "Execution script tag [" + name + "] of phase [" + phase + "] not found");
+    return tag;
+  }
+
+  /**
+   * Gets the digest pinned on a tag of the file.
+   *
+   * @return pinned digest, or null if the tag has none
+   */
+  public String getPinnedDigest(String dockerRepository, String dockerTag) {
+    return snapshot.pinnedDigests.get(dockerRepository + ":" + dockerTag);
+  }
+
+  /** Reads the file again and swaps the new tags in. */
+  public void reload() throws Exception {
+    Snapshot reloaded = readSnapshot(tagsFilePath);
+    snapshot = reloaded;
+    LOGGER.info("Execution script tags reloaded from [" + tagsFilePath + "]");
+  }
+
+  /** Starts a daemon thread that reloads the tags whenever the file changes. */
+  public synchronized void watch() throws IOException {
+    if (watchService != null) return;
+
+    final Path directory = tagsFilePath.getParent();
+    final Path fileName = tagsFilePath.getFileName();
+    final WatchService service = FileSystems.getDefault().newWatchService();
+    directory.register(
+        service,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+    watchService = service;
+
+    Thread watcher =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  while (true) {
+                    WatchKey key = service.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                      changed |= fileName.equals(event.context());
+                    }
+                    key.reset();
+                    if (changed) reloadQuietly();
+                  }
+                } catch (ClosedWatchServiceException | InterruptedException e) {
+                  LOGGER.debug("Execution script tags watcher stopped");
+                }
+              }
+            },
+            "execution-tags-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+    LOGGER.info("Watching [" + tagsFilePath + "] for execution script tag changes");
+  }
+
+  /** Stops the watcher thread. */
+  public synchronized void close() {
+    if (watchService == null) return;
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      LOGGER.warn("Error while closing execution script tags watcher", e);
+    }
+    watchService = null;
+  }
+
+  private void reloadQuietly() {
+    try {
+      reload();
+    } catch (Exception e) {
+      // editors often write the file in steps; the next event brings the complete file
+      LOGGER.error(
+          "Error while reloading execution script tags from ["
+              + tagsFilePath
+              + "]; keeping the previous tags",
+          e);
+    }
+  }
+
+  /**
+   * Builds the tags of each phase from a single parse of the JSON file, with the fields
+   * ExecutionScriptTagUtil reads, so a file written while it is read is never mixed into one
+   * snapshot.
+   */
+  private static Snapshot readSnapshot(Path tagsFilePath) throws Exception {
+    JsonObject phases;
+    try (Reader reader = new FileReader(tagsFilePath.toFile())) {
+      phases = new JsonParser().parse(reader).getAsJsonObject();
+    }
+
+    Map<String, Map<String, ExecutionScriptTag>> tags =
+        new HashMap<String, Map<String, ExecutionScriptTag>>();
+    Map<String, String> pinnedDigests = new HashMap<String, String>();
+    for (String phase : PHASES) {
+      Map<String, ExecutionScriptTag> phaseTags = new HashMap<String, ExecutionScriptTag>();
+      JsonElement phaseElement = phases.get(phase);
+      if (phaseElement != null && phaseElement.isJsonArray()) {
+        for (JsonElement element : phaseElement.getAsJsonArray()) {
+          JsonObject tagObject = element.getAsJsonObject();
+          String name = tagObject.get("name").getAsString();
+          String dockerRepository = getString(tagObject, "docker_repository");
+          String dockerTag = getString(tagObject, "docker_tag");
+          phaseTags.put(
+              name,
+              new ExecutionScriptTag(
+                  name,
+                  dockerRepository,
+                  dockerTag,
+                  getString(tagObject, "memory_usage"),
+                  getString(tagObject, "cpu_usage"),
+                  phase));
+
+          if (tagObject.has(PINNED_DIGEST_FIELD)) {
+            pinnedDigests.put(
+                dockerRepository + ":" + dockerTag, getString(tagObject, PINNED_DIGEST_FIELD));
+          }
+        }
+      }
+      tags.put(phase, Collections.unmodifiableMap(phaseTags));
+    }
+
+    return new Snapshot(
+        Collections.unmodifiableMap(tags), Collections.unmodifiableMap(pinnedDigests));
+  }
+
+  private static String getString(JsonObject object, String field) {
+    JsonElement value = object.get(field);
+    return value == null || value.isJsonNull() ? null : value.getAsString();
+  }
+
+  private static class Snapshot {
+
+    private final Map<String, Map<String, ExecutionScriptTag>> tags;
+    private final Map<String, String> pinnedDigests;
+
+    Snapshot(
+        Map<String, Map<String, ExecutionScriptTag>> tags, Map<String, String> pinnedDigests) {
+      this.tags = tags;
+      this.pinnedDigests = pinnedDigests;
+    }
+  }
+}
@@ -1,16 +1,155 @@
 /* (C)2020 */
 package saps.dispatcher.utils;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 import org.apache.log4j.Logger;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.io.geojson.GeoJsonReader;
+import saps.dispatcher.utils.wrs.WrsIndex;
+import saps.dispatcher.utils.wrs.WrsLookupGrid;
+import saps.dispatcher.utils.wrs.WrsTile;
+import saps.dispatcher.utils.wrs.WrsWorkerPool;
 
 public class RegionUtil {
 
+  public static final String WRS_SHAPEFILE_PATH_KEY = "wrs_shapefile_path";
+  public static final String WRS_PYTHON_FALLBACK_KEY = "wrs_python_fallback";
+  public static final String WRS_LOOKUP_GRID_PATH_KEY = "wrs_lookup_grid_path";
+  public static final String WRS_WORKER_POOL_SIZE_KEY = "wrs_worker_pool_size";
+  public static final String WRS_WORKER_TIMEOUT_MILLIS_KEY = "wrs_worker_timeout_ms";
+
+  private static final String GEOJSON_TYPE = "type";
+  private static final String GEOJSON_FEATURE = "Feature";
+  private static final String GEOJSON_GEOMETRY = "geometry";
+
+  private static final String DEFAULT_WRS_SHAPEFILE_PATH =
+      "resources/WRS2_descending/WRS2_descending";
+  private static final String DEFAULT_WRS_WORKER_TIMEOUT_MILLIS = "10000";
+  private static final String GET_WRS_SCRIPT_PATH = "./scripts/get_wrs.py";
+
   private static final Logger LOGGER = Logger.getLogger(RegionUtil.class);
 
+  private static volatile WrsIndex wrsIndex;
+  private static volatile WrsLookupGrid wrsLookupGrid;
+  private static volatile WrsWorkerPool wrsWorkerPool;
+  private static volatile boolean pythonFallbackEnabled = true;
+
+  /**
+   * This function loads the WRS-2 footprints into memory, so that region lookups no longer need
+   * the get_wrs (Python script) subprocess. If the shapefile cannot be loaded, the script is kept
+   * as fallback when it is enabled. When a precomputed lookup grid is configured, it is
+   * memory-mapped to answer point lookups.
+   *
+   * @param properties dispatcher properties
+   */
+  public static synchronized void configure(Properties properties) {
+    String shapefilePath =
+        properties.getProperty(WRS_SHAPEFILE_PATH_KEY, DEFAULT_WRS_SHAPEFILE_PATH);
+    pythonFallbackEnabled =
+        Boolean.parseBoolean(properties.getProperty(WRS_PYTHON_FALLBACK_KEY, "true"));
+
+    if (wrsIndex != null) return;
+
+    try {
+      wrsIndex = WrsIndex.load(shapefilePath);
+    } catch (Exception e) {
+      LOGGER.error(
+          "Error while loading WRS-2 shapefile ["
+              + shapefilePath
+              + "]; python fallback enabled: "
+              + pythonFallbackEnabled,
+          e);
+      configureWorkerPool(properties);
+      return;
+    }
+
+    String lookupGridPath = properties.getProperty(WRS_LOOKUP_GRID_PATH_KEY);
+    if (lookupGridPath == null || lookupGridPath.isEmpty()) return;
+
+    try {
+      wrsLookupGrid = WrsLookupGrid.load(wrsIndex, lookupGridPath);
+    } catch (Exception e) {
+      LOGGER.error(
+          "Error while mapping WRS-2 lookup grid [" + lookupGridPath + "]; using index only", e);
+    }
+  }
+
+  private static void configureWorkerPool(Properties properties) {
+    int poolSize = Integer.parseInt(properties.getProperty(WRS_WORKER_POOL_SIZE_KEY, "0"));
+    if (!pythonFallbackEnabled || poolSize <= 0 || wrsWorkerPool != null) return;
+
+    long timeoutMillis =
+        Long.parseLong(
+            properties.getProperty(
+                WRS_WORKER_TIMEOUT_MILLIS_KEY, DEFAULT_WRS_WORKER_TIMEOUT_MILLIS));
+    wrsWorkerPool =
+        new WrsWorkerPool(
+            Arrays.asList("python", GET_WRS_SCRIPT_PATH, "--serve"), poolSize, timeoutMillis);
+    LOGGER.info("Using " + poolSize + " pooled get_wrs workers as WRS-2 fallback");
+  }
+
+  /** This function stops the pooled get_wrs workers, if they were started. */
+  public static synchronized void shutdown() {
+    if (wrsWorkerPool == null) return;
+    wrsWorkerPool.shutdown();
+    wrsWorkerPool = null;
+  }
+
+  /** @return the in-memory WRS-2 index, or null if it was not loaded */
+  public static WrsIndex getWrsIndex() {
+    return wrsIndex;
+  }
+
+  /**
+   * This function gets the scene path/row that contain the point, using the in-memory WRS-2
+   * index when it is loaded and get_wrs (Python script) otherwise.
+   *
+   * @param latitude latitude (point coordinate)
+   * @param longitude longitude (point coordinate)
+   * @return scene path/row from latitude and longitude coordinates, separated by spaces
+   * @throws Exception
+   */
+  public static String getRegionIds(String latitude, String longitude) throws Exception {
+    WrsIndex index = wrsIndex;
+    if (index != null) {
+      WrsLookupGrid grid = wrsLookupGrid;
+      double pointLatitude = Double.parseDouble(latitude);
+      double pointLongitude = Double.parseDouble(longitude);
+      List<WrsTile> tiles =
+          grid != null
+              ? grid.tilesAt(pointLatitude, pointLongitude)
+              : index.tilesAt(pointLatitude, pointLongitude);
+      StringBuilder regionIds = new StringBuilder();
+      for (WrsTile tile : tiles) {
+        regionIds.append(tile.getRegionId()).append(" ");
+      }
+      LOGGER.debug("WRS-2 index output (regions ID's): " + regionIds);
+      return regionIds.toString();
+    }
+
+    if (!pythonFallbackEnabled)
+      throw new Exception("WRS-2 index is not loaded and python fallback is disabled");
+
+    WrsWorkerPool pool = wrsWorkerPool;
+    if (pool != null) {
+      String result = pool.getRegionIds(latitude, longitude);
+      LOGGER.debug("get_wrs worker output (regions ID's): " + result);
+      return result;
+    }
+
+    return getRegionIdsFromScript(latitude, longitude);
+  }
+
   /**
    * This function calling get_wrs (Python script) passing latitude and longitude as paramater.
    *
@@ -19,22 +158,19 @@ public class RegionUtil {
    * @return scene path/row from latitude and longitude coordinates
    * @throws Exception
    */
-  public static String getRegionIds(String latitude, String longitude) throws Exception {
+  private static String getRegionIdsFromScript(String latitude, String longitude)
+      throws Exception {
 
     LOGGER.debug(
         "Calling get_wrs.py and passing (" + latitude + ", " + longitude + ") as parameter");
     Process builder =
-        new ProcessBuilder("python", "./scripts/get_wrs.py", latitude, longitude).start();
-
-    LOGGER.debug("Waiting for the process for execute command [" + builder.toString() + "] ...");
-    builder.waitFor();
-    LOGGER.debug("Process ended.");
+        new ProcessBuilder("python", GET_WRS_SCRIPT_PATH, latitude, longitude)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
 
     String result = null;
 
-    if (builder.exitValue() != 0)
-      throw new Exception("Process output exit code: " + builder.exitValue());
-
+    // drain the output before waiting, so a full pipe cannot block the script
     StringBuilder builderS = new StringBuilder();
     try (BufferedReader reader = new BufferedReader(new InputStreamReader(builder.getInputStream()))) {
       String line;
@@ -44,6 +180,13 @@ public class RegionUtil {
       }
     }
 
+    LOGGER.debug("Waiting for the process for execute command [" + builder.toString() + "] ...");
+    builder.waitFor();
+    LOGGER.debug("Process ended.");
+
+    if (builder.exitValue() != 0)
+      throw new Exception("Process output exit code: " + builder.exitValue());
+
     result = builderS.toString();
 
     LOGGER.debug("Process output (regions ID's): \n" + result);
@@ -52,7 +195,9 @@ public class RegionUtil {
   }
 
   /**
-   * This function returns regions set from area.
+   * This function returns regions set from area. When the WRS-2 index is loaded, the set holds
+   * exactly the tiles whose footprint intersects the area; otherwise it is the path/row rectangle
+   * swept between the tiles of the two corners.
    *
    * @param lowerLeftLatitude lower left latitude (coordinate)
    * @param lowerLeftLongitude lower left longitude (coordinate)
@@ -66,18 +211,138 @@ public class RegionUtil {
       String upperRightLatitude,
       String upperRightLongitude) {
 
-    String regionLowerLeft, regionUpperRight;
+    WrsIndex index = wrsIndex;
+    if (index == null) {
+      return regionsFromCorners(
+          lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
+    }
+
+    Set<String> regionsFound = new HashSet<String>();
+    try {
+      Envelope area =
+          new Envelope(
+              Double.parseDouble(lowerLeftLongitude),
+              Double.parseDouble(upperRightLongitude),
+              Double.parseDouble(lowerLeftLatitude),
+              Double.parseDouble(upperRightLatitude));
+
+      for (WrsTile tile : index.tilesIntersecting(index.getGeometryFactory().toGeometry(area))) {
+        regionsFound.add(tile.getRegionId());
+      }
+
+      LOGGER.info("Regions found: " + regionsFound.toString());
+    } catch (Exception e) {
+      LOGGER.error("Error while searching regions in the WRS-2 index", e);
+    }
+
+    return regionsFound;
+  }
+
+  /**
+   * This function returns the regions set that covers a polygonal area of interest. A tile is
+   * kept only if its coverage, the intersection area divided by the smaller of the tile and area
+   * of interest areas, is at least {@code minTileCoverage}. This drops tiles that barely touch a
+   * long, thin area, while an area fully inside a single tile still keeps that tile. Without the
+   * WRS-2 index, the envelope of the area is swept as in {@link #regionsFromArea} and no tile is
+   * dropped.
+   *
+   * @param areaOfInterest polygon or multipolygon in lon/lat (WGS84) coordinates
+   * @param minTileCoverage minimum coverage fraction, in the [0, 1] range
+   * @return string set (regions set)
+   */
+  public static Set<String> regionsFromPolygon(Geometry areaOfInterest, double minTileCoverage) {
+    WrsIndex index = wrsIndex;
+    if (index == null) {
+      Envelope envelope = areaOfInterest.getEnvelopeInternal();
+      LOGGER.warn("WRS-2 index is not loaded; tile coverage threshold will not be applied");
+      return regionsFromCorners(
+          String.valueOf(envelope.getMinY()),
+          String.valueOf(envelope.getMinX()),
+          String.valueOf(envelope.getMaxY()),
+          String.valueOf(envelope.getMaxX()));
+    }
+
+    Set<String> regionsFound = new HashSet<String>();
+    double areaOfInterestArea = areaOfInterest.getArea();
+    for (WrsTile tile : index.tilesIntersecting(areaOfInterest)) {
+      double overlap = tile.getFootprint().intersection(areaOfInterest).getArea();
+      double reference = Math.min(tile.getFootprint().getArea(), areaOfInterestArea);
+      double coverage = reference > 0 ? overlap / reference : 0;
+
+      if (coverage >= minTileCoverage) {
+        regionsFound.add(tile.getRegionId());
+      } else {
+        LOGGER.debug(
+            "Dropping region [" + tile.getRegionId() + "] with coverage " + coverage);
+      }
+    }
+
+    LOGGER.info("Regions found: " + regionsFound.toString());
+    return regionsFound;
+  }
+
+  /**
+   * This function parses a GeoJSON area of interest. Polygon and MultiPolygon geometries are
+   * accepted, either bare or wrapped in a Feature.
+   *
+   * @param geoJson GeoJSON document
+   * @return the area of interest geometry
+   * @throws IllegalArgumentException if the document is not a valid polygonal geometry
+   */
+  public static Geometry parseAreaOfInterest(String geoJson) {
+    Geometry areaOfInterest;
+    try {
+      JsonObject document = new JsonParser().parse(geoJson).getAsJsonObject();
+      if (GEOJSON_FEATURE.equals(document.get(GEOJSON_TYPE).getAsString())) {
+        document = document.getAsJsonObject(GEOJSON_GEOMETRY);
+      }
+      areaOfInterest = new GeoJsonReader().read(document.toString());
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Area of interest is not a valid GeoJSON geometry", e);
+    }
+
+    if (!(areaOfInterest instanceof Polygonal) || areaOfInterest.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Area of interest must be a Polygon or MultiPolygon, found "
+              + areaOfInterest.getGeometryType());
+    }
+    if (!areaOfInterest.isValid()) {
+      throw new IllegalArgumentException("Area of interest polygon is not valid");
+    }
+
+    return areaOfInterest;
+  }
+
+  /**
+   * This function returns the path/row rectangle between the tiles of the lower left and upper
+   * right corners. It is only used when the WRS-2 index is not loaded, since skewed rows make it
+   * both miss tiles and include tiles that do not touch the area.
+   *
+   * @param lowerLeftLatitude lower left latitude (coordinate)
+   * @param lowerLeftLongitude lower left longitude (coordinate)
+   * @param upperRightLatitude upper right latitude (coordinate)
+   * @param upperRightLongitude upper right longitude (coordinate)
+   * @return string set (regions set)
+   */
+  static Set<String> regionsFromCorners(
+      String lowerLeftLatitude,
+      String lowerLeftLongitude,
+      String upperRightLatitude,
+      String upperRightLongitude) {
+
     Set<String> regionsFound = new HashSet<String>();
 
     try {
-      regionLowerLeft = RegionUtil.getRegionIds(lowerLeftLatitude, lowerLeftLongitude).trim();
-      regionUpperRight = RegionUtil.getRegionIds(upperRightLatitude, upperRightLongitude).trim();
+      String regionLowerLeft =
+          RegionUtil.getRegionIds(lowerLeftLatitude, lowerLeftLongitude).trim();
+      String regionUpperRight =
+          RegionUtil.getRegionIds(upperRightLatitude, upperRightLongitude).trim();
 
       int pathRegionLL = Integer.parseInt(regionLowerLeft.substring(0, 3));
-      int rowRegionLL = Integer.parseInt(regionLowerLeft.substring(4, 6));
+      int rowRegionLL = Integer.parseInt(regionLowerLeft.substring(3, 6));
 
       int pathRegionUR = Integer.parseInt(regionUpperRight.substring(0, 3));
-      int rowRegionUR = Integer.parseInt(regionUpperRight.substring(4, 6));
+      int rowRegionUR = Integer.parseInt(regionUpperRight.substring(3, 6));
 
       LOGGER.info(
           "pathRegionLL: "
@@ -94,7 +359,8 @@ public class RegionUtil {
               + "\n");
 
       for (int i = pathRegionLL; i >= pathRegionUR; i--) {
-        for (int j = rowRegionLL; j >= rowRegionUR; j--) regionsFound.add(formatPathRow(i, j));
+        for (int j = rowRegionLL; j >= rowRegionUR; j--)
+          regionsFound.add(WrsTile.formatRegionId(i, j));
       }
 
       LOGGER.info("Regions found: " + regionsFound.toString());
@@ -105,14 +371,4 @@ public class RegionUtil {
 
     return regionsFound;
   }
-
-  /** Get path and row and create format PPPRRR, where PPP is path of scene RRR is row of scene */
-  private static String formatPathRow(int path, int row) {
-    String pathAux = Integer.toString(path);
-    String rowAux = Integer.toString(row);
-    if (rowAux.length() == 1) rowAux = "00" + rowAux;
-    else if (rowAux.length() == 2) rowAux = "0" + rowAux;
-
-    return pathAux + rowAux;
-  }
 }
@@ -0,0 +1,122 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.log4j.Logger;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * In-memory spatial index (STR-tree) over the WRS-2 descending footprints. It answers the same
+ * question as scripts/get_wrs.py without starting an interpreter or re-reading the shapefile.
+ */
+public class WrsIndex {
+
+  private static final Logger LOGGER = Logger.getLogger(WrsIndex.class);
+
+  private static final Comparator<WrsTile> BY_ORDINAL =
+      new Comparator<WrsTile>() {
+        @Override
+        public int compare(WrsTile a, WrsTile b) {
+          return Integer.compare(a.getOrdinal(), b.getOrdinal());
+        }
+      };
+
+  private final GeometryFactory geometryFactory;
+  private final List<WrsTile> tiles;
+  private final STRtree tree;
+
+  public WrsIndex(GeometryFactory geometryFactory, List<WrsTile> tiles) {
+    this.geometryFactory = geometryFactory;
+    this.tiles = Collections.unmodifiableList(new ArrayList<WrsTile>(tiles));
+    this.tree = new STRtree();
+    for (WrsTile tile : tiles) {
+      tree.insert(tile.getFootprint().getEnvelopeInternal(), tile);
+    }
+    tree.build();
+  }
+
+  /**
+   * Loads the WRS-2 footprints from the shapefile and builds the index.
+   *
+   * @param shapefileBasePath shapefile path without extension
+   * @return the loaded index
+   */
+  public static WrsIndex load(String shapefileBasePath) throws IOException {
+    long start = System.currentTimeMillis();
+    GeometryFactory geometryFactory = new GeometryFactory();
+    List<WrsTile> tiles = new WrsShapefileReader(geometryFactory).read(shapefileBasePath);
+    WrsIndex index = new WrsIndex(geometryFactory, tiles);
+    LOGGER.info(
+        "WRS-2 index with "
+            + tiles.size()
+            + " tiles loaded from ["
+            + shapefileBasePath
+            + "] in "
+            + (System.currentTimeMillis() - start)
+            + " ms");
+    return index;
+  }
+
+  /**
+   * Gets the WRS-2 tiles whose footprint contains the given point. Points in the overlap between
+   * scenes return more than one tile.
+   *
+   * @param latitude latitude (point coordinate)
+   * @param longitude longitude (point coordinate)
+   * @return tiles containing the point, in shapefile order
+   */
+  @SuppressWarnings("unchecked")
+  public List<WrsTile> tilesAt(double latitude, double longitude) {
+    Coordinate coordinate = new Coordinate(longitude, latitude);
+    Point point = geometryFactory.createPoint(coordinate);
+
+    List<WrsTile> candidates = tree.query(point.getEnvelopeInternal());
+    List<WrsTile> found = new ArrayList<WrsTile>(candidates.size());
+    for (WrsTile candidate : candidates) {
+      if (candidate.getPreparedFootprint().contains(point)) {
+        found.add(candidate);
+      }
+    }
+    Collections.sort(found, BY_ORDINAL);
+    return found;
+  }
+
+  /**
+   * Gets the WRS-2 tiles whose footprint intersects the given area.
+   *
+   * @param area area of interest in lon/lat (WGS84) coordinates
+   * @return tiles intersecting the area, in shapefile order
+   */
+  @SuppressWarnings("unchecked")
+  public List<WrsTile> tilesIntersecting(Geometry area) {
+    List<WrsTile> candidates = tree.query(area.getEnvelopeInternal());
+    List<WrsTile> found = new ArrayList<WrsTile>(candidates.size());
+    for (WrsTile candidate : candidates) {
+      if (candidate.getPreparedFootprint().intersects(area)) {
+        found.add(candidate);
+      }
+    }
+    Collections.sort(found, BY_ORDINAL);
+    return found;
+  }
+
+  public GeometryFactory getGeometryFactory() {
+    return geometryFactory;
+  }
+
+  public List<WrsTile> getTiles() {
+    return tiles;
+  }
+
+  public int size() {
+    return tiles.size();
+  }
+}
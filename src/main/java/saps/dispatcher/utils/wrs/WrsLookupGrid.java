@@ -0,0 +1,238 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Precomputed raster that maps a quantized lat/lon cell to its candidate WRS-2 tiles. The grid is
+ * stored in a compact binary file and memory-mapped, so most point lookups are a single array
+ * read. Cells that cross a tile boundary are flagged and resolved by exact polygon tests against
+ * their candidates.
+ *
+ * <p>File layout (big-endian): magic, version, tile count, min latitude, min longitude,
+ * resolution, rows, columns, one int per cell (candidate list offset, high bit set for boundary
+ * cells) and the candidate lists (length followed by tile ordinals).
+ */
+public class WrsLookupGrid {
+
+  private static final Logger LOGGER = Logger.getLogger(WrsLookupGrid.class);
+
+  private static final int MAGIC = 0x57525347; // "WRSG"
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 4 + 4 + 4 + 8 + 8 + 8 + 4 + 4;
+  private static final int BOUNDARY_FLAG = 0x80000000;
+  private static final int OFFSET_MASK = 0x7FFFFFFF;
+
+  private final WrsIndex index;
+  private final ByteBuffer buffer;
+  private final double minLatitude;
+  private final double minLongitude;
+  private final double resolution;
+  private final int rows;
+  private final int columns;
+  private final int candidatesStart;
+
+  private WrsLookupGrid(WrsIndex index, ByteBuffer buffer) throws IOException {
+    this.index = index;
+    this.buffer = buffer;
+
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+      throw new IOException("Not a WRS-2 lookup grid file (version " + VERSION + ")");
+    if (buffer.getInt(8) != index.size())
+      throw new IOException(
+          "Lookup grid was built for "
+              + buffer.getInt(8)
+              + " tiles, but the WRS-2 index has "
+              + index.size());
+
+    this.minLatitude = buffer.getDouble(12);
+    this.minLongitude = buffer.getDouble(20);
+    this.resolution = buffer.getDouble(28);
+    this.rows = buffer.getInt(36);
+    this.columns = buffer.getInt(40);
+    this.candidatesStart = HEADER_LENGTH + 4 * rows * columns;
+  }
+
+  /**
+   * Memory-maps a lookup grid file built by {@link #build}.
+   *
+   * @param index WRS-2 index the grid was built from
+   * @param gridFilePath lookup grid file path
+   */
+  public static WrsLookupGrid load(WrsIndex index, String gridFilePath) throws IOException {
+    long start = System.currentTimeMillis();
+    ByteBuffer buffer;
+    try (RandomAccessFile file = new RandomAccessFile(gridFilePath, "r");
+        FileChannel channel = file.getChannel()) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    WrsLookupGrid grid = new WrsLookupGrid(index, buffer);
+    LOGGER.info(
+        "WRS-2 lookup grid ("
+            + grid.rows
+            + "x"
+            + grid.columns
+            + " cells of "
+            + grid.resolution
+            + " deg, "
+            + buffer.capacity()
+            + " bytes) mapped from ["
+            + gridFilePath
+            + "] in "
+            + (System.currentTimeMillis() - start)
+            + " ms");
+    return grid;
+  }
+
+  /**
+   * Gets the WRS-2 tiles whose footprint contains the given point. Points outside the grid are
+   * answered by the WRS-2 index.
+   *
+   * @param latitude latitude (point coordinate)
+   * @param longitude longitude (point coordinate)
+   * @return tiles containing the point, in shapefile order
+   */
+  public List<WrsTile> tilesAt(double latitude, double longitude) {
+    int row = (int) Math.floor((latitude - minLatitude) / resolution);
+    int column = (int) Math.floor((longitude - minLongitude) / resolution);
+    if (row < 0 || row >= rows || column < 0 || column >= columns) {
+      return index.tilesAt(latitude, longitude);
+    }
+
+    int cell = buffer.getInt(HEADER_LENGTH + 4 * (row * columns + column));
+    boolean boundary = (cell & BOUNDARY_FLAG) != 0;
+    Point point =
+        boundary
+            ? index.getGeometryFactory().createPoint(new Coordinate(longitude, latitude))
+            : null;
+
+    int position = candidatesStart + 4 * (cell & OFFSET_MASK);
+    int count = buffer.getInt(position);
+    List<WrsTile> tiles = new ArrayList<WrsTile>(count);
+    for (int i = 0; i < count; i++) {
+      WrsTile tile = index.getTiles().get(buffer.getInt(position + 4 * (i + 1)));
+      if (!boundary || tile.getPreparedFootprint().contains(point)) {
+        tiles.add(tile);
+      }
+    }
+    return tiles;
+  }
+
+  /**
+   * Builds a lookup grid file covering the given bounds.
+   *
+   * @param index WRS-2 index to precompute
+   * @param bounds covered area in lon/lat (WGS84) coordinates
+   * @param resolution cell side, in degrees
+   * @param gridFilePath output file path
+   */
+  public static void build(WrsIndex index, Envelope bounds, double resolution, String gridFilePath)
+      throws IOException {
+    int rows = (int) Math.ceil(bounds.getHeight() / resolution);
+    int columns = (int) Math.ceil(bounds.getWidth() / resolution);
+
+    int[] cells = new int[rows * columns];
+    Map<List<Integer>, Integer> candidateOffsets = new HashMap<List<Integer>, Integer>();
+    List<Integer> candidates = new ArrayList<Integer>();
+
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        double cellLatitude = bounds.getMinY() + row * resolution;
+        double cellLongitude = bounds.getMinX() + column * resolution;
+        Geometry cell =
+            index
+                .getGeometryFactory()
+                .toGeometry(
+                    new Envelope(
+                        cellLongitude,
+                        cellLongitude + resolution,
+                        cellLatitude,
+                        cellLatitude + resolution));
+
+        boolean boundary = false;
+        List<Integer> ordinals = new ArrayList<Integer>();
+        for (WrsTile tile : index.tilesIntersecting(cell)) {
+          ordinals.add(tile.getOrdinal());
+          boundary |= !tile.getPreparedFootprint().contains(cell);
+        }
+
+        Integer offset = candidateOffsets.get(ordinals);
+        if (offset == null) {
+          offset = candidates.size();
+          candidateOffsets.put(Collections.unmodifiableList(ordinals), offset);
+          candidates.add(ordinals.size());
+          candidates.addAll(ordinals);
+        }
+        cells[row * columns + column] = boundary ? offset | BOUNDARY_FLAG : offset;
+      }
+    }
+
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(gridFilePath)))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(index.size());
+      output.writeDouble(bounds.getMinY());
+      output.writeDouble(bounds.getMinX());
+      output.writeDouble(resolution);
+      output.writeInt(rows);
+      output.writeInt(columns);
+      for (int cell : cells) {
+        output.writeInt(cell);
+      }
+      for (int candidate : candidates) {
+        output.writeInt(candidate);
+      }
+    }
+
+    LOGGER.info(
+        "WRS-2 lookup grid with "
+            + rows * columns
+            + " cells and "
+            + candidateOffsets.size()
+            + " distinct candidate lists written to ["
+            + gridFilePath
+            + "]");
+  }
+
+  /**
+   * Builds a lookup grid file from the command line.
+   *
+   * <pre>
+   * WrsLookupGrid shapefileBasePath gridFilePath minLat minLon maxLat maxLon resolution
+   * </pre>
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 7) {
+      System.err.println(
+          "Usage: WrsLookupGrid shapefileBasePath gridFilePath minLat minLon maxLat maxLon"
+              + " resolution");
+      System.exit(1);
+    }
+
+    WrsIndex index = WrsIndex.load(args[0]);
+    Envelope bounds =
+        new Envelope(
+            Double.parseDouble(args[3]),
+            Double.parseDouble(args[5]),
+            Double.parseDouble(args[2]),
+            Double.parseDouble(args[4]));
+    build(index, bounds, Double.parseDouble(args[6]), args[1]);
+  }
+}
@@ -0,0 +1,199 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Minimal ESRI shapefile reader for the WRS-2 descending footprints. It only understands what the
+ * USGS WRS2_descending distribution uses: polygon records in the .shp file and the PATH/ROW
+ * numeric attributes in the companion .dbf file.
+ */
+public class WrsShapefileReader {
+
+  private static final int SHP_HEADER_LENGTH = 100;
+  private static final int SHAPE_TYPE_NULL = 0;
+  private static final int SHAPE_TYPE_POLYGON = 5;
+  private static final int SHAPE_TYPE_POLYGON_Z = 15;
+  private static final int SHAPE_TYPE_POLYGON_M = 25;
+
+  private static final int DBF_FIELD_DESCRIPTOR_LENGTH = 32;
+  private static final byte DBF_HEADER_TERMINATOR = 0x0D;
+  private static final byte DBF_DELETED_RECORD = 0x2A;
+
+  private static final String PATH_FIELD = "PATH";
+  private static final String ROW_FIELD = "ROW";
+
+  private final GeometryFactory geometryFactory;
+
+  public WrsShapefileReader(GeometryFactory geometryFactory) {
+    this.geometryFactory = geometryFactory;
+  }
+
+  /**
+   * Reads every WRS-2 tile of the shapefile.
+   *
+   * @param shapefileBasePath shapefile path without extension (e.g.
+   *     resources/WRS2_descending/WRS2_descending)
+   * @return tiles in shapefile record order
+   */
+  public List<WrsTile> read(String shapefileBasePath) throws IOException {
+    ByteBuffer shp = map(shapefileBasePath + ".shp");
+    ByteBuffer dbf = map(shapefileBasePath + ".dbf");
+
+    DbfTable attributes = new DbfTable(dbf);
+    int pathField = attributes.fieldIndex(PATH_FIELD);
+    int rowField = attributes.fieldIndex(ROW_FIELD);
+
+    List<WrsTile> tiles = new ArrayList<WrsTile>(attributes.recordCount);
+    shp.position(SHP_HEADER_LENGTH);
+    int recordIndex = 0;
+    while (shp.remaining() >= 8 && recordIndex < attributes.recordCount) {
+      shp.order(ByteOrder.BIG_ENDIAN);
+      shp.getInt(); // record number
+      int contentLength = shp.getInt() * 2;
+      int contentStart = shp.position();
+
+      shp.order(ByteOrder.LITTLE_ENDIAN);
+      int shapeType = shp.getInt();
+      if (shapeType != SHAPE_TYPE_NULL && !attributes.isDeleted(recordIndex)) {
+        if (shapeType != SHAPE_TYPE_POLYGON
+            && shapeType != SHAPE_TYPE_POLYGON_Z
+            && shapeType != SHAPE_TYPE_POLYGON_M) {
+          throw new IOException("Unsupported shape type [" + shapeType + "] in WRS shapefile");
+        }
+        Geometry footprint = readPolygon(shp);
+        int path = Integer.parseInt(attributes.value(recordIndex, pathField));
+        int row = Integer.parseInt(attributes.value(recordIndex, rowField));
+        tiles.add(new WrsTile(tiles.size(), path, row, footprint));
+      }
+
+      shp.position(contentStart + contentLength);
+      recordIndex++;
+    }
+
+    return tiles;
+  }
+
+  private Geometry readPolygon(ByteBuffer shp) {
+    shp.position(shp.position() + 4 * 8); // bounding box
+    int numParts = shp.getInt();
+    int numPoints = shp.getInt();
+
+    int[] partStarts = new int[numParts];
+    for (int i = 0; i < numParts; i++) {
+      partStarts[i] = shp.getInt();
+    }
+
+    Coordinate[] points = new Coordinate[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      points[i] = new Coordinate(shp.getDouble(), shp.getDouble());
+    }
+
+    // Shapefile shells are clockwise and holes are counter-clockwise; a hole belongs to the
+    // shell that precedes it.
+    List<LinearRing> shells = new ArrayList<LinearRing>();
+    List<List<LinearRing>> holes = new ArrayList<List<LinearRing>>();
+    for (int i = 0; i < numParts; i++) {
+      int end = i + 1 < numParts ? partStarts[i + 1] : numPoints;
+      Coordinate[] ringPoints = new Coordinate[end - partStarts[i]];
+      System.arraycopy(points, partStarts[i], ringPoints, 0, ringPoints.length);
+      LinearRing ring = geometryFactory.createLinearRing(ringPoints);
+
+      if (shells.isEmpty() || !Orientation.isCCW(ringPoints)) {
+        shells.add(ring);
+        holes.add(new ArrayList<LinearRing>());
+      } else {
+        holes.get(holes.size() - 1).add(ring);
+      }
+    }
+
+    Polygon[] polygons = new Polygon[shells.size()];
+    for (int i = 0; i < polygons.length; i++) {
+      List<LinearRing> shellHoles = holes.get(i);
+      polygons[i] =
+          geometryFactory.createPolygon(
+              shells.get(i), shellHoles.toArray(new LinearRing[shellHoles.size()]));
+    }
+
+    return polygons.length == 1 ? polygons[0] : geometryFactory.createMultiPolygon(polygons);
+  }
+
+  private static ByteBuffer map(String filePath) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(filePath, "r");
+        FileChannel channel = file.getChannel()) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /** dBase III attribute table with fixed-width ASCII records. */
+  private static class DbfTable {
+
+    private final ByteBuffer buffer;
+    private final int recordCount;
+    private final int headerLength;
+    private final int recordLength;
+    private final List<String> fieldNames = new ArrayList<String>();
+    private final List<Integer> fieldOffsets = new ArrayList<Integer>();
+    private final List<Integer> fieldLengths = new ArrayList<Integer>();
+
+    DbfTable(ByteBuffer buffer) {
+      this.buffer = buffer;
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      this.recordCount = buffer.getInt(4);
+      this.headerLength = buffer.getShort(8) & 0xFFFF;
+      this.recordLength = buffer.getShort(10) & 0xFFFF;
+
+      int offset = 1; // deletion flag
+      for (int position = DBF_FIELD_DESCRIPTOR_LENGTH;
+          buffer.get(position) != DBF_HEADER_TERMINATOR;
+          position += DBF_FIELD_DESCRIPTOR_LENGTH) {
+        byte[] name = new byte[11];
+        for (int i = 0; i < name.length; i++) {
+          name[i] = buffer.get(position + i);
+        }
+        int length = buffer.get(position + 16) & 0xFF;
+        fieldNames.add(new String(name, StandardCharsets.US_ASCII).trim().replace("\0", ""));
+        fieldOffsets.add(offset);
+        fieldLengths.add(length);
+        offset += length;
+      }
+    }
+
+    int fieldIndex(String name) throws IOException {
+      for (int i = 0; i < fieldNames.size(); i++) {
+        if (fieldNames.get(i).equalsIgnoreCase(name)) {
+          return i;
+        }
+      }
+      throw new IOException("Field [" + name + "] not found in WRS attribute table");
+    }
+
+    boolean isDeleted(int record) {
+      return buffer.get(headerLength + record * recordLength) == DBF_DELETED_RECORD;
+    }
+
+    String value(int record, int field) {
+      int start = headerLength + record * recordLength + fieldOffsets.get(field);
+      byte[] raw = new byte[fieldLengths.get(field)];
+      for (int i = 0; i < raw.length; i++) {
+        raw[i] = buffer.get(start + i);
+      }
+      String value = new String(raw, StandardCharsets.US_ASCII).trim();
+      int decimalPoint = value.indexOf('.');
+      return decimalPoint >= 0 ? value.substring(0, decimalPoint) : value;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+
+/** A Landsat WRS-2 scene footprint (path/row) loaded from the WRS2_descending shapefile. */
+public class WrsTile {
+
+  private final int ordinal;
+  private final int path;
+  private final int row;
+  private final Geometry footprint;
+  private final PreparedGeometry preparedFootprint;
+
+  /**
+   * @param ordinal position of the tile record in the shapefile
+   * @param path WRS-2 path of the scene
+   * @param row WRS-2 row of the scene
+   * @param footprint scene polygon in lon/lat (WGS84) coordinates
+   */
+  public WrsTile(int ordinal, int path, int row, Geometry footprint) {
+    this.ordinal = ordinal;
+    this.path = path;
+    this.row = row;
+    this.footprint = footprint;
+    this.preparedFootprint = PreparedGeometryFactory.prepare(footprint);
+  }
+
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  public int getPath() {
+    return path;
+  }
+
+  public int getRow() {
+    return row;
+  }
+
+  public Geometry getFootprint() {
+    return footprint;
+  }
+
+  public PreparedGeometry getPreparedFootprint() {
+    return preparedFootprint;
+  }
+
+  /** @return the region identifier following the PPPRRR form used by the Catalog */
+  public String getRegionId() {
+    return formatRegionId(path, row);
+  }
+
+  /** Get path and row and create format PPPRRR, where PPP is path of scene RRR is row of scene */
+  public static String formatRegionId(int path, int row) {
+    return String.format("%03d%03d", path, row);
+  }
+
+  @Override
+  public String toString() {
+    return getRegionId();
+  }
+}
@@ -0,0 +1,165 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.log4j.Logger;
+
+/**
+ * Pool of long-lived get_wrs (Python script) workers started in serve mode. Each worker loads the
+ * WRS-2 shapefile once and answers "lat lon" lines over its stdin/stdout, so a lookup costs one
+ * round trip over a pipe instead of an interpreter startup. Workers that time out or crash are
+ * killed and started again on their next use.
+ */
+public class WrsWorkerPool {
+
+  private static final Logger LOGGER = Logger.getLogger(WrsWorkerPool.class);
+
+  private static final String READY_LINE = "ready";
+  private static final String ERROR_PREFIX = "error";
+  private static final String END_OF_STREAM = "\0eof";
+
+  private final BlockingQueue<Worker> idleWorkers;
+  private final List<Worker> workers;
+  private final long timeoutMillis;
+
+  /**
+   * @param command command that starts a worker in serve mode
+   * @param size number of workers
+   * @param timeoutMillis time limit for each lookup, also used to wait for a free worker
+   */
+  public WrsWorkerPool(List<String> command, int size, long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+    this.idleWorkers = new ArrayBlockingQueue<Worker>(size);
+    this.workers = new ArrayList<Worker>(size);
+    for (int i = 0; i < size; i++) {
+      Worker worker = new Worker(command, i);
+      workers.add(worker);
+      idleWorkers.add(worker);
+    }
+  }
+
+  /**
+   * Gets the scene path/row that contain the point from a pooled worker.
+   *
+   * @param latitude latitude (point coordinate)
+   * @param longitude longitude (point coordinate)
+   * @return scene path/row separated by spaces, as printed by get_wrs
+   */
+  public String getRegionIds(String latitude, String longitude) throws Exception {
+    Worker worker = idleWorkers.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    if (worker == null)
+      throw new TimeoutException("No get_wrs worker became available in " + timeoutMillis + " ms");
+
+    try {
+      return worker.request(latitude + " " + longitude, timeoutMillis);
+    } catch (Exception e) {
+      LOGGER.warn("get_wrs worker " + worker.id + " failed; it will be restarted", e);
+      worker.stop();
+      throw e;
+    } finally {
+      idleWorkers.add(worker);
+    }
+  }
+
+  /** Stops every worker process. */
+  public void shutdown() {
+    for (Worker worker : workers) {
+      worker.stop();
+    }
+  }
+
+  private static class Worker {
+
+    private final List<String> command;
+    private final int id;
+    private Process process;
+    private BufferedWriter input;
+    private BlockingQueue<String> output;
+
+    Worker(List<String> command, int id) {
+      this.command = command;
+      this.id = id;
+    }
+
+    String request(String line, long timeoutMillis) throws Exception {
+      ensureStarted(timeoutMillis);
+
+      input.write(line);
+      input.newLine();
+      input.flush();
+
+      String response = output.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+      if (response == null)
+        throw new TimeoutException("get_wrs worker did not answer in " + timeoutMillis + " ms");
+      if (response.equals(END_OF_STREAM)) throw new IOException("get_wrs worker exited");
+      if (response.startsWith(ERROR_PREFIX)) throw new Exception("get_wrs " + response);
+
+      return response;
+    }
+
+    private void ensureStarted(long timeoutMillis) throws Exception {
+      if (process != null && process.isAlive()) return;
+      stop();
+
+      LOGGER.info("Starting get_wrs worker " + id + ": " + command);
+      process =
+          new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+      input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+      output = new LinkedBlockingQueue<String>();
+      startReader(process, output);
+
+      // the worker loads the whole shapefile before it is ready
+      long deadline = System.currentTimeMillis() + Math.max(timeoutMillis, 60000);
+      while (true) {
+        String line =
+            output.poll(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        if (line == null) throw new TimeoutException("get_wrs worker " + id + " did not start");
+        if (line.equals(END_OF_STREAM)) throw new IOException("get_wrs worker " + id + " exited");
+        if (line.equals(READY_LINE)) break;
+        LOGGER.warn("get_wrs worker " + id + ": " + line);
+      }
+    }
+
+    private void startReader(final Process process, final BlockingQueue<String> output) {
+      Thread reader =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try (BufferedReader reader =
+                      new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                      output.add(line.trim());
+                    }
+                  } catch (IOException e) {
+                    LOGGER.debug("get_wrs worker output closed", e);
+                  } finally {
+                    output.add(END_OF_STREAM);
+                  }
+                }
+              },
+              "get-wrs-worker-" + id);
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    void stop() {
+      if (process != null) {
+        process.destroy();
+        process = null;
+      }
+    }
+  }
+}
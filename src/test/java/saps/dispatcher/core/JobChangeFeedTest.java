@@ -0,0 +1,120 @@
+/* (C)2020 */
+package saps.dispatcher.core;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import saps.dispatcher.core.JobChangeFeed.JobEvent;
+import saps.dispatcher.core.catalog.CatalogFixtures;
+import saps.dispatcher.core.catalog.CatalogTestDatabase;
+import saps.dispatcher.core.catalog.JobCounters;
+import saps.dispatcher.core.catalog.TaskDescriptor;
+import saps.dispatcher.core.catalog.TaskStore;
+
+public class JobChangeFeedTest {
+
+  private BasicDataSource dataSource;
+  private TaskStore store;
+  private JobCounters counters;
+  private JobChangeFeed feed;
+
+  @Before
+  public void setUp() throws Exception {
+    dataSource = CatalogTestDatabase.create();
+    store = new TaskStore(dataSource, 7);
+    counters = new JobCounters(store, null, 60000);
+    feed = new JobChangeFeed(store, 3, 100);
+    counters.addListener(feed);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    dataSource.close();
+  }
+
+  @Test
+  public void testChangesFoundByOnePollAreSentToEveryFollower() throws Exception {
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(3);
+    CatalogFixtures.execute(
+        dataSource, "INSERT INTO jobs (job_id, user_email) VALUES ('job-1', 'user@example.com')");
+    CatalogFixtures.execute(
+        dataSource, "INSERT INTO jobs (job_id, user_email) VALUES ('job-2', 'other@example.com')");
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template("user@example.com"), null);
+    List<TaskDescriptor> otherTasks = CatalogFixtures.tasks(2);
+    store.insertJobTasks("job-2", otherTasks, CatalogFixtures.template("other@example.com"), null);
+    CatalogFixtures.execute(
+        dataSource, "UPDATE tasks SET updated_time = TIMESTAMP '2019-12-01 00:00:00'");
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET updated_time = TIMESTAMP '2020-01-01 00:00:00'"
+            + " WHERE task_id = '"
+            + otherTasks.get(0).getTaskId()
+            + "'");
+    counters.load();
+    JobChangeFeed.Subscription jobFollower = feed.subscribe("job-1", "user@example.com");
+    JobChangeFeed.Subscription userFollower = feed.subscribe(null, "user@example.com");
+    // job-2 changes too, but its owner follows nothing
+    JobChangeFeed.Subscription otherJobFollower = feed.subscribe("job-3", "other@example.com");
+
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'archived', updated_time = TIMESTAMP '2020-01-02 00:00:00'"
+            + " WHERE task_id = '"
+            + tasks.get(0).getTaskId()
+            + "'");
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'failed', updated_time = TIMESTAMP '2020-01-02 00:00:00'"
+            + " WHERE task_id IN (SELECT task_id FROM jobs_tasks WHERE job_id = 'job-2')");
+    counters.poll();
+
+    for (JobChangeFeed.Subscription subscription :
+        new JobChangeFeed.Subscription[] {jobFollower, userFollower}) {
+      JobEvent counts = subscription.next(0);
+      Assert.assertEquals(JobChangeFeed.COUNTERS_EVENT, counts.getName());
+      Assert.assertEquals("job-1", counts.getData().getString("jobId"));
+      Assert.assertEquals(1, counts.getData().getInt("tasksArchived"));
+      JobEvent task = subscription.next(0);
+      Assert.assertEquals(JobChangeFeed.TASK_EVENT, task.getName());
+      Assert.assertEquals(tasks.get(0).getTaskId(), task.getData().getString("taskId"));
+      Assert.assertEquals("archived", task.getData().getString("state"));
+      Assert.assertNull(subscription.next(0));
+    }
+    Assert.assertNull(otherJobFollower.next(0));
+
+    // the next poll looks back at the same update, which is not sent again
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'running', updated_time = TIMESTAMP '2020-01-02 00:00:01'"
+            + " WHERE task_id = '"
+            + tasks.get(1).getTaskId()
+            + "'");
+    counters.poll();
+
+    Assert.assertEquals(JobChangeFeed.COUNTERS_EVENT, jobFollower.next(0).getName());
+    JobEvent task = jobFollower.next(0);
+    Assert.assertEquals(tasks.get(1).getTaskId(), task.getData().getString("taskId"));
+    Assert.assertNull(jobFollower.next(0));
+  }
+
+  @Test
+  public void testFollowersAreLimited() throws Exception {
+    feed.subscribe("job-1", "user@example.com");
+    feed.subscribe("job-3", "user@example.com");
+    JobChangeFeed.Subscription subscription = feed.subscribe(null, "user@example.com");
+
+    try {
+      feed.subscribe("job-2", "user@example.com");
+      Assert.fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    subscription.close();
+    feed.subscribe("job-2", "user@example.com");
+    Assert.assertEquals(3, feed.getSubscriptionCount());
+  }
+}
@@ -0,0 +1,141 @@
+/* (C)2020 */
+package saps.dispatcher.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import saps.catalog.core.Catalog;
+import saps.dispatcher.core.catalog.CatalogFixtures;
+import saps.dispatcher.core.catalog.CatalogTestDatabase;
+import saps.dispatcher.core.catalog.TaskDescriptor;
+import saps.dispatcher.core.catalog.TaskInsertListener;
+import saps.dispatcher.core.catalog.TaskStore;
+import saps.dispatcher.core.catalog.TaskTemplate;
+import saps.dispatcher.core.catalog.TaskWriter;
+
+public class SubmissionDispatcherTest {
+
+  private BasicDataSource dataSource;
+  private Catalog catalog;
+  private SubmissionDispatcher dispatcher;
+  private final AtomicInteger writtenTasks = new AtomicInteger();
+  private final AtomicInteger catalogCalls = new AtomicInteger();
+
+  @Before
+  public void setUp() throws Exception {
+    dataSource = CatalogTestDatabase.create();
+    catalog =
+        (Catalog)
+            Proxy.newProxyInstance(
+                Catalog.class.getClassLoader(),
+                new Class<?>[] {Catalog.class},
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) {
+                    catalogCalls.incrementAndGet();
+                    return null;
+                  }
+                });
+    TaskStore store =
+        new TaskStore(dataSource, 7) {
+          @Override
+          public TaskWriter openJobTaskWriter(
+              String jobId, TaskTemplate template, TaskInsertListener listener)
+              throws SQLException {
+            return new FailingCommitWriter(super.openJobTaskWriter(jobId, template, listener));
+          }
+        };
+    dispatcher = new SubmissionDispatcher(catalog, store);
+
+    CatalogFixtures.execute(
+        dataSource, "INSERT INTO jobs (job_id, user_email) VALUES ('job-1', 'user@example.com')");
+    new TaskStore(dataSource, 7)
+        .insertJobTasks("job-1", CatalogFixtures.tasks(3), CatalogFixtures.template(), null);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    dispatcher.close();
+    dataSource.close();
+  }
+
+  @Test
+  public void testFailedExtensionLeavesTheJobAndItsTasksUnchanged() throws Exception {
+    try {
+      dispatcher.extendJob(
+          "job-1",
+          "-7.5",
+          "-37.0",
+          "-7.4",
+          "-36.9",
+          date(2015, 2, 1),
+          date(2015, 2, 3),
+          new ArrayList<String>());
+      Assert.fail("the extension should fail");
+    } catch (SQLException e) {
+      Assert.assertEquals("commit failed", e.getMessage());
+    }
+
+    Assert.assertTrue(writtenTasks.get() > 0);
+    Assert.assertEquals(3, CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM tasks"));
+    Assert.assertEquals(
+        3,
+        CatalogFixtures.count(
+            dataSource, "SELECT COUNT(*) FROM jobs_tasks WHERE job_id = 'job-1'"));
+    Assert.assertEquals(0, catalogCalls.get());
+
+    JobProgress progress = dispatcher.getJobProgress("job-1");
+    Assert.assertTrue(progress.isFinished());
+    Assert.assertEquals("commit failed", progress.getErrorMessage());
+  }
+
+  private Date date(int year, int month, int day) {
+    return new GregorianCalendar(year, month - 1, day).getTime();
+  }
+
+  /**
+   * Fails to commit after writing one more task, so everything written by the extension is rolled
+   * back on close. The task is written here because the WRS-2 regions of the area are not known
+   * without a shapefile or get_wrs.
+   */
+  private class FailingCommitWriter implements TaskWriter {
+
+    private final TaskWriter writer;
+
+    FailingCommitWriter(TaskWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(TaskDescriptor task) throws SQLException {
+      writer.write(task);
+      writtenTasks.incrementAndGet();
+    }
+
+    @Override
+    public void link(String taskId) throws SQLException {
+      writer.link(taskId);
+    }
+
+    @Override
+    public void commit() throws SQLException {
+      write(CatalogFixtures.tasks(1).get(0));
+      throw new SQLException("commit failed");
+    }
+
+    @Override
+    public void close() throws SQLException {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/* (C)2020 */
+package saps.dispatcher.core;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import saps.dispatcher.core.catalog.TaskDescriptor;
+import saps.dispatcher.core.catalog.TaskInsertListener;
+import saps.dispatcher.core.catalog.TaskStore;
+import saps.dispatcher.core.catalog.TaskTemplate;
+import saps.dispatcher.core.catalog.TaskWriter;
+
+public class TaskGeneratorTest {
+
+  private static final Set<String> REGIONS =
+      new LinkedHashSet<String>(Arrays.asList("215065", "215066"));
+
+  private ExecutorService executor;
+  private RecordingTaskStore taskStore;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(3);
+    taskStore = new RecordingTaskStore();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRangeIsSplitByRegionAndYear() {
+    List<TaskGenerator.Partition> partitions =
+        TaskGenerator.partition(REGIONS, date(2014, 12, 30), date(2016, 1, 2));
+
+    Assert.assertEquals(6, partitions.size());
+    Assert.assertEquals("215065", partitions.get(0).getRegion());
+    Assert.assertEquals(date(2014, 12, 30), partitions.get(0).getFirstDay());
+    Assert.assertEquals(date(2014, 12, 31), partitions.get(0).getLastDay());
+    Assert.assertEquals("215066", partitions.get(3).getRegion());
+    Assert.assertEquals(date(2015, 1, 1), partitions.get(3).getFirstDay());
+    Assert.assertEquals(date(2015, 12, 31), partitions.get(3).getLastDay());
+    Assert.assertEquals(date(2016, 1, 2), partitions.get(5).getLastDay());
+  }
+
+  @Test
+  public void testTaskIdsFollowPartitionOrder() throws Exception {
+    TaskGenerator generator = new TaskGenerator(taskStore, executor);
+    JobProgress progress = new JobProgress("job-1");
+
+    List<String> taskIds = new ArrayList<String>();
+    int created =
+        generator.generateAndInsert(
+            "job-1",
+            REGIONS,
+            date(2014, 12, 30),
+            date(2015, 1, 2),
+            template(),
+            everyDay(),
+            progress,
+            false,
+            taskIds);
+
+    // landsat_7 and landsat_8 were both in operation, one task per dataset a day
+    Assert.assertEquals(16, created);
+    Assert.assertEquals(16, taskIds.size());
+    Assert.assertEquals(16, progress.getGeneratedTasks());
+    Assert.assertEquals(16, progress.getInsertedTasks());
+
+    List<String> expected = new ArrayList<String>();
+    for (TaskDescriptor task : sorted(taskStore.inserted)) {
+      expected.add(task.getTaskId());
+    }
+    Assert.assertEquals(expected, taskIds);
+  }
+
+  @Test
+  public void testFailedPartitionDeletesTheTasksOfTheJob() throws Exception {
+    taskStore.failingRegion = "215066";
+    TaskGenerator generator = new TaskGenerator(taskStore, executor);
+
+    try {
+      generator.generateAndInsert(
+          "job-1",
+          REGIONS,
+          date(2014, 12, 30),
+          date(2015, 1, 2),
+          template(),
+          everyDay(),
+          new JobProgress("job-1"),
+          false,
+          null);
+      Assert.fail();
+    } catch (SQLException e) {
+      // expected
+    }
+
+    Assert.assertEquals(Collections.singletonList("job-1"), taskStore.deletedJobs);
+  }
+
+  @Test
+  public void testMatchingTasksOfOtherJobsAreLinked() throws Exception {
+    taskStore.reusableTasks.put(
+        TaskStore.sceneKey((int) LocalDate.of(2015, 1, 1).toEpochDay(), "landsat_8"), "archived-1");
+    TaskGenerator generator = new TaskGenerator(taskStore, executor);
+    JobProgress progress = new JobProgress("job-1");
+    List<String> taskIds = new ArrayList<String>();
+
+    int tasks =
+        generator.generateAndInsert(
+            "job-1",
+            Collections.singleton("215065"),
+            date(2015, 1, 1),
+            date(2015, 1, 2),
+            template(),
+            everyDay(),
+            progress,
+            true,
+            taskIds);
+
+    Assert.assertEquals(4, tasks);
+    Assert.assertEquals(3, progress.getInsertedTasks());
+    Assert.assertEquals(1, progress.getReusedTasks());
+    Assert.assertEquals(Collections.singletonList("archived-1"), taskStore.linked);
+    Assert.assertEquals("archived-1", taskIds.get(1));
+  }
+
+  @Test
+  public void testOnlyScenesNotCoveredByTheJobAreCreated() throws Exception {
+    Set<String> covered = new HashSet<String>();
+    int firstDay = (int) LocalDate.of(2015, 1, 1).toEpochDay();
+    covered.add(TaskStore.sceneKey("215065", firstDay, "landsat_7"));
+    covered.add(TaskStore.sceneKey("215065", firstDay, "landsat_8"));
+    covered.add(TaskStore.sceneKey("215066", firstDay + 1, "landsat_8"));
+    TaskGenerator generator = new TaskGenerator(taskStore, executor);
+    List<String> taskIds = new ArrayList<String>();
+
+    int created =
+        generator.generateMissingAndInsert(
+            "job-1",
+            REGIONS,
+            date(2015, 1, 1),
+            date(2015, 1, 2),
+            template(),
+            everyDay(),
+            covered,
+            new JobProgress("job-1"),
+            taskIds);
+
+    Assert.assertEquals(5, created);
+    Assert.assertEquals(5, taskStore.inserted.size());
+    Assert.assertEquals(5, taskIds.size());
+    for (TaskDescriptor task : taskStore.inserted) {
+      Assert.assertFalse(
+          covered.contains(
+              TaskStore.sceneKey(task.getRegion(), task.getEpochDay(), task.getDataset())));
+    }
+  }
+
+  private static List<TaskDescriptor> sorted(List<TaskDescriptor> tasks) {
+    List<TaskDescriptor> sorted = new ArrayList<TaskDescriptor>(tasks);
+    Collections.sort(
+        sorted,
+        (a, b) -> {
+          int year = Integer.compare(year(a.getImageDate()), year(b.getImageDate()));
+          if (year != 0) return year;
+          int region = a.getRegion().compareTo(b.getRegion());
+          if (region != 0) return region;
+          int day = a.getImageDate().compareTo(b.getImageDate());
+          return day != 0 ? day : a.getDataset().compareTo(b.getDataset());
+        });
+    return sorted;
+  }
+
+  private static int year(Date date) {
+    GregorianCalendar calendar = new GregorianCalendar();
+    calendar.setTime(date);
+    return calendar.get(GregorianCalendar.YEAR);
+  }
+
+  private static TaskGenerator.SceneLookup everyDay() {
+    return new TaskGenerator.SceneLookup() {
+      @Override
+      public List<String> getDatasets(String region, Date day, List<String> datasets) {
+        List<String> sortedDatasets = new ArrayList<String>(datasets);
+        Collections.sort(sortedDatasets);
+        return sortedDatasets;
+      }
+    };
+  }
+
+  private static Date date(int year, int month, int day) {
+    return new GregorianCalendar(year, month - 1, day).getTime();
+  }
+
+  private static TaskTemplate template() {
+    return new TaskTemplate(
+        5,
+        "user@example.com",
+        "googleapis",
+        "sha256:a",
+        "default",
+        "sha256:b",
+        "ufcg-sebal",
+        "sha256:c");
+  }
+
+  private static class RecordingTaskStore extends TaskStore {
+
+    private final List<TaskDescriptor> inserted =
+        Collections.synchronizedList(new ArrayList<TaskDescriptor>());
+    private final List<String> linked = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> deletedJobs = new ArrayList<String>();
+    private final Map<String, String> reusableTasks = new HashMap<String, String>();
+    private volatile String failingRegion;
+
+    RecordingTaskStore() {
+      super(null, 100);
+    }
+
+    @Override
+    public TaskWriter openJobTaskWriter(
+        String jobId, TaskTemplate template, final TaskInsertListener listener) {
+      return new TaskWriter() {
+        private final List<TaskDescriptor> pending = new ArrayList<TaskDescriptor>();
+        private final List<String> pendingLinks = new ArrayList<String>();
+
+        @Override
+        public void write(TaskDescriptor task) throws SQLException {
+          if (task.getRegion().equals(failingRegion)) throw new SQLException("Insert failed");
+          pending.add(task);
+        }
+
+        @Override
+        public void link(String taskId) {
+          pendingLinks.add(taskId);
+        }
+
+        @Override
+        public void commit() {
+          inserted.addAll(pending);
+          linked.addAll(pendingLinks);
+          listener.tasksInserted(pending.size());
+        }
+
+        @Override
+        public void close() {}
+      };
+    }
+
+    @Override
+    public Map<String, String> findReusableTasks(
+        String region, Date initDate, Date endDate, TaskTemplate template) {
+      return reusableTasks;
+    }
+
+    @Override
+    public int deleteJobTasks(String jobId) {
+      deletedJobs.add(jobId);
+      return inserted.size();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import javax.sql.DataSource;
+
+/**
+ * Statements, tasks and templates shared by the tests that run against {@link CatalogTestDatabase}.
+ */
+public class CatalogFixtures {
+
+  private CatalogFixtures() {}
+
+  public static void execute(DataSource dataSource, String sql) throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+
+  public static int count(DataSource dataSource, String sql) throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(sql)) {
+      resultSet.next();
+      return resultSet.getInt(1);
+    }
+  }
+
+  /** It gives Landsat 8 tasks of region 215065 on consecutive days from 2015-01-01. */
+  public static List<TaskDescriptor> tasks(int count) {
+    return tasks(count, "landsat_8");
+  }
+
+  /** It gives tasks of a dataset and region 215065 on consecutive days from 2015-01-01. */
+  public static List<TaskDescriptor> tasks(int count, String dataset) {
+    List<TaskDescriptor> tasks = new ArrayList<TaskDescriptor>();
+    for (int i = 0; i < count; i++) {
+      tasks.add(
+          new TaskDescriptor(
+              UUID.randomUUID().toString(),
+              new Date(1420070400000L + i * 86400000L),
+              dataset,
+              "215065"));
+    }
+    return tasks;
+  }
+
+  public static TaskTemplate template() {
+    return template("user@example.com");
+  }
+
+  public static TaskTemplate template(String userEmail) {
+    return new TaskTemplate(
+        5, userEmail, "googleapis", "sha256:a", "default", "sha256:b", "ufcg-sebal", "sha256:c");
+  }
+
+  public static TaskTemplate template(String processingTag, String processingDigest) {
+    return new TaskTemplate(
+        5,
+        "user@example.com",
+        "googleapis",
+        "sha256:a",
+        "default",
+        "sha256:b",
+        processingTag,
+        processingDigest);
+  }
+}
@@ -0,0 +1,46 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.UUID;
+import org.apache.commons.dbcp2.BasicDataSource;
+
+/**
+ * In-memory H2 database with the catalog tables written by the dispatcher. The tables restate
+ * {@link CatalogSchema}, so they cannot tell whether it matches saps-catalog; {@link
+ * TaskStore#checkSchema} does that against the catalog in use.
+ */
+public class CatalogTestDatabase {
+
+  private CatalogTestDatabase() {}
+
+  public static BasicDataSource create() throws Exception {
+    BasicDataSource dataSource = new BasicDataSource();
+    dataSource.setDriverClassName("org.h2.Driver");
+    dataSource.setUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.execute(
+          "CREATE TABLE tasks (task_id VARCHAR(100) PRIMARY KEY, dataset VARCHAR(100),"
+              + " region VARCHAR(100), image_date DATE, state VARCHAR(100),"
+              + " arrebol_job_id VARCHAR(100), federation_member VARCHAR(100), priority INTEGER,"
+              + " user_email VARCHAR(100), inputdownloading_tag VARCHAR(100),"
+              + " inputdownloading_digest VARCHAR(100), preprocessing_tag VARCHAR(100),"
+              + " preprocessing_digest VARCHAR(100), processing_tag VARCHAR(100),"
+              + " processing_digest VARCHAR(100), creation_time TIMESTAMP,"
+              + " updated_time TIMESTAMP, status VARCHAR(100), error_msg VARCHAR(255))");
+      statement.execute(CatalogSchema.Tasks.UPDATED_TIME_INDEX_DDL);
+      statement.execute(
+          "CREATE TABLE jobs (job_id VARCHAR(100) PRIMARY KEY, user_email VARCHAR(100))");
+      statement.execute(
+          "CREATE TABLE jobs_tasks (job_id VARCHAR(100), task_id VARCHAR(100),"
+              + " PRIMARY KEY (job_id, task_id))");
+      statement.execute(
+          "CREATE TABLE landsat_images (region VARCHAR(100), image_date DATE,"
+              + " dataset VARCHAR(100))");
+    }
+    return dataSource;
+  }
+}
@@ -0,0 +1,153 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobCountersTest {
+
+  private BasicDataSource dataSource;
+  private TaskStore store;
+  private File snapshotFile;
+
+  @Before
+  public void setUp() throws Exception {
+    dataSource = CatalogTestDatabase.create();
+    store = new TaskStore(dataSource, 7);
+    snapshotFile = File.createTempFile("job-counters", ".json");
+    snapshotFile.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    dataSource.close();
+    snapshotFile.delete();
+  }
+
+  @Test
+  public void testPollCountsAgainOnlyJobsUpdatedSinceTheHighWaterMark() throws Exception {
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(4);
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    store.insertJobTasks("job-2", CatalogFixtures.tasks(2), CatalogFixtures.template(), null);
+    CatalogFixtures.execute(
+        dataSource, "UPDATE tasks SET updated_time = TIMESTAMP '2019-12-01 00:00:00'");
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET updated_time = TIMESTAMP '2020-01-01 00:00:00'"
+            + " WHERE task_id = '"
+            + tasks.get(3).getTaskId()
+            + "'");
+    JobCounters counters = new JobCounters(store, null, 1000);
+    counters.load();
+
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'archived', updated_time = TIMESTAMP '2020-01-02 00:00:00'"
+            + " WHERE task_id = '"
+            + tasks.get(0).getTaskId()
+            + "'");
+
+    Assert.assertEquals(1, counters.poll());
+    Assert.assertEquals(1, summary(counters, "job-1").getArchivedTasks());
+    Assert.assertEquals(3, summary(counters, "job-1").getOngoingTasks());
+    Assert.assertEquals(2, summary(counters, "job-2").getTotalTasks());
+    Assert.assertEquals(Timestamp.valueOf("2020-01-02 00:00:00"), counters.getHighWaterMark());
+  }
+
+  @Test
+  public void testReconcileCorrectsCountsThatPollingMissed() throws Exception {
+    store.insertJobTasks("job-1", CatalogFixtures.tasks(3), CatalogFixtures.template(), null);
+    JobCounters counters = new JobCounters(store, null, 0);
+    counters.load();
+
+    store.deleteJobTasks("job-1");
+
+    Assert.assertEquals(3, summary(counters, "job-1").getTotalTasks());
+    Assert.assertEquals(1, counters.reconcile());
+    Assert.assertEquals(0, summary(counters, "job-1").getTotalTasks());
+  }
+
+  @Test
+  public void testCountsAreResumedFromTheSnapshot() throws Exception {
+    store.insertJobTasks("job-1", CatalogFixtures.tasks(3), CatalogFixtures.template(), null);
+    CatalogFixtures.execute(
+        dataSource, "UPDATE tasks SET updated_time = TIMESTAMP '2020-01-01 00:00:00'");
+    JobCounters counters = new JobCounters(store, snapshotFile, 0);
+    counters.load();
+    counters.close();
+    // not seen by polling, so only the snapshot can give the count of job-1
+    CatalogFixtures.execute(dataSource, "DELETE FROM jobs_tasks");
+
+    JobCounters resumed = new JobCounters(store, snapshotFile, 0);
+    resumed.load();
+
+    Assert.assertEquals(3, summary(resumed, "job-1").getTotalTasks());
+    Assert.assertEquals(counters.getHighWaterMark(), resumed.getHighWaterMark());
+  }
+
+  @Test
+  public void testJobsNotCountedYetAreCountedOnRequest() throws Exception {
+    JobCounters counters = new JobCounters(store, null, 0);
+    counters.load();
+    store.insertJobTasks("job-1", CatalogFixtures.tasks(2), CatalogFixtures.template(), null);
+
+    Assert.assertEquals(
+        2, counters.get(Arrays.asList("job-1", "job-2")).get("job-1").getTotalTasks());
+    Assert.assertEquals(0, summary(counters, "job-2").getTotalTasks());
+  }
+
+  @Test
+  public void testListenersAreToldOnceTheCountsAreReleased() throws Exception {
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(2);
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    final JobCounters counters = new JobCounters(store, null, 0);
+    counters.load();
+    final List<Timestamp> seen = new ArrayList<Timestamp>();
+    counters.addListener(
+        new JobCounters.Listener() {
+          @Override
+          public void jobsChanged(Map<String, JobSummary> changed, Timestamp since)
+              throws Exception {
+            // another thread reading the counts would wait forever if they were held
+            seen.add(
+                Executors.newSingleThreadExecutor()
+                    .submit(
+                        new Callable<Timestamp>() {
+                          @Override
+                          public Timestamp call() {
+                            return counters.getHighWaterMark();
+                          }
+                        })
+                    .get(5, TimeUnit.SECONDS));
+          }
+        });
+
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'archived', updated_time = TIMESTAMP '2100-01-01 00:00:00'"
+            + " WHERE task_id = '"
+            + tasks.get(0).getTaskId()
+            + "'");
+    counters.poll();
+
+    Assert.assertEquals(Arrays.asList(Timestamp.valueOf("2100-01-01 00:00:00")), seen);
+  }
+
+  private JobSummary summary(JobCounters counters, String jobId) throws SQLException {
+    return counters.get(Collections.singleton(jobId)).get(jobId);
+  }
+}
@@ -0,0 +1,95 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SceneIndexTest {
+
+  private static final List<String> DATASETS = Arrays.asList("landsat_7", "landsat_8");
+
+  private BasicDataSource dataSource;
+
+  @Before
+  public void setUp() throws Exception {
+    dataSource = CatalogTestDatabase.create();
+    execute(
+        "INSERT INTO landsat_images VALUES ('215065', DATE '2015-01-05', 'landsat_8'),"
+            + " ('215065', DATE '2015-01-05', 'LANDSAT_7'),"
+            + " ('215066', DATE '2015-01-21', 'landsat_8'),"
+            + " ('215066', DATE '1984-03-01', 'landsat_5')");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    dataSource.close();
+  }
+
+  @Test
+  public void testScenesAndDatasetsAreAnsweredFromMemory() throws Exception {
+    SceneIndex index = new SceneIndex(dataSource, 30);
+    index.load();
+
+    Assert.assertEquals(4, index.size());
+    Assert.assertTrue(index.contains("215065", date(2015, 1, 5)));
+    Assert.assertTrue(index.contains("215066", date(1984, 3, 1)));
+    Assert.assertFalse(index.contains("215065", date(2015, 1, 6)));
+    Assert.assertFalse(index.contains("216065", date(2015, 1, 5)));
+
+    Assert.assertEquals(DATASETS, index.getDatasets("215065", date(2015, 1, 5), DATASETS));
+    Assert.assertEquals(
+        Arrays.asList("landsat_8"), index.getDatasets("215066", date(2015, 1, 21), DATASETS));
+    Assert.assertTrue(index.getDatasets("215066", date(1984, 3, 1), DATASETS).isEmpty());
+  }
+
+  @Test
+  public void testRefreshAddsNewScenes() throws Exception {
+    SceneIndex index = new SceneIndex(dataSource, 30);
+    index.load();
+
+    execute(
+        "INSERT INTO landsat_images VALUES ('215065', DATE '2015-02-06', 'landsat_8'),"
+            + " ('216066', DATE '2015-01-10', 'landsat_8')");
+    index.refresh();
+
+    Assert.assertEquals(6, index.size());
+    Assert.assertTrue(index.contains("215065", date(2015, 2, 6)));
+    Assert.assertTrue(index.contains("216066", date(2015, 1, 10)));
+  }
+
+  @Test
+  public void testDatasetsNamedDifferentlyAreReported() throws Exception {
+    SceneIndex index = new SceneIndex(dataSource, 30);
+    index.load();
+    List<String> known = Arrays.asList("landsat_5", "landsat_7", "landsat_8");
+
+    Assert.assertTrue(index.getUnknownDatasets(known).isEmpty());
+
+    execute("INSERT INTO landsat_images VALUES ('215065', DATE '2015-02-06', 'LC08')");
+    index.refresh();
+
+    Assert.assertEquals(
+        new HashSet<String>(Arrays.asList("lc08")), index.getUnknownDatasets(known));
+  }
+
+  private Date date(int year, int month, int day) {
+    return new GregorianCalendar(year, month - 1, day).getTime();
+  }
+
+  private void execute(String sql) throws Exception {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
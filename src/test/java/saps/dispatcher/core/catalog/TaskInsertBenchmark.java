@@ -0,0 +1,127 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import org.apache.commons.dbcp2.BasicDataSource;
+import saps.catalog.core.Catalog;
+import saps.catalog.core.jdbc.JDBCCatalog;
+import saps.catalog.core.retry.CatalogUtils;
+
+/**
+ * Compares rows per second of the per-row task insertion (CatalogUtils) against the batched
+ * single-transaction insertion (TaskStore). It is not a unit test and it writes two jobs into the
+ * configured catalog, so point it to a scratch database and run it by hand from the dispatcher
+ * directory:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:target/lib/* \
+ *     saps.dispatcher.core.catalog.TaskInsertBenchmark config/dispatcher.conf userEmail [tasks]
+ * </pre>
+ */
+public class TaskInsertBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    Properties properties = new Properties();
+    try (FileInputStream input = new FileInputStream(args[0])) {
+      properties.load(input);
+    }
+    String userEmail = args[1];
+    int taskCount = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+    int batchSize =
+        Integer.parseInt(properties.getProperty(TaskStore.TASK_INSERT_BATCH_SIZE_KEY, "0"));
+    if (batchSize <= 0) batchSize = TaskStore.DEFAULT_TASK_INSERT_BATCH_SIZE;
+
+    Catalog catalog = new JDBCCatalog(properties);
+    TaskTemplate template =
+        new TaskTemplate(
+            0,
+            userEmail,
+            "googleapis",
+            "benchmark",
+            "default",
+            "benchmark",
+            "ufcg-sebal",
+            "benchmark");
+
+    String perRowJobId = createJob(catalog, userEmail, "per-row insert benchmark");
+    List<TaskDescriptor> tasks = tasks(taskCount);
+    long start = System.nanoTime();
+    for (TaskDescriptor task : tasks) {
+      CatalogUtils.insertJobTask(catalog, task.getTaskId(), perRowJobId, "benchmark link");
+    }
+    for (TaskDescriptor task : tasks) {
+      CatalogUtils.addNewTask(
+          catalog,
+          task.getTaskId(),
+          task.getDataset(),
+          task.getRegion(),
+          task.getImageDate(),
+          template.getPriority(),
+          template.getUserEmail(),
+          template.getInputdownloadingTag(),
+          template.getInputdownloadingDigest(),
+          template.getPreprocessingTag(),
+          template.getPreprocessingDigest(),
+          template.getProcessingTag(),
+          template.getProcessingDigest(),
+          "benchmark task");
+    }
+    long perRowNanos = System.nanoTime() - start;
+
+    BasicDataSource dataSource = TaskStore.createDataSource(properties);
+    TaskStore store = new TaskStore(dataSource, batchSize);
+    String batchedJobId = createJob(catalog, userEmail, "batched insert benchmark");
+    tasks = tasks(taskCount);
+    start = System.nanoTime();
+    store.insertJobTasks(batchedJobId, tasks, template, null);
+    long batchedNanos = System.nanoTime() - start;
+    dataSource.close();
+
+    System.out.println(
+        String.format(
+            "per-row: %d tasks in %.1f ms, %.0f rows/s",
+            taskCount, perRowNanos / 1e6, 2 * taskCount / (perRowNanos / 1e9)));
+    System.out.println(
+        String.format(
+            "batched: %d tasks in %.1f ms, %.0f rows/s (batch size %d)",
+            taskCount, batchedNanos / 1e6, 2 * taskCount / (batchedNanos / 1e9), batchSize));
+  }
+
+  private static String createJob(Catalog catalog, String userEmail, String label) {
+    String jobId = UUID.randomUUID().toString();
+    Date now = new Date();
+    CatalogUtils.addNewUserJob(
+        catalog,
+        jobId,
+        "-8.0",
+        "-38.0",
+        "-7.0",
+        "-37.0",
+        userEmail,
+        label,
+        now,
+        now,
+        0,
+        new ArrayList<String>(),
+        "add benchmark job");
+    return jobId;
+  }
+
+  private static List<TaskDescriptor> tasks(int count) {
+    List<TaskDescriptor> tasks = new ArrayList<TaskDescriptor>(count);
+    for (int i = 0; i < count; i++) {
+      tasks.add(
+          new TaskDescriptor(
+              UUID.randomUUID().toString(),
+              new Date(1420070400000L + (i / 20) * 86400000L),
+              "landsat_8",
+              String.format("%03d%03d", 215 + i % 20, 65)));
+    }
+    return tasks;
+  }
+}
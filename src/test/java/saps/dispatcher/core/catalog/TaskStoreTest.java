@@ -0,0 +1,525 @@
+/* (C)2020 */
+package saps.dispatcher.core.catalog;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import saps.common.core.model.SapsImage;
+import saps.common.core.model.enums.ImageTaskState;
+
+public class TaskStoreTest {
+
+  private BasicDataSource dataSource;
+
+  @Before
+  public void setUp() throws Exception {
+    dataSource = CatalogTestDatabase.create();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    dataSource.close();
+  }
+
+  @Test
+  public void testTasksAndLinksAreInsertedInBatches() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(50, "landsat_8");
+
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+
+    Assert.assertEquals(
+        50,
+        CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM tasks WHERE state = 'created'"));
+    Assert.assertEquals(
+        50,
+        CatalogFixtures.count(
+            dataSource, "SELECT COUNT(*) FROM jobs_tasks WHERE job_id = 'job-1'"));
+  }
+
+  @Test
+  public void testSchemaCheckNamesTheMissingColumn() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    store.checkSchema();
+
+    CatalogFixtures.execute(
+        dataSource, "ALTER TABLE landsat_images ALTER COLUMN dataset RENAME TO collection");
+    try {
+      store.checkSchema();
+      Assert.fail();
+    } catch (SQLException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().toLowerCase().contains("dataset"));
+    }
+
+    CatalogFixtures.execute(
+        dataSource, "ALTER TABLE landsat_images ALTER COLUMN collection RENAME TO dataset");
+    CatalogFixtures.execute(dataSource, "ALTER TABLE tasks DROP COLUMN federation_member");
+    try {
+      store.checkSchema();
+      Assert.fail();
+    } catch (SQLException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().toLowerCase().contains("federation_member"));
+    }
+  }
+
+  @Test
+  public void testUpdatedTimeIndexIsRequired() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    store.checkUpdatedTimeIndex();
+
+    CatalogFixtures.execute(dataSource, "DROP INDEX tasks_updated_time_idx");
+    try {
+      store.checkUpdatedTimeIndex();
+      Assert.fail();
+    } catch (SQLException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("updated_time"));
+    }
+  }
+
+  @Test
+  public void testFailedInsertLeavesNoRows() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(20, "landsat_8");
+    // a repeated task id breaks the primary key in the last batch
+    tasks.add(tasks.get(0));
+
+    try {
+      store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+      Assert.fail();
+    } catch (SQLException e) {
+      // expected
+    }
+
+    Assert.assertEquals(0, CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM tasks"));
+    Assert.assertEquals(0, CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM jobs_tasks"));
+  }
+
+  @Test
+  public void testWriterThatIsNotCommittedLeavesNoRows() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+
+    try (TaskWriter writer = store.openJobTaskWriter("job-1", CatalogFixtures.template(), null)) {
+      for (TaskDescriptor task : CatalogFixtures.tasks(20, "landsat_8")) {
+        writer.write(task);
+      }
+    }
+
+    Assert.assertEquals(0, CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM tasks"));
+    Assert.assertEquals(0, CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM jobs_tasks"));
+  }
+
+  @Test
+  public void testTasksCommittedLateGetTheCommitTimeAsUpdateTime() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    store.setMaxCommitDelayMillis(0);
+
+    try (TaskWriter writer = store.openJobTaskWriter("job-1", CatalogFixtures.template(), null)) {
+      for (TaskDescriptor task : CatalogFixtures.tasks(10, "landsat_8")) {
+        writer.write(task);
+      }
+      Thread.sleep(5);
+      writer.commit();
+    }
+
+    Assert.assertEquals(
+        10,
+        CatalogFixtures.count(
+            dataSource, "SELECT COUNT(*) FROM tasks WHERE updated_time > creation_time"));
+  }
+
+  @Test
+  public void testJobTasksAreDeletedWithTheirLinks() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    store.insertJobTasks(
+        "job-1", CatalogFixtures.tasks(10, "landsat_8"), CatalogFixtures.template(), null);
+    store.insertJobTasks(
+        "job-2", CatalogFixtures.tasks(5, "landsat_8"), CatalogFixtures.template(), null);
+
+    Assert.assertEquals(10, store.deleteJobTasks("job-1"));
+
+    Assert.assertEquals(5, CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM tasks"));
+    Assert.assertEquals(
+        0,
+        CatalogFixtures.count(
+            dataSource, "SELECT COUNT(*) FROM jobs_tasks WHERE job_id = 'job-1'"));
+    Assert.assertEquals(
+        5,
+        CatalogFixtures.count(
+            dataSource, "SELECT COUNT(*) FROM jobs_tasks WHERE job_id = 'job-2'"));
+  }
+
+  @Test
+  public void testTasksReusedByAnotherJobAreNotDeleted() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(3, "landsat_8");
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    try (TaskWriter writer = store.openJobTaskWriter("job-2", CatalogFixtures.template(), null)) {
+      writer.link(tasks.get(0).getTaskId());
+      writer.write(CatalogFixtures.tasks(1, "landsat_7").get(0));
+      writer.commit();
+    }
+
+    Assert.assertEquals(1, store.deleteJobTasks("job-2"));
+
+    Assert.assertEquals(3, CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM tasks"));
+    Assert.assertEquals(
+        0,
+        CatalogFixtures.count(
+            dataSource, "SELECT COUNT(*) FROM jobs_tasks WHERE job_id = 'job-2'"));
+  }
+
+  @Test
+  public void testReusableTasksMatchTagsAndDigestsAndPreferArchived() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(4, "landsat_8");
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    List<TaskDescriptor> archived = CatalogFixtures.tasks(1, "landsat_8");
+    store.insertJobTasks("job-2", archived, CatalogFixtures.template(), null);
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'archived' WHERE task_id = '"
+            + archived.get(0).getTaskId()
+            + "'");
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'failed' WHERE task_id = '" + tasks.get(1).getTaskId() + "'");
+    store.insertJobTasks(
+        "job-3",
+        CatalogFixtures.tasks(3, "landsat_8"),
+        new TaskTemplate(
+            5, "user@example.com", "googleapis", "sha256:a", "default", "sha256:b", "other", "x"),
+        null);
+    List<TaskDescriptor> otherUserTasks = CatalogFixtures.tasks(5, "landsat_8");
+    store.insertJobTasks(
+        "job-4", otherUserTasks, CatalogFixtures.template("other@example.com"), null);
+
+    Map<String, String> reusable =
+        store.findReusableTasks(
+            "215065", date(2015, 1, 1), date(2015, 1, 31), CatalogFixtures.template());
+
+    Assert.assertEquals(5, reusable.size());
+    Assert.assertEquals(
+        archived.get(0).getTaskId(),
+        reusable.get(TaskStore.sceneKey(tasks.get(0).getEpochDay(), "landsat_8")));
+    Assert.assertFalse(reusable.containsValue(tasks.get(1).getTaskId()));
+    // tasks of other users are linked too
+    Assert.assertEquals(
+        otherUserTasks.get(1).getTaskId(),
+        reusable.get(TaskStore.sceneKey(tasks.get(1).getEpochDay(), "landsat_8")));
+    Assert.assertEquals(
+        otherUserTasks.get(4).getTaskId(),
+        reusable.get(TaskStore.sceneKey(otherUserTasks.get(4).getEpochDay(), "landsat_8")));
+  }
+
+  @Test
+  public void testOnlyFailedTasksOfTheFilterAreRetried() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(6, "landsat_8");
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    store.insertJobTasks(
+        "job-1",
+        CatalogFixtures.tasks(3, "landsat_8"),
+        CatalogFixtures.template("other", "sha256:x"),
+        null);
+    List<TaskDescriptor> otherJobTasks = CatalogFixtures.tasks(2, "landsat_8");
+    store.insertJobTasks("job-2", otherJobTasks, CatalogFixtures.template(), null);
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'failed', error_msg = 'timeout', arrebol_job_id = 'a-1'");
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'archived' WHERE task_id = '" + tasks.get(4).getTaskId() + "'");
+    TaskFilter filter =
+        new TaskFilter(
+            Collections.singleton("215065"),
+            Collections.singleton("landsat_8"),
+            date(2015, 1, 2),
+            null);
+
+    Assert.assertEquals(2, store.findFailedTaskTemplates("job-1", filter).size());
+
+    int retried =
+        store.retryFailedTasks(
+            "job-1",
+            filter,
+            Arrays.asList(
+                CatalogFixtures.template("ufcg-sebal", "sha256:f"),
+                CatalogFixtures.template("other", "sha256:g")));
+
+    Assert.assertEquals(6, retried);
+    Assert.assertEquals(
+        4,
+        CatalogFixtures.count(
+            dataSource,
+            "SELECT COUNT(*) FROM tasks WHERE state = 'created' AND error_msg = ''"
+                + " AND arrebol_job_id = 'NONE' AND processing_digest = 'sha256:f'"
+                + " AND processing_tag = 'ufcg-sebal'"));
+    Assert.assertEquals(
+        2,
+        CatalogFixtures.count(
+            dataSource,
+            "SELECT COUNT(*) FROM tasks WHERE state = 'created'"
+                + " AND processing_digest = 'sha256:g' AND processing_tag = 'other'"));
+    Assert.assertEquals(
+        1,
+        CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM tasks WHERE state = 'archived'"));
+    Assert.assertEquals(
+        4, CatalogFixtures.count(dataSource, "SELECT COUNT(*) FROM tasks WHERE state = 'failed'"));
+    Assert.assertEquals(0, store.retryFailedTasks("job-1", filter, null));
+    Assert.assertEquals(2, store.retryFailedTasks("job-1", TaskFilter.ALL, null));
+  }
+
+  @Test
+  public void testJobsAreSummarizedByStateWithOneQuery() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(6, "landsat_8");
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    store.insertJobTasks(
+        "job-2", CatalogFixtures.tasks(2, "landsat_7"), CatalogFixtures.template(), null);
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'failed' WHERE task_id = '" + tasks.get(0).getTaskId() + "'");
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'archived' WHERE task_id = '" + tasks.get(1).getTaskId() + "'");
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'archived' WHERE task_id = '" + tasks.get(2).getTaskId() + "'");
+
+    Map<String, JobSummary> summaries =
+        store.summarizeJobs(Arrays.asList("job-1", "job-2", "job-3"));
+
+    JobSummary summary = summaries.get("job-1");
+    Assert.assertEquals(6, summary.getTotalTasks());
+    Assert.assertEquals(3, summary.getOngoingTasks());
+    Assert.assertEquals(1, summary.getFailedTasks());
+    Assert.assertEquals(2, summary.getArchivedTasks());
+    Assert.assertEquals(3, summary.getTasks(ImageTaskState.CREATED.getValue()));
+    Assert.assertEquals(2, summaries.get("job-2").getOngoingTasks());
+    Assert.assertEquals(0, summaries.get("job-3").getTotalTasks());
+  }
+
+  @Test
+  public void testJobTasksVersionChangesOnlyWithTheTasksOfTheJob() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(3, "landsat_8");
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    store.insertJobTasks(
+        "job-2", CatalogFixtures.tasks(2, "landsat_7"), CatalogFixtures.template(), null);
+    CatalogFixtures.execute(
+        dataSource, "UPDATE tasks SET updated_time = TIMESTAMP '2020-01-01 00:00:00'");
+    String version = store.findJobTasksVersion("job-1");
+
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET updated_time = TIMESTAMP '2020-01-02 00:00:00' WHERE task_id NOT IN"
+            + " (SELECT task_id FROM jobs_tasks WHERE job_id = 'job-1')");
+    Assert.assertEquals(version, store.findJobTasksVersion("job-1"));
+
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'archived', updated_time = TIMESTAMP '2020-01-02 00:00:00'"
+            + " WHERE task_id = '"
+            + tasks.get(0).getTaskId()
+            + "'");
+    String updated = store.findJobTasksVersion("job-1");
+    Assert.assertNotEquals(version, updated);
+
+    CatalogFixtures.execute(
+        dataSource, "DELETE FROM jobs_tasks WHERE task_id = '" + tasks.get(1).getTaskId() + "'");
+    Assert.assertNotEquals(updated, store.findJobTasksVersion("job-1"));
+    Assert.assertEquals("0", store.findJobTasksVersion("job-3"));
+  }
+
+  @Test
+  public void testCursorPagesFollowEachOtherWithoutGapsOrRepeats() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(5, "landsat_8");
+    tasks.addAll(CatalogFixtures.tasks(5, "landsat_7"));
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    store.insertJobTasks(
+        "job-2", CatalogFixtures.tasks(3, "landsat_8"), CatalogFixtures.template(), null);
+
+    List<String> seen = new ArrayList<String>();
+    List<Integer> pageSizes = new ArrayList<Integer>();
+    TaskCursor cursor = null;
+    do {
+      TaskPage page =
+          store.findJobTasksPage(
+              "job-1", null, null, false, false, TaskSortField.IMAGE_DATE, true, cursor, 4);
+      pageSizes.add(page.getTasks().size());
+      cursor = page.getNext();
+      if (cursor != null) {
+        seen.add(cursor.getValue() + "/" + cursor.getTaskId());
+        cursor = TaskCursor.decode(cursor.encode());
+      }
+    } while (cursor != null);
+
+    Assert.assertEquals(Arrays.asList(4, 4, 2), pageSizes);
+    Assert.assertEquals("2015-01-04", seen.get(0).substring(0, 10));
+    Assert.assertEquals("2015-01-02", seen.get(1).substring(0, 10));
+    Assert.assertEquals(
+        4,
+        store
+            .findJobTasksPage(
+                "job-1", null, "LANDSAT_7", false, false, TaskSortField.TASK_ID, false, null, 4)
+            .getTasks()
+            .size());
+  }
+
+  @Test
+  public void testProcessedTasksAreReadFromOneQuery() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 2);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(5, "landsat_8");
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    CatalogFixtures.execute(dataSource, "UPDATE tasks SET state = 'archived'");
+    CatalogFixtures.execute(
+        dataSource,
+        "UPDATE tasks SET state = 'failed' WHERE task_id = '" + tasks.get(1).getTaskId() + "'");
+
+    TaskReader reader =
+        store.openProcessedTasks(
+            Arrays.asList("215065", "215066"),
+            tasks.get(0).getImageDate(),
+            tasks.get(3).getImageDate(),
+            "googleapis",
+            "default",
+            "ufcg-sebal");
+    int read = 0;
+    try {
+      while (reader.next() != null) {
+        read++;
+      }
+    } finally {
+      reader.close();
+    }
+
+    // the archived tasks of the first four days, read in batches of two
+    Assert.assertEquals(3, read);
+    Assert.assertNull(
+        store
+            .openProcessedTasks(
+                Collections.<String>emptyList(),
+                tasks.get(0).getImageDate(),
+                tasks.get(3).getImageDate(),
+                "googleapis",
+                "default",
+                "ufcg-sebal")
+            .next());
+  }
+
+  @Test
+  public void testCursorPagesGiveTheDocumentsOfTheWholeListing() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    store.insertJobTasks(
+        "job-1", CatalogFixtures.tasks(7, "landsat_8"), CatalogFixtures.template(), null);
+
+    List<String> listed = new ArrayList<String>();
+    for (SapsImage task :
+        store
+            .findJobTasksPage(
+                "job-1", null, null, false, false, TaskSortField.IMAGE_DATE, false, null, 100)
+            .getTasks()) {
+      listed.add(String.valueOf(task.toJSON()));
+    }
+    List<String> paged = new ArrayList<String>();
+    TaskCursor cursor = null;
+    do {
+      TaskPage page =
+          store.findJobTasksPage(
+              "job-1", null, null, false, false, TaskSortField.IMAGE_DATE, false, cursor, 3);
+      for (SapsImage task : page.getTasks()) {
+        paged.add(String.valueOf(task.toJSON()));
+      }
+      cursor = page.getNext() == null ? null : TaskCursor.decode(page.getNext().encode());
+    } while (cursor != null);
+
+    Assert.assertEquals(7, listed.size());
+    Assert.assertEquals(listed, paged);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCursorOfAnotherSortIsRejected() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    store.findJobTasksPage(
+        "job-1",
+        null,
+        null,
+        false,
+        false,
+        TaskSortField.REGION,
+        false,
+        new TaskCursor(TaskSortField.IMAGE_DATE, false, "2015-01-01", "task-1"),
+        10);
+  }
+
+  @Test
+  public void testJobTemplateAndScenesAreReadFromItsTasks() throws Exception {
+    TaskStore store = new TaskStore(dataSource, 7);
+    List<TaskDescriptor> tasks = CatalogFixtures.tasks(10, "landsat_8");
+    store.insertJobTasks("job-1", tasks, CatalogFixtures.template(), null);
+    CatalogFixtures.execute(
+        dataSource, "INSERT INTO jobs (job_id, user_email) VALUES ('job-1', 'user@example.com')");
+    // a job of another user linking a task of job-1
+    CatalogFixtures.execute(
+        dataSource, "INSERT INTO jobs (job_id, user_email) VALUES ('job-3', 'other@example.com')");
+    CatalogFixtures.execute(
+        dataSource, "INSERT INTO jobs_tasks VALUES ('job-3', '" + tasks.get(0).getTaskId() + "')");
+
+    TaskTemplate template = store.findJobTemplate("job-1", "user@example.com");
+    Set<String> scenes = store.findJobScenes("job-1", date(2015, 1, 3), date(2015, 1, 31));
+
+    Assert.assertEquals("user@example.com", store.findJobOwner("job-1"));
+    Assert.assertNull(store.findJobOwner("job-2"));
+    Assert.assertEquals("sha256:c", template.getProcessingDigest());
+    Assert.assertEquals(5, template.getPriority());
+    Assert.assertNull(store.findJobTemplate("job-2", "user@example.com"));
+    Assert.assertNull(store.findJobTemplate("job-3", "other@example.com"));
+    Assert.assertEquals(8, scenes.size());
+    Assert.assertTrue(
+        scenes.contains(TaskStore.sceneKey("215065", tasks.get(9).getEpochDay(), "landsat_8")));
+    Assert.assertFalse(
+        scenes.contains(TaskStore.sceneKey("215065", tasks.get(0).getEpochDay(), "landsat_8")));
+  }
+
+  @Test
+  public void testAvailableScenesAreFoundWithOneQuery() throws Exception {
+    CatalogFixtures.execute(
+        dataSource,
+        "INSERT INTO landsat_images VALUES ('215065', DATE '2015-01-05', 'landsat_8'),"
+            + " ('215065', DATE '2015-01-05', 'landsat_7'),"
+            + " ('215066', DATE '2015-01-21', 'landsat_8'),"
+            + " ('215066', DATE '2015-03-01', 'landsat_8'),"
+            + " ('216065', DATE '2015-01-05', 'landsat_8')");
+    TaskStore store = new TaskStore(dataSource, 7);
+
+    SceneAvailability availability =
+        store.findAvailableScenes(
+            new HashSet<String>(Arrays.asList("215065", "215066")),
+            date(2015, 1, 1),
+            date(2015, 1, 31));
+
+    Assert.assertEquals(2, availability.size());
+    Assert.assertTrue(availability.contains("215065", date(2015, 1, 5)));
+    Assert.assertTrue(availability.contains("215066", date(2015, 1, 21)));
+    Assert.assertFalse(availability.contains("215066", date(2015, 1, 5)));
+    Assert.assertFalse(availability.contains("215066", date(2015, 3, 1)));
+    Assert.assertFalse(availability.contains("216065", date(2015, 1, 5)));
+  }
+
+  private Date date(int year, int month, int day) {
+    return new GregorianCalendar(year, month - 1, day).getTime();
+  }
+}
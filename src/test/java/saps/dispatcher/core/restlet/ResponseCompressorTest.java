@@ -0,0 +1,81 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseCompressorTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("static").toFile();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    delete(directory);
+  }
+
+  @Test
+  public void testStaticTextFilesGetAnUpToDateGzipCopyInTheCache() throws Exception {
+    File staticFiles = new File(directory, "static");
+    File cache = new File(directory, "cache");
+    File script = write(new File(staticFiles, "js/app.js"), 4096);
+    write(new File(staticFiles, "index.html"), 100);
+    write(new File(staticFiles, "logo.png"), 4096);
+    ResponseCompressor compressor = new ResponseCompressor(null, 9, 1024);
+
+    Assert.assertEquals(1, compressor.compressStaticFiles(staticFiles, cache));
+    Assert.assertArrayEquals(
+        Files.readAllBytes(script.toPath()), gunzip(new File(cache, "js/app.js.gz")));
+    Assert.assertFalse(new File(staticFiles, "js/app.js.gz").exists());
+    Assert.assertFalse(new File(cache, "index.html.gz").exists());
+    Assert.assertFalse(new File(cache, "logo.png.gz").exists());
+    Assert.assertEquals(0, compressor.compressStaticFiles(staticFiles, cache));
+
+    script.setLastModified(System.currentTimeMillis() + 60000);
+    Assert.assertEquals(1, compressor.compressStaticFiles(staticFiles, cache));
+  }
+
+  private File write(File file, int size) throws Exception {
+    file.getParentFile().mkdirs();
+    StringBuilder content = new StringBuilder();
+    while (content.length() < size) {
+      content.append("var task = {\"state\": \"archived\"};\n");
+    }
+    Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private byte[] gunzip(File file) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (InputStream input = new GZIPInputStream(new FileInputStream(file))) {
+      byte[] buffer = new byte[1024];
+      for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+        output.write(buffer, 0, read);
+      }
+    }
+    return output.toByteArray();
+  }
+
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,121 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet.resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.gson.JsonElement;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonStreamRepresentationTest {
+
+  @Test
+  public void testStreamedJsonIsTheSameAsTheBuiltOne() throws Exception {
+    JSONObject task = task();
+    byte[] written = write(ResponseEncoding.JSON, task);
+
+    JSONObject expected = new JSONObject().put("result", new JSONArray().put(task).put(task));
+    Assert.assertEquals(expected.toString(), new String(written, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testBinaryEncodingsCarryTheSameDocument() throws Exception {
+    JSONObject task = task();
+    List<String> json = read(ResponseEncoding.JSON, write(ResponseEncoding.JSON, task));
+
+    for (ResponseEncoding encoding :
+        new ResponseEncoding[] {ResponseEncoding.CBOR, ResponseEncoding.SMILE}) {
+      byte[] written = write(encoding, task);
+      Assert.assertEquals(encoding.name(), json, read(encoding, written));
+    }
+  }
+
+  @Test
+  public void testNumbersKeepTheirPrecisionInEveryEncoding() throws Exception {
+    JSONObject task = task();
+
+    for (ResponseEncoding encoding : ResponseEncoding.values()) {
+      try (JsonParser parser = encoding.getFactory().createParser(write(encoding, task))) {
+        for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+          if (token != JsonToken.FIELD_NAME) continue;
+          String field = parser.getCurrentName();
+          parser.nextToken();
+          if (field.equals("bands") || field.equals("path")) {
+            Assert.assertEquals(encoding.name(), JsonToken.VALUE_NUMBER_INT, parser.currentToken());
+            Assert.assertEquals(encoding.name(), task.getLong(field), parser.getLongValue());
+          } else if (field.equals("area")) {
+            Assert.assertEquals(encoding.name(), task.get(field), parser.getDecimalValue());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testGsonNumbersAreWrittenFromTheirText() throws Exception {
+    String json = "{\"priority\":9007199254740993,\"area\":0.1}";
+    final JsonElement task = new com.google.gson.JsonParser().parse(json);
+    JsonStreamRepresentation representation =
+        new JsonStreamRepresentation() {
+          @Override
+          protected void writeJson(JsonGenerator generator) throws Exception {
+            writeValue(generator, task);
+          }
+        };
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    representation.write(output);
+
+    Assert.assertEquals(json, new String(output.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private JSONObject task() throws Exception {
+    JSONObject task = new JSONObject();
+    task.put("taskId", "task-1");
+    task.put("priority", 5);
+    task.put("cloudCover", 0.25);
+    task.put("bands", (short) 11);
+    task.put("path", (byte) 65);
+    task.put("area", new BigDecimal("31340.123456789012345678901"));
+    task.put("archived", true);
+    task.put("error", JSONObject.NULL);
+    task.put("tags", new JSONArray().put("googleapis").put("ufcg-sebal"));
+    return task;
+  }
+
+  private byte[] write(ResponseEncoding encoding, final JSONObject task) throws Exception {
+    JsonStreamRepresentation representation =
+        new JsonStreamRepresentation(encoding) {
+          @Override
+          protected void writeJson(JsonGenerator generator) throws Exception {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("result");
+            writeValue(generator, task);
+            writeValue(generator, task);
+            generator.writeEndArray();
+            generator.writeEndObject();
+          }
+        };
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    representation.write(output);
+    return output.toByteArray();
+  }
+
+  /** Reads the tokens of a document with their text. */
+  private List<String> read(ResponseEncoding encoding, byte[] written) throws Exception {
+    List<String> tokens = new ArrayList<String>();
+    try (JsonParser parser = encoding.getFactory().createParser(written)) {
+      for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+        tokens.add(token + " " + parser.getText());
+      }
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,123 @@
+/* (C)2020 */
+package saps.dispatcher.core.restlet.resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Compares the payload size and the encode/decode time of a task listing built as an org.json tree,
+ * as responses were written before, against the same listing streamed in each {@link
+ * ResponseEncoding}. It is not a unit test; run it by hand:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:target/lib/* \
+ *     saps.dispatcher.core.restlet.resource.ResponseEncodingBenchmark [tasks] [rounds]
+ * </pre>
+ */
+public class ResponseEncodingBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    final List<JSONObject> tasks = new ArrayList<JSONObject>();
+    for (int i = 0; i < taskCount; i++) {
+      tasks.add(task(i));
+    }
+
+    // the last round is reported, the ones before warm the JIT up
+    for (int round = 1; round <= rounds; round++) {
+      boolean report = round == rounds;
+
+      long start = System.nanoTime();
+      JSONArray array = new JSONArray();
+      for (JSONObject task : tasks) {
+        array.put(task);
+      }
+      byte[] tree =
+          new JSONObject().put("result", array).toString().getBytes(StandardCharsets.UTF_8);
+      long encodeNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      new JSONObject(new String(tree, StandardCharsets.UTF_8));
+      long decodeNanos = System.nanoTime() - start;
+      if (report) print("org.json tree", tree.length, tree.length, encodeNanos, decodeNanos);
+
+      for (ResponseEncoding encoding : ResponseEncoding.values()) {
+        JsonStreamRepresentation representation =
+            new JsonStreamRepresentation(encoding) {
+              @Override
+              protected void writeJson(JsonGenerator generator) throws Exception {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("result");
+                for (JSONObject task : tasks) {
+                  writeValue(generator, task);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+              }
+            };
+        start = System.nanoTime();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        representation.write(output);
+        byte[] streamed = output.toByteArray();
+        encodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        try (JsonParser parser = encoding.getFactory().createParser(streamed)) {
+          while (parser.nextToken() != null) {
+            parser.getText();
+          }
+        }
+        decodeNanos = System.nanoTime() - start;
+        if (report) {
+          print(
+              "streamed " + encoding.name(),
+              tree.length,
+              streamed.length,
+              encodeNanos,
+              decodeNanos);
+        }
+      }
+    }
+  }
+
+  private static void print(
+      String name, int treeBytes, int bytes, long encodeNanos, long decodeNanos) {
+    System.out.println(
+        String.format(
+            "%-16s %10d bytes (%5.1f%%), encode %7.1f ms, decode %7.1f ms",
+            name, bytes, 100.0 * bytes / treeBytes, encodeNanos / 1e6, decodeNanos / 1e6));
+  }
+
+  /** Task with the fields SapsImage#toJSON gives. */
+  private static JSONObject task(int index) throws Exception {
+    JSONObject task = new JSONObject();
+    task.put("taskId", UUID.randomUUID().toString());
+    task.put("dataset", index % 2 == 0 ? "landsat_8" : "landsat_7");
+    task.put("region", String.format("%03d%03d", 200 + index % 30, 60 + index % 20));
+    task.put("imageDate", "2020-01-" + String.format("%02d", 1 + index % 28));
+    task.put("state", "archived");
+    task.put("arrebolJobId", UUID.randomUUID().toString());
+    task.put("federationMember", "None");
+    task.put("priority", index % 10);
+    task.put("user", "user@example.com");
+    task.put("inputdownloadingTag", "googleapis");
+    task.put("inputdownloadingDigest", "sha256:" + UUID.randomUUID());
+    task.put("preprocessingTag", "default");
+    task.put("preprocessingDigest", "sha256:" + UUID.randomUUID());
+    task.put("processingTag", "ufcg-sebal");
+    task.put("processingDigest", "sha256:" + UUID.randomUUID());
+    task.put("creationTime", "2020-01-01 00:00:00.0");
+    task.put("updateTime", "2020-01-02 00:00:00.0");
+    task.put("status", "available");
+    task.put("error", "");
+    return task;
+  }
+}
@@ -0,0 +1,141 @@
+/* (C)2020 */
+package saps.dispatcher.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DigestCacheTest {
+
+  @Test
+  public void testFreshEntryIsServedFromCache() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    DigestCache cache =
+        new DigestCache(
+            new DigestCache.DigestLoader() {
+              @Override
+              public String load(String dockerRepository, String dockerTag) {
+                return "sha256:" + loads.incrementAndGet();
+              }
+            },
+            60000,
+            60000);
+
+    Assert.assertEquals("sha256:1", cache.get("fogbow/inputdownloader", "googleapis"));
+    Assert.assertEquals("sha256:1", cache.get("fogbow/inputdownloader", "googleapis"));
+    Assert.assertEquals("sha256:2", cache.get("fogbow/preprocessor", "default"));
+
+    Assert.assertEquals(2, loads.get());
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void testStaleEntryIsServedAndRefreshedInBackground() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    DigestCache cache =
+        new DigestCache(
+            new DigestCache.DigestLoader() {
+              @Override
+              public String load(String dockerRepository, String dockerTag) {
+                return "sha256:" + loads.incrementAndGet();
+              }
+            },
+            0,
+            60000);
+
+    Assert.assertEquals("sha256:1", cache.get("fogbow/worker", "ufcg-sebal"));
+    Thread.sleep(5);
+    Assert.assertEquals("sha256:1", cache.get("fogbow/worker", "ufcg-sebal"));
+    Assert.assertEquals(1, cache.getStaleHits());
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (loads.get() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testBurstOfStaleHitsQueuesOneRefresh() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    DigestCache cache =
+        new DigestCache(
+            new DigestCache.DigestLoader() {
+              @Override
+              public String load(String dockerRepository, String dockerTag) throws Exception {
+                if (loads.incrementAndGet() > 1) release.await();
+                return "sha256:" + loads.get();
+              }
+            },
+            0,
+            60000);
+
+    cache.get("fogbow/worker", "ufcg-sebal");
+    Thread.sleep(5);
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals("sha256:1", cache.get("fogbow/worker", "ufcg-sebal"));
+    }
+    release.countDown();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (loads.get() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    Thread.sleep(50);
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testConcurrentMissesShareOneLoad() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final DigestCache cache =
+        new DigestCache(
+            new DigestCache.DigestLoader() {
+              @Override
+              public String load(String dockerRepository, String dockerTag) throws Exception {
+                loads.incrementAndGet();
+                release.await();
+                return "sha256:abc";
+              }
+            },
+            60000,
+            60000);
+
+    final List<String> digests = new ArrayList<String>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    String digest = cache.get("fogbow/worker", "ufcg-sebal");
+                    synchronized (digests) {
+                      digests.add(digest);
+                    }
+                  } catch (Exception e) {
+                    throw new RuntimeException(e);
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+
+    Thread.sleep(100);
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals(8, digests.size());
+  }
+}
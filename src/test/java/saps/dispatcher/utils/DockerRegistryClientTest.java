@@ -0,0 +1,82 @@
+/* (C)2020 */
+package saps.dispatcher.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DockerRegistryClientTest {
+
+  private static final String DIGEST =
+      "sha256:6b3cbb3e9c6a5e8e54d1f1b5c1c3c1d5e5f4a9a0c47b3cbb1f5e2a3d4c5b6a7f";
+
+  private HttpServer registry;
+  private DockerRegistryClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    registry.createContext(
+        "/v2/repositories/",
+        new HttpHandler() {
+          @Override
+          public void handle(HttpExchange exchange) throws IOException {
+            boolean found =
+                exchange
+                    .getRequestURI()
+                    .getPath()
+                    .equals("/v2/repositories/fogbow/worker/tags/ufcg-sebal");
+            byte[] body =
+                (found
+                        ? "{\"name\":\"ufcg-sebal\",\"images\":[{\"digest\":\"" + DIGEST + "\"}]}"
+                        : "{\"message\":\"tag not found\"}")
+                    .getBytes("UTF-8");
+            exchange.sendResponseHeaders(found ? 200 : 404, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+              output.write(body);
+            }
+          }
+        });
+    registry.start();
+    client =
+        new DockerRegistryClient(
+            "http://127.0.0.1:" + registry.getAddress().getPort() + "/v2/", 2, 5000);
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    registry.stop(0);
+  }
+
+  @Test
+  public void testDigestIsReadFromTagImages() throws Exception {
+    Assert.assertEquals(DIGEST, client.getDigest("fogbow/worker", "ufcg-sebal"));
+    Assert.assertEquals(DIGEST, client.getDigest("fogbow/worker", "ufcg-sebal"));
+  }
+
+  @Test
+  public void testImageDigestIsPreferredOverManifestListDigest() {
+    String manifestList = "sha256:" + DIGEST.substring(7).replace('6', '0');
+
+    Assert.assertEquals(
+        DIGEST,
+        DockerRegistryClient.parseDigest(
+            "{\"digest\":\"" + manifestList + "\",\"images\":[{\"digest\":\"" + DIGEST + "\"}]}"));
+    Assert.assertEquals(
+        manifestList,
+        DockerRegistryClient.parseDigest("{\"digest\":\"" + manifestList + "\",\"images\":[]}"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownTagFails() throws Exception {
+    client.getDigest("fogbow/worker", "missing");
+  }
+}
@@ -0,0 +1,113 @@
+/* (C)2020 */
+package saps.dispatcher.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Compares the legacy path/row rectangle sweep against exact WRS-2 polygon intersection over
+ * boxes centred on the tiles of tiles_coordinates.json. It is not a unit test; run it by hand:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:target/lib/* \
+ *     saps.dispatcher.utils.RegionCoverageBenchmark [shapefile base path] [days]
+ * </pre>
+ */
+public class RegionCoverageBenchmark {
+
+  private static final double[] BOX_HALF_SIDES = {0.25, 0.5, 1.0};
+  private static final int LANDSAT_REVISIT_DAYS = 16;
+  private static final int DATASETS_IN_OPERATION = 2;
+
+  public static void main(String[] args) throws Exception {
+    Properties properties = new Properties();
+    if (args.length > 0) {
+      properties.setProperty(RegionUtil.WRS_SHAPEFILE_PATH_KEY, args[0]);
+    }
+    properties.setProperty(RegionUtil.WRS_PYTHON_FALLBACK_KEY, "false");
+    int days = args.length > 1 ? Integer.parseInt(args[1]) : 365;
+
+    RegionUtil.configure(properties);
+    if (RegionUtil.getWrsIndex() == null) {
+      System.err.println("WRS-2 shapefile could not be loaded");
+      System.exit(1);
+    }
+
+    JsonArray tiles;
+    try (Reader reader =
+        new InputStreamReader(
+            RegionCoverageBenchmark.class.getResourceAsStream("/tiles_coordinates.json"),
+            "UTF-8")) {
+      tiles = new JsonParser().parse(reader).getAsJsonObject().getAsJsonArray("tiles");
+    }
+
+    for (double halfSide : BOX_HALF_SIDES) {
+      long sweepRegions = 0;
+      long exactRegions = 0;
+      long spurious = 0;
+      long missed = 0;
+      long sweepNanos = 0;
+      long exactNanos = 0;
+
+      for (JsonElement element : tiles) {
+        JsonObject tile = element.getAsJsonObject();
+        double latitude = tile.get("latitude").getAsDouble();
+        double longitude = tile.get("longitude").getAsDouble();
+        String lowerLeftLatitude = String.valueOf(latitude - halfSide);
+        String lowerLeftLongitude = String.valueOf(longitude - halfSide);
+        String upperRightLatitude = String.valueOf(latitude + halfSide);
+        String upperRightLongitude = String.valueOf(longitude + halfSide);
+
+        long start = System.nanoTime();
+        Set<String> sweep =
+            RegionUtil.regionsFromCorners(
+                lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
+        sweepNanos += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Set<String> exact =
+            RegionUtil.regionsFromArea(
+                lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
+        exactNanos += System.nanoTime() - start;
+
+        Set<String> onlySweep = new HashSet<String>(sweep);
+        onlySweep.removeAll(exact);
+        Set<String> onlyExact = new HashSet<String>(exact);
+        onlyExact.removeAll(sweep);
+
+        sweepRegions += sweep.size();
+        exactRegions += exact.size();
+        spurious += onlySweep.size();
+        missed += onlyExact.size();
+      }
+
+      System.out.println(
+          String.format(
+              "box %.2fx%.2f deg over %d AOIs: sweep %d tiles (%d spurious, %d missed), exact %d"
+                  + " tiles",
+              2 * halfSide, 2 * halfSide, tiles.size(), sweepRegions, spurious, missed,
+              exactRegions));
+      System.out.println(
+          String.format(
+              "  catalog round trips for %d days: sweep %d, exact %d (saved %d)",
+              days, sweepRegions * days, exactRegions * days,
+              (sweepRegions - exactRegions) * days));
+      System.out.println(
+          String.format(
+              "  estimated tasks: sweep %d, exact %d",
+              sweepRegions * (days / LANDSAT_REVISIT_DAYS) * DATASETS_IN_OPERATION,
+              exactRegions * (days / LANDSAT_REVISIT_DAYS) * DATASETS_IN_OPERATION));
+      System.out.println(
+          String.format(
+              "  region resolution: sweep %.1f us/AOI, exact %.1f us/AOI",
+              sweepNanos / 1000.0 / tiles.size(), exactNanos / 1000.0 / tiles.size()));
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/* (C)2020 */
+package saps.dispatcher.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+
+public class RegionUtilTest {
+
+  private static final String POLYGON =
+      "{\"type\":\"Polygon\",\"coordinates\":"
+          + "[[[-37.5,-8.0],[-37.5,-7.0],[-36.5,-7.0],[-36.5,-8.0],[-37.5,-8.0]]]}";
+
+  @Test
+  public void testParsePolygonAreaOfInterest() {
+    Geometry areaOfInterest = RegionUtil.parseAreaOfInterest(POLYGON);
+
+    Assert.assertEquals("Polygon", areaOfInterest.getGeometryType());
+    Assert.assertEquals(-37.5, areaOfInterest.getEnvelopeInternal().getMinX(), 1e-9);
+    Assert.assertEquals(-7.0, areaOfInterest.getEnvelopeInternal().getMaxY(), 1e-9);
+  }
+
+  @Test
+  public void testParseFeatureAreaOfInterest() {
+    Geometry areaOfInterest =
+        RegionUtil.parseAreaOfInterest(
+            "{\"type\":\"Feature\",\"properties\":{},\"geometry\":" + POLYGON + "}");
+
+    Assert.assertEquals("Polygon", areaOfInterest.getGeometryType());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParsePointAreaOfInterestFails() {
+    RegionUtil.parseAreaOfInterest("{\"type\":\"Point\",\"coordinates\":[-37.0,-7.5]}");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseMalformedAreaOfInterestFails() {
+    RegionUtil.parseAreaOfInterest("not a geojson document");
+  }
+}
@@ -0,0 +1,75 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+public class WrsIndexTest {
+
+  private GeometryFactory geometryFactory;
+  private WrsIndex index;
+
+  @Before
+  public void setUp() {
+    geometryFactory = new GeometryFactory();
+    List<WrsTile> tiles = new ArrayList<WrsTile>();
+    tiles.add(new WrsTile(0, 215, 65, square(-37.5, -8.0, 1.0)));
+    tiles.add(new WrsTile(1, 215, 66, square(-37.5, -8.8, 1.0)));
+    tiles.add(new WrsTile(2, 216, 65, square(-39.0, -8.0, 1.0)));
+    index = new WrsIndex(geometryFactory, tiles);
+  }
+
+  @Test
+  public void testPointInsideSingleTile() {
+    List<WrsTile> tiles = index.tilesAt(-7.5, -37.0);
+
+    Assert.assertEquals(1, tiles.size());
+    Assert.assertEquals("215065", tiles.get(0).getRegionId());
+  }
+
+  @Test
+  public void testPointInsideOverlapReturnsTilesInShapefileOrder() {
+    List<WrsTile> tiles = index.tilesAt(-7.9, -37.0);
+
+    Assert.assertEquals(2, tiles.size());
+    Assert.assertEquals("215065", tiles.get(0).getRegionId());
+    Assert.assertEquals("215066", tiles.get(1).getRegionId());
+  }
+
+  @Test
+  public void testPointOutsideEveryTile() {
+    Assert.assertTrue(index.tilesAt(10.0, 10.0).isEmpty());
+  }
+
+  @Test
+  public void testAreaIntersectionReturnsOnlyTouchedTiles() {
+    List<WrsTile> tiles = index.tilesIntersecting(square(-37.2, -7.5, 0.2));
+
+    Assert.assertEquals(1, tiles.size());
+    Assert.assertEquals("215065", tiles.get(0).getRegionId());
+  }
+
+  @Test
+  public void testAreaAcrossTilesReturnsEveryIntersectedTile() {
+    List<WrsTile> tiles = index.tilesIntersecting(square(-38.5, -8.5, 1.5));
+
+    Assert.assertEquals(3, tiles.size());
+  }
+
+  private Polygon square(double minLon, double minLat, double side) {
+    return geometryFactory.createPolygon(
+        new Coordinate[] {
+          new Coordinate(minLon, minLat),
+          new Coordinate(minLon, minLat + side),
+          new Coordinate(minLon + side, minLat + side),
+          new Coordinate(minLon + side, minLat),
+          new Coordinate(minLon, minLat)
+        });
+  }
+}
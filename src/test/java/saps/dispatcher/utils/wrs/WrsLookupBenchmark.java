@@ -0,0 +1,120 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Random;
+
+/**
+ * Reports startup time, memory and point lookup latency of the get_wrs.py subprocess, the WRS-2
+ * index and the memory-mapped lookup grid. It is not a unit test; run it by hand from the
+ * dispatcher directory:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:target/lib/* \
+ *     saps.dispatcher.utils.wrs.WrsLookupBenchmark shapefileBasePath gridFilePath [samples]
+ * </pre>
+ */
+public class WrsLookupBenchmark {
+
+  private static final int SUBPROCESS_SAMPLES = 5;
+
+  // Brazil bounding box
+  private static final double MIN_LATITUDE = -34.0;
+  private static final double MAX_LATITUDE = 5.0;
+  private static final double MIN_LONGITUDE = -74.0;
+  private static final double MAX_LONGITUDE = -35.0;
+
+  public static void main(String[] args) throws Exception {
+    String shapefileBasePath = args[0];
+    String gridFilePath = args[1];
+    int samples = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+    double[][] points = randomPoints(samples);
+
+    long heapBefore = usedHeap();
+    long start = System.nanoTime();
+    WrsIndex index = WrsIndex.load(shapefileBasePath);
+    long indexStartupNanos = System.nanoTime() - start;
+    long indexHeap = usedHeap() - heapBefore;
+
+    heapBefore = usedHeap();
+    start = System.nanoTime();
+    WrsLookupGrid grid = WrsLookupGrid.load(index, gridFilePath);
+    long gridStartupNanos = System.nanoTime() - start;
+    long gridHeap = usedHeap() - heapBefore;
+
+    long indexNanos = 0;
+    long gridNanos = 0;
+    int mismatches = 0;
+    for (double[] point : points) {
+      start = System.nanoTime();
+      String fromIndex = index.tilesAt(point[0], point[1]).toString();
+      indexNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      String fromGrid = grid.tilesAt(point[0], point[1]).toString();
+      gridNanos += System.nanoTime() - start;
+
+      if (!fromIndex.equals(fromGrid)) mismatches++;
+    }
+
+    long subprocessNanos = 0;
+    for (int i = 0; i < SUBPROCESS_SAMPLES; i++) {
+      start = System.nanoTime();
+      runGetWrs(points[i][0], points[i][1]);
+      subprocessNanos += System.nanoTime() - start;
+    }
+
+    System.out.println(
+        String.format(
+            "subprocess: %.1f ms/lookup (interpreter start and shapefile parse on every call)",
+            subprocessNanos / 1e6 / SUBPROCESS_SAMPLES));
+    System.out.println(
+        String.format(
+            "index:      startup %.1f ms, heap %.1f MB, %.2f us/lookup",
+            indexStartupNanos / 1e6, indexHeap / 1048576.0, indexNanos / 1e3 / samples));
+    System.out.println(
+        String.format(
+            "grid:       startup %.1f ms, heap %.1f MB, mapped %.1f MB, %.2f us/lookup,"
+                + " %d mismatches",
+            gridStartupNanos / 1e6,
+            gridHeap / 1048576.0,
+            new File(gridFilePath).length() / 1048576.0,
+            gridNanos / 1e3 / samples,
+            mismatches));
+  }
+
+  private static double[][] randomPoints(int samples) {
+    Random random = new Random(42);
+    double[][] points = new double[samples][2];
+    for (double[] point : points) {
+      point[0] = MIN_LATITUDE + (MAX_LATITUDE - MIN_LATITUDE) * random.nextDouble();
+      point[1] = MIN_LONGITUDE + (MAX_LONGITUDE - MIN_LONGITUDE) * random.nextDouble();
+    }
+    return points;
+  }
+
+  private static void runGetWrs(double latitude, double longitude) throws Exception {
+    Process process =
+        new ProcessBuilder(
+                "python",
+                "./scripts/get_wrs.py",
+                String.valueOf(latitude),
+                String.valueOf(longitude))
+            .redirectErrorStream(true)
+            .start();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+      while (reader.readLine() != null) {}
+    }
+    process.waitFor();
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
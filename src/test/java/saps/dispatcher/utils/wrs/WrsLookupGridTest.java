@@ -0,0 +1,75 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+public class WrsLookupGridTest {
+
+  private GeometryFactory geometryFactory;
+  private WrsIndex index;
+  private File gridFile;
+
+  @Before
+  public void setUp() throws Exception {
+    geometryFactory = new GeometryFactory();
+    List<WrsTile> tiles = new ArrayList<WrsTile>();
+    tiles.add(new WrsTile(0, 215, 65, skewedTile(-37.5, -8.0)));
+    tiles.add(new WrsTile(1, 215, 66, skewedTile(-37.7, -8.8)));
+    tiles.add(new WrsTile(2, 216, 65, skewedTile(-38.6, -8.0)));
+    index = new WrsIndex(geometryFactory, tiles);
+
+    gridFile = File.createTempFile("wrs", ".grid");
+    WrsLookupGrid.build(index, new Envelope(-40.0, -35.0, -10.0, -6.0), 0.05, gridFile.getPath());
+  }
+
+  @After
+  public void tearDown() {
+    gridFile.delete();
+  }
+
+  @Test
+  public void testGridLookupMatchesIndexLookup() throws Exception {
+    WrsLookupGrid grid = WrsLookupGrid.load(index, gridFile.getPath());
+
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      double latitude = -10.5 + 5.0 * random.nextDouble();
+      double longitude = -40.5 + 6.0 * random.nextDouble();
+
+      Assert.assertEquals(
+          index.tilesAt(latitude, longitude).toString(),
+          grid.tilesAt(latitude, longitude).toString());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testGridBuiltForAnotherIndexIsRejected() throws Exception {
+    List<WrsTile> tiles = new ArrayList<WrsTile>(index.getTiles());
+    tiles.add(new WrsTile(3, 217, 65, skewedTile(-40.0, -8.0)));
+
+    WrsLookupGrid.load(new WrsIndex(geometryFactory, tiles), gridFile.getPath());
+  }
+
+  private Polygon skewedTile(double minLon, double minLat) {
+    return geometryFactory.createPolygon(
+        new Coordinate[] {
+          new Coordinate(minLon, minLat),
+          new Coordinate(minLon + 0.3, minLat + 1.0),
+          new Coordinate(minLon + 1.3, minLat + 1.0),
+          new Coordinate(minLon + 1.0, minLat),
+          new Coordinate(minLon, minLat)
+        });
+  }
+}
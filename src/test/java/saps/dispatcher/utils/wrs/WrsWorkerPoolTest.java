@@ -0,0 +1,91 @@
+/* (C)2020 */
+package saps.dispatcher.utils.wrs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WrsWorkerPoolTest {
+
+  // answers "<pid> <latitude>" like get_wrs answers the regions of a point
+  private static final List<String> WORKER =
+      Arrays.asList(
+          "sh",
+          "-c",
+          "echo ready; while read lat lon; do case \"$lat\" in"
+              + " exit) exit 1;; error) echo \"error no tile\";; hang) sleep 5;;"
+              + " *) echo \"$$ $lat\";; esac; done");
+
+  private WrsWorkerPool pool;
+
+  @After
+  public void tearDown() {
+    if (pool != null) pool.shutdown();
+  }
+
+  @Test
+  public void testLookupsAreSpreadOverTheWorkers() throws Exception {
+    pool = new WrsWorkerPool(WORKER, 2, 5000);
+
+    String[] first = pool.getRegionIds("-7.0", "-37.0").split(" ");
+    String[] second = pool.getRegionIds("-7.1", "-37.0").split(" ");
+    String[] third = pool.getRegionIds("-7.2", "-37.0").split(" ");
+
+    Assert.assertEquals("-7.0", first[1]);
+    Assert.assertEquals("-7.2", third[1]);
+    Assert.assertNotEquals(first[0], second[0]);
+    // the first worker was kept running for the third lookup
+    Assert.assertEquals(first[0], third[0]);
+  }
+
+  @Test
+  public void testWorkerThatExitsIsRestartedOnItsNextLookup() throws Exception {
+    pool = new WrsWorkerPool(WORKER, 1, 5000);
+    String pid = pool.getRegionIds("-7.0", "-37.0").split(" ")[0];
+
+    try {
+      pool.getRegionIds("exit", "-37.0");
+      Assert.fail("the lookup should fail");
+    } catch (IOException e) {
+      // expected
+    }
+
+    Assert.assertNotEquals(pid, pool.getRegionIds("-7.0", "-37.0").split(" ")[0]);
+  }
+
+  @Test
+  public void testWorkerErrorFailsOnlyThatLookup() throws Exception {
+    pool = new WrsWorkerPool(WORKER, 1, 5000);
+    String pid = pool.getRegionIds("-7.0", "-37.0").split(" ")[0];
+
+    try {
+      pool.getRegionIds("error", "-37.0");
+      Assert.fail("the lookup should fail");
+    } catch (Exception e) {
+      Assert.assertEquals("get_wrs error no tile", e.getMessage());
+    }
+
+    // the failed worker is killed and started again, and is then given back to the pool
+    Assert.assertNotEquals(pid, pool.getRegionIds("-7.0", "-37.0").split(" ")[0]);
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void testLookupTimesOutWhenTheWorkerDoesNotAnswer() throws Exception {
+    pool = new WrsWorkerPool(WORKER, 1, 200);
+    pool.getRegionIds("hang", "-37.0");
+  }
+
+  @Test
+  public void testShutdownStopsTheWorkers() throws Exception {
+    pool = new WrsWorkerPool(WORKER, 1, 5000);
+    String pid = pool.getRegionIds("-7.0", "-37.0").split(" ")[0];
+
+    pool.shutdown();
+
+    Assert.assertNotEquals(pid, pool.getRegionIds("-7.0", "-37.0").split(" ")[0]);
+  }
+}